@@ -19,11 +19,9 @@ package org.y20k.trackbook;
 import android.Manifest;
 import android.annotation.TargetApi;
 import android.app.Activity;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
@@ -46,10 +44,13 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.snackbar.Snackbar;
 
 import org.osmdroid.config.Configuration;
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.TrackDelta;
 import org.y20k.trackbook.helpers.DialogHelper;
-import org.y20k.trackbook.helpers.ExportHelper;
+import org.y20k.trackbook.helpers.ExportCacheHelper;
 import org.y20k.trackbook.helpers.LogHelper;
 import org.y20k.trackbook.helpers.NightModeHelper;
+import org.y20k.trackbook.helpers.TrackRepository;
 import org.y20k.trackbook.helpers.TrackbookKeys;
 import org.y20k.trackbook.layout.NonSwipeableViewPager;
 
@@ -58,6 +59,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -68,7 +70,7 @@ import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentStatePagerAdapter;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.lifecycle.Lifecycle;
 
 
 /**
@@ -82,6 +84,8 @@ public class MainActivity extends AppCompatActivity implements TrackbookKeys {
 
     /* Main class variables */
     private TrackerService mTrackerService;
+    private TrackerService.LocalBinder mTrackerServiceBinder;
+    private final TrackerService.TrackObserver mTrackObserver = createTrackObserver();
     private BottomNavigationView mBottomNavigationView;
     private NonSwipeableViewPager mViewPager;
     private SectionsPagerAdapter mSectionsPagerAdapter;
@@ -97,7 +101,6 @@ public class MainActivity extends AppCompatActivity implements TrackbookKeys {
     private CardView mFloatingActionButtonSubSaveLabel;
     private CardView mFloatingActionButtonSubClearLabel;
     private CardView mFloatingActionButtonSubResumeLabel;
-    private BroadcastReceiver mTrackingChangedReceiver;
     private int mFloatingActionButtonState;
     private int mSelectedTab;
 
@@ -111,8 +114,15 @@ public class MainActivity extends AppCompatActivity implements TrackbookKeys {
         // check state of External Storage
         checkExternalStorageState();
 
-        // empty cache
-        ExportHelper.emptyCacheDirectory(this);
+        // delete outdated cache files - in the background
+        final Context context = getApplicationContext();
+        TrackRepository.getInstance(this).submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                ExportCacheHelper.trimCacheDirectory(context);
+                return null;
+            }
+        }, null);
 
         // load saved state of app
         loadFloatingActionButtonState(this);
@@ -155,11 +165,6 @@ public class MainActivity extends AppCompatActivity implements TrackbookKeys {
         // bind to TrackerService
         Intent intent = new Intent(this, TrackerService.class);
         bindService(intent, mConnection, Context.BIND_AUTO_CREATE);
-
-        // register broadcast receiver for changed tracking state
-        mTrackingChangedReceiver = createTrackingChangedReceiver();
-        IntentFilter trackingStoppedIntentFilter = new IntentFilter(ACTION_TRACKING_STATE_CHANGED);
-        LocalBroadcastManager.getInstance(this).registerReceiver(mTrackingChangedReceiver, trackingStoppedIntentFilter);
     }
 
 
@@ -177,6 +182,11 @@ public class MainActivity extends AppCompatActivity implements TrackbookKeys {
         if (mFloatingActionButtonMain != null) {
             setFloatingActionButtonState();
         }
+
+        // receive changes of the tracking state again - including those that happened while paused
+        if (mTrackerServiceBinder != null) {
+            mTrackerServiceBinder.setTrackObserverPaused(mTrackObserver, false);
+        }
     }
 
 
@@ -184,6 +194,10 @@ public class MainActivity extends AppCompatActivity implements TrackbookKeys {
     protected void onPause() {
         super.onPause();
 
+        // hold back changes of the tracking state until resumed
+        if (mTrackerServiceBinder != null) {
+            mTrackerServiceBinder.setTrackObserverPaused(mTrackObserver, true);
+        }
     }
 
 
@@ -203,8 +217,10 @@ public class MainActivity extends AppCompatActivity implements TrackbookKeys {
         // reset selected tab
         mSelectedTab = FRAGMENT_ID_MAP;
 
-        // disable  broadcast receiver
-        LocalBroadcastManager.getInstance(this).unregisterReceiver(mTrackingChangedReceiver);
+        // stop observing the recording
+        if (mTrackerServiceBinder != null) {
+            mTrackerServiceBinder.unregisterTrackObserver(mTrackObserver);
+        }
     }
 
 
@@ -758,29 +774,70 @@ public class MainActivity extends AppCompatActivity implements TrackbookKeys {
     }
 
 
-    /* Creates receiver for stopped tracking */
-    private BroadcastReceiver createTrackingChangedReceiver() {
-        return new BroadcastReceiver() {
+    /* Creates observer for the current recording and for started and stopped tracking */
+    private TrackerService.TrackObserver createTrackObserver() {
+        return new TrackerService.TrackObserver() {
             @Override
-            public void onReceive(Context context, Intent intent) {
+            public void onWayPointsAppended(TrackDelta delta) {
+                // pass new waypoints to MainActivityMapFragment - a fragment that misses the delta asks for a snapshot later
+                MainActivityMapFragment mainActivityMapFragment = getMapFragment();
+                if (mainActivityMapFragment != null) {
+                    mainActivityMapFragment.updateTrack(delta);
+                }
+            }
+
+            @Override
+            public void onStatisticsChanged(Track track) {
+                // pass statistics to MainActivityMapFragment
+                MainActivityMapFragment mainActivityMapFragment = getMapFragment();
+                if (mainActivityMapFragment != null) {
+                    mainActivityMapFragment.updateTrackStatistics(track);
+                }
+            }
+
+            @Override
+            public void onTrackingStateChanged(boolean trackingState, @Nullable Location lastLocation) {
 
                 // change state
-                mTrackerServiceRunning = intent.getBooleanExtra(EXTRA_TRACKING_STATE, false);
+                mTrackerServiceRunning = trackingState;
                 if (mTrackerServiceRunning) {
                     mFloatingActionButtonState = FAB_STATE_RECORDING;
                 } else {
                     mFloatingActionButtonState = FAB_STATE_SAVE;
                 }
-                setFloatingActionButtonState();
+                if (mFloatingActionButtonMain != null) {
+                    setFloatingActionButtonState();
+                }
 
-                // pass tracking state to MainActivityMapFragment // todo check -> may produce NullPointerException
-                MainActivityMapFragment mainActivityMapFragment = (MainActivityMapFragment) mSectionsPagerAdapter.getFragment(FRAGMENT_ID_MAP);
-                mainActivityMapFragment.setTrackingState(mTrackerServiceRunning);
+                // pass tracking state to MainActivityMapFragment
+                MainActivityMapFragment mainActivityMapFragment = getMapFragment();
+                if (mainActivityMapFragment != null) {
+                    mainActivityMapFragment.setTrackingState(mTrackerServiceRunning);
+                }
             }
         };
     }
 
 
+    /* Asks TrackerService for the whole current track - used by MainActivityMapFragment after a gap in the track deltas */
+    public void requestTrackSnapshot() {
+        if (mTrackerServiceBinder != null) {
+            mTrackerServiceBinder.requestTrackSnapshot(mTrackObserver);
+        }
+    }
+
+
+    /* Returns MainActivityMapFragment - or null if it does not exist (yet) */
+    @Nullable
+    private MainActivityMapFragment getMapFragment() {
+        if (mSectionsPagerAdapter == null) {
+            // onboarding mode - main layout is not set up
+            return null;
+        }
+        return (MainActivityMapFragment) mSectionsPagerAdapter.getFragment(FRAGMENT_ID_MAP);
+    }
+
+
     /* Checks the state of External Storage */
     private void checkExternalStorageState() {
 
@@ -839,6 +896,11 @@ public class MainActivity extends AppCompatActivity implements TrackbookKeys {
             TrackerService.LocalBinder binder = (TrackerService.LocalBinder) service;
             mTrackerService = binder.getService();
             mBound = true;
+
+            // observe the recording - the registration outlives unbinding, so changes during onStop are not lost
+            mTrackerServiceBinder = binder;
+            mTrackerServiceBinder.registerTrackObserver(mTrackObserver);
+            mTrackerServiceBinder.setTrackObserverPaused(mTrackObserver, !getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED));
         }
 
         @Override
@@ -17,16 +17,13 @@
 package org.y20k.trackbook;
 
 import android.app.Activity;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.database.ContentObserver;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.SystemClock;
@@ -46,11 +43,13 @@ import org.osmdroid.views.overlay.ItemizedIconOverlay;
 import org.osmdroid.views.overlay.compass.CompassOverlay;
 import org.osmdroid.views.overlay.compass.InternalCompassOrientationProvider;
 import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.TrackDelta;
+import org.y20k.trackbook.core.TrackOverview;
 import org.y20k.trackbook.helpers.DialogHelper;
 import org.y20k.trackbook.helpers.LocationHelper;
 import org.y20k.trackbook.helpers.LogHelper;
 import org.y20k.trackbook.helpers.MapHelper;
-import org.y20k.trackbook.helpers.StorageHelper;
+import org.y20k.trackbook.helpers.TrackRepository;
 import org.y20k.trackbook.helpers.TrackbookKeys;
 
 import java.util.List;
@@ -74,13 +73,15 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
     /* Main class variables */
     private Activity mActivity;
     private Track mTrack;
+    private long mTrackSequence;
+    private TrackOverview mTrackOverview;
+    private boolean mTrackOverviewPending;
+    private int mTrackOverviewGeneration;
     private boolean mFirstStart;
     private Snackbar mLocationOffBar;
-    private BroadcastReceiver mTrackUpdatedReceiver;
     private SettingsContentObserver mSettingsContentObserver;
     private MapView mMapView;
     private IMapController mController;
-    private StorageHelper mStorageHelper;
     private LocationManager mLocationManager;
     private LocationListener mGPSListener;
     private LocationListener mNetworkListener;
@@ -111,6 +112,9 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
         // get activity
         mActivity = getActivity();
 
+        // no track state yet - the first track delta must be a snapshot
+        mTrackSequence = TRACK_SEQUENCE_UNKNOWN;
+
         // restore first start state and tracking state
         mFirstStart = true;
         mTrackerServiceRunning = false;
@@ -119,9 +123,6 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
             mFirstStart = savedInstanceState.getBoolean(INSTANCE_FIRST_START, true);
         }
 
-        // create storage helper
-        mStorageHelper = new StorageHelper(mActivity);
-
         // acquire reference to Location Manager
         mLocationManager = (LocationManager) mActivity.getSystemService(Context.LOCATION_SERVICE);
 
@@ -153,11 +154,6 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
 
         // create content observer for changes in System Settings
         mSettingsContentObserver = new SettingsContentObserver( new Handler());
-
-        // register broadcast receiver for new WayPoints
-        mTrackUpdatedReceiver = createTrackUpdatedReceiver();
-        IntentFilter trackUpdatedIntentFilter = new IntentFilter(ACTION_TRACK_UPDATED);
-        LocalBroadcastManager.getInstance(mActivity).registerReceiver(mTrackUpdatedReceiver, trackUpdatedIntentFilter);
     }
 
 
@@ -231,10 +227,16 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
         loadTrackerServiceState(mActivity);
 
         // load track from temp file if it exists
-        if (mStorageHelper.tempFileExists()) {
-            LoadTempTrackAsyncHelper loadTempTrackAsyncHelper = new LoadTempTrackAsyncHelper();
-            loadTempTrackAsyncHelper.execute();
-        }
+        TrackRepository.getInstance(mActivity).loadTrack(FILE_TEMP_TRACK, new TrackRepository.Callback<Track>() {
+            @Override
+            public void onResult(Track track) {
+                // draw track on map - unless the track observer of MainActivity already delivered a more recent track
+                if (track != null && mTrack == null) {
+                    mTrack = track;
+                    drawTrackOverlay(mTrack);
+                }
+            }
+        });
 
 //        // CASE 1: recording active
 //        if (mTrackerServiceRunning) {
@@ -299,9 +301,6 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
         // reset first start state
         mFirstStart = true;
 
-        // disable  broadcast receivers
-        LocalBroadcastManager.getInstance(mActivity).unregisterReceiver(mTrackUpdatedReceiver);
-
         super.onDestroy();
     }
 
@@ -384,6 +383,37 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
     }
 
 
+    /* Draws the current recording - delta is handed to the track observer of MainActivity */
+    public void updateTrack(TrackDelta delta) {
+        if (!delta.appliesTo(mTrackSequence)) {
+            // a delta was missed - keep the drawn track until the whole track arrives
+            LogHelper.w(LOG_TAG, "Gap in track deltas detected. Requesting whole track.");
+            mTrackSequence = TRACK_SEQUENCE_UNKNOWN;
+            ((MainActivity)mActivity).requestTrackSnapshot();
+            return;
+        }
+        if (mTrack == null || !mTrack.getRecordingStart().equals(delta.getTrack().getRecordingStart())) {
+            // the overview of paged out waypoints belongs to another recording
+            resetTrackOverview();
+        }
+        mTrack = delta.getTrack();
+        mTrackSequence = delta.getSequence();
+        drawTrackOverlay(mTrack);
+
+        // center map over last location
+        if (mTrack.getSize() > 0) {
+            mCurrentBestLocation = mTrack.getWayPointLocation(mTrack.getSize() - 1);
+            mController.setCenter(convertToGeoPoint(mCurrentBestLocation));
+        }
+    }
+
+
+    /* Keeps the statistics of the current recording - they are saved along with the track */
+    public void updateTrackStatistics(Track track) {
+        mTrack = track;
+    }
+
+
     /* Getter for current best location */
     public Location getCurrentBestLocation() {
         if (mLocationSystemSetting) {
@@ -444,6 +474,10 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
     /* Removes track crumbs from map */
     private void clearMap(boolean saveTrack) {
 
+        // forget track state - the next recording starts with a snapshot
+        mTrackSequence = TRACK_SEQUENCE_UNKNOWN;
+        resetTrackOverview();
+
         // clear map
         if (mTrackOverlay != null) {
             mMapView.getOverlays().remove(mTrackOverlay);
@@ -452,13 +486,25 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
 
         if (saveTrack) {
             // save track object if requested
-            SaveTrackAsyncHelper saveTrackAsyncHelper = new SaveTrackAsyncHelper();
-            saveTrackAsyncHelper.execute();
+            TrackRepository.getInstance(mActivity).saveTrack(mTrack.snapshot(), FILE_MOST_CURRENT_TRACK, new TrackRepository.Callback<Boolean>() {
+                @Override
+                public void onResult(Boolean saved) {
+                    // clear track object
+                    LogHelper.v(LOG_TAG, "Saving finished.");
+                    mTrack = null;
+
+                    // notify track fragment that save is finished
+                    Intent i = new Intent();
+                    i.setAction(ACTION_TRACK_SAVE);
+                    i.putExtra(EXTRA_SAVE_FINISHED, true);
+                    LocalBroadcastManager.getInstance(mActivity).sendBroadcast(i);
+                }
+            });
             Toast.makeText(mActivity, mActivity.getString(R.string.toast_message_save_track), Toast.LENGTH_LONG).show();
         } else {
             // clear track object and delete temp file
             mTrack = null;
-            mStorageHelper.deleteTempFile();
+            TrackRepository.getInstance(mActivity).deleteTempFile();
         }
 
     }
@@ -559,13 +605,49 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
             Toast.makeText(mActivity, mActivity.getString(R.string.toast_message_acquiring_location), Toast.LENGTH_LONG).show();
         } else {
             LogHelper.v(LOG_TAG, "Drawing track overlay.");
-            mTrackOverlay = MapHelper.createTrackOverlay(mActivity, track, mTrackerServiceRunning);
+            updateTrackOverview(track);
+            mTrackOverlay = MapHelper.createTrackOverlay(mActivity, track, mTrackOverview, mTrackerServiceRunning);
         }
         mMapView.getOverlays().add(mTrackOverlay);
 
     }
 
 
+    /* Extends the overview of paged out waypoints in the background - the track overlay is drawn again, once it is ready */
+    private void updateTrackOverview(Track track) {
+        int end = track.getWayPoints().getFirstResidentIndex();
+        if (mTrackOverviewPending || end <= (mTrackOverview != null ? mTrackOverview.getEnd() : 0)) {
+            return;
+        }
+        mTrackOverviewPending = true;
+        final int trackOverviewGeneration = mTrackOverviewGeneration;
+        TrackRepository.getInstance(mActivity).extendTrackOverview(mTrackOverview, track, new TrackRepository.Callback<TrackOverview>() {
+            @Override
+            public void onResult(TrackOverview overview) {
+                if (trackOverviewGeneration != mTrackOverviewGeneration) {
+                    // the overview belongs to a track that is not shown anymore
+                    return;
+                }
+                mTrackOverviewPending = false;
+                if (overview != null) {
+                    mTrackOverview = overview;
+                    if (mTrack != null && mTrack.getSize() > 0) {
+                        drawTrackOverlay(mTrack);
+                    }
+                }
+            }
+        });
+    }
+
+
+    /* Drops the overview of paged out waypoints - an overview that is still being built is ignored */
+    private void resetTrackOverview() {
+        mTrackOverview = null;
+        mTrackOverviewPending = false;
+        mTrackOverviewGeneration++;
+    }
+
+
     /* Toggles snackbar indicating that location setting is off */
     private boolean toggleLocationOffBar() {
         // create snackbar indicator for location setting off
@@ -591,26 +673,6 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
     }
 
 
-    /* Creates receiver for new WayPoints */
-    private BroadcastReceiver createTrackUpdatedReceiver() {
-        return new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                if (intent.hasExtra(EXTRA_TRACK) && intent.hasExtra(EXTRA_LAST_LOCATION)) {
-                    // draw track on map
-                    mTrack = intent.getParcelableExtra(EXTRA_TRACK);
-                    drawTrackOverlay(mTrack);
-                    // center map over last location
-                    mCurrentBestLocation = intent.getParcelableExtra(EXTRA_LAST_LOCATION);
-                    mController.setCenter(convertToGeoPoint(mCurrentBestLocation));
-                    // clear intent
-                    intent.setAction(ACTION_DEFAULT);
-                }
-            }
-        };
-    }
-
-
     /* Converts Location to GeoPoint */
     private GeoPoint convertToGeoPoint (Location location) {
         if (location != null) {
@@ -667,68 +729,4 @@ public class MainActivityMapFragment extends Fragment implements TrackbookKeys {
 
     }
 
-
-    /**
-     * Inner class: Saves track to external storage using AsyncTask
-     */
-    private class SaveTrackAsyncHelper extends AsyncTask<Void, Void, Void> {
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            LogHelper.v(LOG_TAG, "Saving track object in background.");
-            // save track object
-            mStorageHelper.saveTrack(mTrack, FILE_MOST_CURRENT_TRACK);
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            super.onPostExecute(aVoid);
-            // clear track object
-            LogHelper.v(LOG_TAG, "Saving finished.");
-            mTrack = null;
-
-            // notify track fragment that save is finished
-            Intent i = new Intent();
-            i.setAction(ACTION_TRACK_SAVE);
-            i.putExtra(EXTRA_SAVE_FINISHED, true);
-            LocalBroadcastManager.getInstance(mActivity).sendBroadcast(i);
-        }
-    }
-    /**
-     * End of inner class
-     */
-
-
-    /**
-     * Inner class: Loads track from external storage using AsyncTask
-     */
-    private class LoadTempTrackAsyncHelper extends AsyncTask<Void, Void, Void> {
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            LogHelper.v(LOG_TAG, "Loading temporary track object in background.");
-            // load track object
-            mTrack = mStorageHelper.loadTrack(FILE_TEMP_TRACK);
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            super.onPostExecute(aVoid);
-            LogHelper.v(LOG_TAG, "Loading finished.");
-
-            // draw track on map
-            if (mTrack != null) {
-                drawTrackOverlay(mTrack);
-            }
-
-            // delete temp file
-//            mStorageHelper.deleteTempFile(); // todo check if necessary
-        }
-    }
-    /**
-     * End of inner class
-     */
-
-}
\ No newline at end of file
+}
@@ -17,12 +17,13 @@
 package org.y20k.trackbook;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.location.Location;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -45,19 +46,22 @@ import org.osmdroid.views.overlay.ItemizedIconOverlay;
 import org.osmdroid.views.overlay.compass.CompassOverlay;
 import org.osmdroid.views.overlay.compass.InternalCompassOrientationProvider;
 import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.TrackSummary;
 import org.y20k.trackbook.helpers.DialogHelper;
 import org.y20k.trackbook.helpers.DropdownAdapter;
 import org.y20k.trackbook.helpers.ExportHelper;
 import org.y20k.trackbook.helpers.LengthUnitHelper;
+import org.y20k.trackbook.helpers.LibraryExportHelper;
 import org.y20k.trackbook.helpers.LocationHelper;
 import org.y20k.trackbook.helpers.LogHelper;
 import org.y20k.trackbook.helpers.MapHelper;
-import org.y20k.trackbook.helpers.StorageHelper;
+import org.y20k.trackbook.helpers.TrackRepository;
 import org.y20k.trackbook.helpers.TrackbookKeys;
 
 import java.io.File;
 import java.text.DateFormat;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -106,7 +110,12 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
     private BottomSheetBehavior mStatisticsSheetBehavior;
     private int mCurrentTrack;
     private Track mTrack;
+    private TrackSummary mTrackSummary;
+    private int mExportFormat;
+    private LibraryExportHelper mLibraryExport;
+    private AlertDialog mLibraryExportDialog;
     private BroadcastReceiver mTrackSavedReceiver;
+    private boolean mTrackListLoaded;
 
 
     /* Return a new Instance of MainActivityTrackFragment */
@@ -128,12 +137,15 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
         // get current track
         if (savedInstanceState != null) {
             mCurrentTrack = savedInstanceState.getInt(INSTANCE_CURRENT_TRACK, 0);
+            mExportFormat = savedInstanceState.getInt(INSTANCE_EXPORT_FORMAT, EXPORT_FORMAT_GPX);
         } else {
             mCurrentTrack = 0;
+            mExportFormat = EXPORT_FORMAT_GPX;
         }
 
-        // create drop-down adapter
+        // create drop-down adapter and load list of tracks
         mDropdownAdapter = new DropdownAdapter(mActivity);
+        refreshTrackSelector(false);
 
         // listen for finished save operation
         mTrackSavedReceiver = new BroadcastReceiver() {
@@ -142,14 +154,8 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
                 if (intent.hasExtra(EXTRA_SAVE_FINISHED) && intent.getBooleanExtra(EXTRA_SAVE_FINISHED, false)) {
                     LogHelper.v(LOG_TAG, "Save operation detected. Start loading the new track.");
 
-                    // update dropdown menu (and load track in onItemSelected)
-                    mDropdownAdapter.refresh();
-                    mDropdownAdapter.notifyDataSetChanged();
-                    mDropdown.setAdapter(mDropdownAdapter);
-                    mDropdown.setSelection(0, true);
-
-                    // remove onboarding if necessary
-                    switchOnboardingLayout();
+                    // update dropdown menu (and load track in onItemSelected) - removes onboarding if necessary
+                    refreshTrackSelector(true);
                 }
             }
         };
@@ -238,8 +244,7 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
             displayTrack();
         } else if (mTrack == null) {
             // load track and display map and statistics
-            LoadTrackAsyncHelper loadTrackAsyncHelper = new LoadTrackAsyncHelper();
-            loadTrackAsyncHelper.execute();
+            loadTrack(-1);
         } else {
             // just display map and statistics
             displayTrack();
@@ -276,8 +281,10 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
     @Override
     public void onResume() {
         super.onResume();
-        // show / hide the onboarding layout
-        switchOnboardingLayout();
+        // show / hide the onboarding layout - once the list of tracks is known
+        if (mTrackListLoaded) {
+            switchOnboardingLayout();
+        }
     }
 
 
@@ -303,6 +310,9 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
         // remove listener
         LocalBroadcastManager.getInstance(mActivity).unregisterReceiver(mTrackSavedReceiver);
 
+        // stop a running library export
+        cancelLibraryExport();
+
         super.onDestroy();
     }
 
@@ -312,9 +322,12 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
         // update current track
         mCurrentTrack = i;
 
+        // display statistics from the catalog right away - the map follows once the track is loaded
+        mTrackSummary = mDropdownAdapter.getItem(i).getTrackSummary();
+        displayTrackSummary(mTrackSummary);
+
         // load track and display map and statistics
-        LoadTrackAsyncHelper loadTrackAsyncHelper = new LoadTrackAsyncHelper();
-        loadTrackAsyncHelper.execute(i);
+        loadTrack(i);
     }
 
     @Override
@@ -330,6 +343,7 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
         outState.putDouble(INSTANCE_ZOOM_LEVEL_TRACK_MAP, mMapView.getZoomLevelDouble());
         outState.putParcelable(INSTANCE_TRACK_TRACK_MAP, mTrack);
         outState.putInt(INSTANCE_CURRENT_TRACK, mCurrentTrack);
+        outState.putInt(INSTANCE_EXPORT_FORMAT, mExportFormat);
         super.onSaveInstanceState(outState);
     }
 
@@ -348,16 +362,63 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
             case RESULT_EXPORT_DIALOG:
                 if (resultCode == Activity.RESULT_OK) {
                     // user chose EXPORT
-                    ExportHelper.exportToGpx(mActivity, mTrack);
+                    exportCurrentTrack();
                 } else if (resultCode == Activity.RESULT_CANCELED){
                     // User chose CANCEL
-                    LogHelper.v(LOG_TAG, "Export to GPX: User chose CANCEL.");
+                    LogHelper.v(LOG_TAG, "Export: User chose CANCEL.");
                 }
                 break;
         }
     }
 
 
+    /* Loads track and displays map and statistics - loads the most current track if no item of the dropdown menu is given */
+    private void loadTrack(int item) {
+        TrackRepository.Callback<Track> callback = new TrackRepository.Callback<Track>() {
+            @Override
+            public void onResult(Track track) {
+                mTrack = track;
+                // display track on map - if view still exists
+                if (getView() != null) {
+                    displayTrack();
+                }
+            }
+        };
+
+        if (item >= 0) {
+            // get track file from dropdown adapter
+            File trackFile = mDropdownAdapter.getItem(item).getTrackFile();
+            LogHelper.v(LOG_TAG, "Loading track number " + item);
+            TrackRepository.getInstance(mActivity).loadTrack(trackFile, callback);
+        } else {
+            // load track object from most current file
+            LogHelper.v(LOG_TAG, "No specific track specified. Loading most current one.");
+            TrackRepository.getInstance(mActivity).loadTrack(FILE_MOST_CURRENT_TRACK, callback);
+        }
+    }
+
+
+    /* Reloads the list of tracks - then updates dropdown menu and onboarding layout */
+    private void refreshTrackSelector(final boolean selectNewestTrack) {
+        mDropdownAdapter.refresh(new Runnable() {
+            @Override
+            public void run() {
+                mTrackListLoaded = true;
+                // skip if view does not exist (yet) - onViewCreated attaches the adapter
+                if (getView() == null) {
+                    return;
+                }
+                mDropdown.setAdapter(mDropdownAdapter);
+                if (selectNewestTrack && !mDropdownAdapter.isEmpty()) {
+                    mDropdown.setSelection(0, true);
+                    mCurrentTrack = 0;
+                }
+                switchOnboardingLayout();
+            }
+        });
+    }
+
+
     /* Displays map and statistics for track */
     private void displayTrack() {
         GeoPoint position;
@@ -367,34 +428,20 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
             Location lastLocation = mTrack.getWayPointLocation(mTrack.getSize() -1);
             position = new GeoPoint(lastLocation.getLatitude(), lastLocation.getLongitude());
 
-            String recordingStart = DateFormat.getDateInstance(DateFormat.SHORT, Locale.getDefault()).format(mTrack.getRecordingStart()) + " " +
-                    DateFormat.getTimeInstance(DateFormat.SHORT, Locale.getDefault()).format(mTrack.getRecordingStart());
-            String recordingStop = DateFormat.getDateInstance(DateFormat.SHORT, Locale.getDefault()).format(mTrack.getRecordingStop()) + " " +
-                    DateFormat.getTimeInstance(DateFormat.SHORT, Locale.getDefault()).format(mTrack.getRecordingStop());
+            // statistics come from the catalog entry - summarize the track only if it was not selected from the dropdown menu
+            if (mTrackSummary == null || !mTrackSummary.getRecordingStart().equals(mTrack.getRecordingStart())) {
+                mTrackSummary = new TrackSummary(null, mTrack);
+            }
+            displayTrackSummary(mTrackSummary);
+
+            // the step count is not part of the catalog entry
             String stepsTaken;
             if (mTrack.getStepCount() == -1) {
                 stepsTaken = getString(R.string.statistics_sheet_p_steps_no_pedometer);
             } else {
                 stepsTaken = String.valueOf(Math.round(mTrack.getStepCount()));
             }
-
-            // populate length views
-            displayCurrentLengthUnits();
-            // populate other views
             mStepsView.setText(stepsTaken);
-            mWaypointsView.setText(String.valueOf(mTrack.getWayPoints().size()));
-            mDurationView.setText(LocationHelper.convertToReadableTime(mTrack.getTrackDuration(), true));
-            mRecordingStartView.setText(recordingStart);
-            mRecordingStopView.setText(recordingStop);
-
-            // show/hide elevation views depending on file format version
-            if (mTrack.getTrackFormatVersion() > 1 && mTrack.getMinAltitude() > 0) {
-                // show elevation views
-                mElevationDataViews.setVisibility(View.VISIBLE);
-            } else {
-                // hide elevation views
-                mElevationDataViews.setVisibility(View.GONE);
-            }
 
             // draw track on map
             drawTrackOverlay(mTrack);
@@ -409,6 +456,38 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
     }
 
 
+    /* Displays the statistics of given catalog entry - and centers the map over its bounding box */
+    private void displayTrackSummary(TrackSummary trackSummary) {
+        String recordingStart = DateFormat.getDateInstance(DateFormat.SHORT, Locale.getDefault()).format(trackSummary.getRecordingStart()) + " " +
+                DateFormat.getTimeInstance(DateFormat.SHORT, Locale.getDefault()).format(trackSummary.getRecordingStart());
+        String recordingStop = DateFormat.getDateInstance(DateFormat.SHORT, Locale.getDefault()).format(trackSummary.getRecordingStop()) + " " +
+                DateFormat.getTimeInstance(DateFormat.SHORT, Locale.getDefault()).format(trackSummary.getRecordingStop());
+
+        // populate length views
+        displayCurrentLengthUnits();
+        // populate other views - the step count is set once the track is loaded
+        mStepsView.setText("");
+        mWaypointsView.setText(String.valueOf(trackSummary.getWayPointCount()));
+        mDurationView.setText(LocationHelper.convertToReadableTime(trackSummary.getTrackDuration(), true));
+        mRecordingStartView.setText(recordingStart);
+        mRecordingStopView.setText(recordingStop);
+
+        // show/hide elevation views - tracks in file format version 1 have no altitude
+        if (trackSummary.getMinAltitude() > 0) {
+            // show elevation views
+            mElevationDataViews.setVisibility(View.VISIBLE);
+        } else {
+            // hide elevation views
+            mElevationDataViews.setVisibility(View.GONE);
+        }
+
+        // center map over the track
+        if (trackSummary.getWayPointCount() > 0) {
+            mController.setCenter(new GeoPoint((trackSummary.getMinLatitude() + trackSummary.getMaxLatitude()) / 2, (trackSummary.getMinLongitude() + trackSummary.getMaxLongitude()) / 2));
+        }
+    }
+
+
     /* Draws track onto overlay */
     private void drawTrackOverlay(Track track) {
         mMapView.getOverlays().remove(mTrackOverlay);
@@ -439,47 +518,83 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
 
     /* Displays views in statistic sheet according to current locale */
     private void displayCurrentLengthUnits() {
-        mDistanceView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getTrackDistance()));
-        mPositiveElevationView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getPositiveElevation()));
-        mNegativeElevationView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getNegativeElevation()));
-        mMaxAltitudeView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getMaxAltitude()));
-        mMinAltitudeView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getMinAltitude()));
+        if (mTrackSummary == null) {
+            return;
+        }
+        mDistanceView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getTrackDistance()));
+        mPositiveElevationView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getPositiveElevation()));
+        mNegativeElevationView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getNegativeElevation()));
+        mMaxAltitudeView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getMaxAltitude()));
+        mMinAltitudeView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getMinAltitude()));
     }
 
 
     /* Switches views in statistic sheet between Metric and Imperial */
     private void displayOppositeLengthUnits() {
+        if (mTrackSummary == null) {
+            return;
+        }
         int oppositeLengthUnit = LengthUnitHelper.getUnitSystem() * -1;
-        mDistanceView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getTrackDistance(), oppositeLengthUnit));
-        mPositiveElevationView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getPositiveElevation(), oppositeLengthUnit));
-        mNegativeElevationView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getNegativeElevation(), oppositeLengthUnit));
-        mMaxAltitudeView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getMaxAltitude(), oppositeLengthUnit));
-        mMinAltitudeView.setText(LengthUnitHelper.convertDistanceToString(mTrack.getMinAltitude(), oppositeLengthUnit));
+        mDistanceView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getTrackDistance(), oppositeLengthUnit));
+        mPositiveElevationView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getPositiveElevation(), oppositeLengthUnit));
+        mNegativeElevationView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getNegativeElevation(), oppositeLengthUnit));
+        mMaxAltitudeView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getMaxAltitude(), oppositeLengthUnit));
+        mMinAltitudeView.setText(LengthUnitHelper.convertDistanceToString(mTrackSummary.getMinAltitude(), oppositeLengthUnit));
     }
 
 
     /* Deletes currently visible track */
     private void deleteCurrentTrack() {
 
-        // delete track file and refresh dropdown adapter
-        if (mDropdownAdapter.getItem(mCurrentTrack).getTrackFile().delete()) {
-            mDropdownAdapter.refresh();
-            mDropdownAdapter.notifyDataSetChanged();
-            mDropdown.setAdapter(mDropdownAdapter);
-        } else {
-            LogHelper.e(LOG_TAG, "Unable to delete recording.");
-            return;
-        }
+        // delete track file and refresh dropdown adapter - shows next track or onboarding
+        File trackFile = mDropdownAdapter.getItem(mCurrentTrack).getTrackFile();
+        TrackRepository.getInstance(mActivity).deleteTrack(trackFile, new TrackRepository.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean deleted) {
+                if (deleted != null && deleted) {
+                    refreshTrackSelector(true);
+                } else {
+                    LogHelper.e(LOG_TAG, "Unable to delete recording.");
+                }
+            }
+        });
+
+    }
+
+
+    /* Exports currently visible track to the "Download" folder - in the format chosen by the user */
+    private void exportCurrentTrack() {
+        final Track track = mTrack;
+        final int exportFormat = mExportFormat;
+        TrackRepository.getInstance(mActivity).submitExport(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return ExportHelper.exportToDownloads(mActivity, track, exportFormat);
+            }
+        }, new TrackRepository.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean exported) {
+                showExportResult(exported != null && exported, ExportHelper.getExportFile(track, exportFormat));
+            }
+        });
+    }
 
-        if (mDropdownAdapter.isEmpty()) {
-            // show onboarding
-            switchOnboardingLayout();
-        } else {
-            // show next track
-            mDropdown.setSelection(0, true);
-            mCurrentTrack = 0;
-        }
 
+    /* Informs user about the result of an export */
+    private void showExportResult(boolean success, File exportFile) {
+        int message = success ? R.string.toast_message_export_success : R.string.toast_message_export_fail;
+        String toastMessage = mActivity.getString(message) + " " + exportFile.toString();
+        Toast.makeText(mActivity, toastMessage, Toast.LENGTH_LONG).show();
+    }
+
+
+    /* Lets the user choose an export format - the position of the chosen item is the export format */
+    private void showExportFormatDialog(DialogInterface.OnClickListener listener) {
+        AlertDialog.Builder dialogBuilder = new AlertDialog.Builder(mActivity);
+        dialogBuilder.setTitle(R.string.dialog_export_format_title);
+        dialogBuilder.setItems(ExportHelper.getExportFormatNames(), listener);
+        dialogBuilder.setNegativeButton(R.string.dialog_default_action_cancel, null);
+        dialogBuilder.show();
     }
 
 
@@ -529,60 +644,188 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
     }
 
 
-    /* Creates OnClickListener for the export button - needed in onCreateView */
+    /* Creates OnClickListener for the share button - needed in onCreateView */
     private View.OnClickListener getShareButtonListener() {
         return new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                Intent intent = ExportHelper.getGpxFileIntent(mActivity, mTrack);
-                // create intent to show chooser
-                String title = getString(R.string.dialog_share_gpx);
-//                String title = getResources().getString(R.string.chooser_title);
-                Intent chooser = Intent.createChooser(intent, title);
-                if (intent.resolveActivity(mActivity.getPackageManager()) != null) {
-                    startActivity(chooser);
-                } else {
-                    Toast.makeText(mActivity, R.string.toast_message_install_file_helper, Toast.LENGTH_LONG).show();
-                }
+                // let user choose between the complete recording and a compact copy - then a format
+                AlertDialog.Builder dialogBuilder = new AlertDialog.Builder(mActivity);
+                dialogBuilder.setTitle(R.string.dialog_share_title);
+                dialogBuilder.setItems(new CharSequence[] {getString(R.string.dialog_share_complete), getString(R.string.dialog_share_compact)}, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        final boolean compact = which == 1;
+                        showExportFormatDialog(new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int exportFormat) {
+                                shareCurrentTrack(exportFormat, compact);
+                            }
+                        });
+                    }
+                });
+                dialogBuilder.setNegativeButton(R.string.dialog_default_action_cancel, null);
+                dialogBuilder.show();
             }
         };
     }
 
 
+    /* Brings up the share sheet - the export file is generated when the receiving app reads it */
+    private void shareCurrentTrack(int exportFormat, boolean compact) {
+        File trackFile = mDropdownAdapter.getItem(mCurrentTrack).getTrackFile();
+        Intent intent = ExportHelper.getShareIntent(trackFile, mTrack, exportFormat, compact);
+        // create intent to show chooser
+        String title = getString(R.string.dialog_share_gpx);
+        Intent chooser = Intent.createChooser(intent, title);
+        if (intent.resolveActivity(mActivity.getPackageManager()) != null) {
+            startActivity(chooser);
+        } else {
+            Toast.makeText(mActivity, R.string.toast_message_install_file_helper, Toast.LENGTH_LONG).show();
+        }
+    }
+
+
     /* Creates OnClickListener for the export button - needed in onCreateView */
     private View.OnClickListener getExportButtonListener() {
         return new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                // dialog text components
-                int dialogTitle;
-                int dialogPositiveButton;
-                int dialogNegativeButton;
-                DateFormat df = DateFormat.getDateInstance(DateFormat.MEDIUM, Locale.getDefault());
-                String recordingStartDate = df.format(mTrack.getRecordingStart());
-                String dialogMessage;
+                // let user choose between this recording and all recordings - then a format
+                AlertDialog.Builder dialogBuilder = new AlertDialog.Builder(mActivity);
+                dialogBuilder.setTitle(R.string.dialog_export_scope_title);
+                dialogBuilder.setItems(new CharSequence[] {getString(R.string.dialog_export_scope_current), getString(R.string.dialog_export_scope_all)}, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (which == 0) {
+                            showExportFormatDialog(new DialogInterface.OnClickListener() {
+                                @Override
+                                public void onClick(DialogInterface dialog, int exportFormat) {
+                                    checkExportFile(exportFormat);
+                                }
+                            });
+                        } else if (mLibraryExport == null) {
+                            // exports all recordings into one ZIP file - unless such an export is already running
+                            showExportFormatDialog(new DialogInterface.OnClickListener() {
+                                @Override
+                                public void onClick(DialogInterface dialog, int exportFormat) {
+                                    exportAllTracks(exportFormat);
+                                }
+                            });
+                        }
+                    }
+                });
+                dialogBuilder.setNegativeButton(R.string.dialog_default_action_cancel, null);
+                dialogBuilder.show();
+            }
+        };
+    }
 
-                // get text elements for delete dialog
-                if (ExportHelper.gpxFileExists(mTrack)) {
-                    // CASE: OVERWRITE - GPX file exists
-                    dialogTitle = R.string.dialog_export_title_overwrite;
-                    dialogMessage = getString(R.string.dialog_export_content_overwrite) + " (" + recordingStartDate + " | " + LengthUnitHelper.convertDistanceToString(mTrack.getTrackDistance()) + ")";
-                    dialogPositiveButton = R.string.dialog_export_action_overwrite;
-                    dialogNegativeButton = R.string.dialog_default_action_cancel;
+
+    /* Exports all recordings into one ZIP file in the "Download" folder - shows progress until the export is finished */
+    private void exportAllTracks(int exportFormat) {
+        // show progress dialog
+        AlertDialog.Builder dialogBuilder = new AlertDialog.Builder(mActivity);
+        dialogBuilder.setTitle(R.string.dialog_export_all_title);
+        dialogBuilder.setMessage(getString(R.string.dialog_export_all_progress, 0, 0));
+        dialogBuilder.setCancelable(false);
+        dialogBuilder.setNegativeButton(R.string.dialog_default_action_cancel, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                LogHelper.v(LOG_TAG, "Export all: User chose CANCEL.");
+                cancelLibraryExport();
+                Toast.makeText(mActivity, R.string.toast_message_export_cancelled, Toast.LENGTH_LONG).show();
+            }
+        });
+        mLibraryExportDialog = dialogBuilder.show();
+
+        // start export
+        mLibraryExport = LibraryExportHelper.start(mActivity, exportFormat, new LibraryExportHelper.Listener() {
+            @Override
+            public void onProgress(int processedTracks, int totalTracks) {
+                if (mLibraryExportDialog != null) {
+                    mLibraryExportDialog.setMessage(getString(R.string.dialog_export_all_progress, processedTracks, totalTracks));
+                }
+            }
+            @Override
+            public void onFinished(@Nullable File zipFile, int exportedTracks, int totalTracks) {
+                mLibraryExport = null;
+                if (mLibraryExportDialog != null) {
+                    mLibraryExportDialog.dismiss();
+                    mLibraryExportDialog = null;
+                }
+                if (zipFile != null) {
+                    showExportResult(true, zipFile);
                 } else {
-                    // CASE: EXPORT - GPX file does NOT yet exits
-                    dialogTitle = R.string.dialog_export_title_export;
-                    dialogMessage = getString(R.string.dialog_export_content_export) + " (" + recordingStartDate + " | " + LengthUnitHelper.convertDistanceToString(mTrack.getTrackDistance()) + ")";
-                    dialogPositiveButton = R.string.dialog_export_action_export;
-                    dialogNegativeButton = R.string.dialog_default_action_cancel;
+                    Toast.makeText(mActivity, R.string.toast_message_export_all_fail, Toast.LENGTH_LONG).show();
                 }
+            }
+        });
+    }
 
-                // show delete dialog - results are handles by onActivityResult
-                DialogFragment dialogFragment = DialogHelper.newInstance(dialogTitle, dialogMessage, dialogPositiveButton, dialogNegativeButton);
-                dialogFragment.setTargetFragment(MainActivityTrackFragment.this, RESULT_EXPORT_DIALOG);
-                dialogFragment.show(mActivity.getSupportFragmentManager(), "ExportDialog");
+
+    /* Stops a running library export */
+    private void cancelLibraryExport() {
+        if (mLibraryExport != null) {
+            mLibraryExport.cancel();
+            mLibraryExport = null;
+        }
+        if (mLibraryExportDialog != null) {
+            mLibraryExportDialog.dismiss();
+            mLibraryExportDialog = null;
+        }
+    }
+
+
+    /* Checks for an existing export file in the background - then shows the export dialog */
+    private void checkExportFile(final int exportFormat) {
+        final Track track = mTrack;
+        mExportFormat = exportFormat;
+        TrackRepository.getInstance(mActivity).submitExport(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return ExportHelper.exportFileExists(track, exportFormat);
             }
-        };
+        }, new TrackRepository.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean exportFileExists) {
+                if (isAdded()) {
+                    showExportDialog(track, exportFileExists != null && exportFileExists);
+                }
+            }
+        });
+    }
+
+
+    /* Shows the export dialog for given track */
+    private void showExportDialog(Track track, boolean exportFileExists) {
+        // dialog text components
+        int dialogTitle;
+        int dialogPositiveButton;
+        int dialogNegativeButton;
+        DateFormat df = DateFormat.getDateInstance(DateFormat.MEDIUM, Locale.getDefault());
+        String recordingStartDate = df.format(track.getRecordingStart());
+        String dialogMessage;
+
+        // get text elements for delete dialog
+        if (exportFileExists) {
+            // CASE: OVERWRITE - export file exists
+            dialogTitle = R.string.dialog_export_title_overwrite;
+            dialogMessage = getString(R.string.dialog_export_content_overwrite) + " (" + recordingStartDate + " | " + LengthUnitHelper.convertDistanceToString(track.getTrackDistance()) + ")";
+            dialogPositiveButton = R.string.dialog_export_action_overwrite;
+            dialogNegativeButton = R.string.dialog_default_action_cancel;
+        } else {
+            // CASE: EXPORT - export file does NOT yet exits
+            dialogTitle = R.string.dialog_export_title_export;
+            dialogMessage = getString(R.string.dialog_export_content_export) + " (" + recordingStartDate + " | " + LengthUnitHelper.convertDistanceToString(track.getTrackDistance()) + ")";
+            dialogPositiveButton = R.string.dialog_export_action_export;
+            dialogNegativeButton = R.string.dialog_default_action_cancel;
+        }
+
+        // show delete dialog - results are handles by onActivityResult
+        DialogFragment dialogFragment = DialogHelper.newInstance(dialogTitle, dialogMessage, dialogPositiveButton, dialogNegativeButton);
+        dialogFragment.setTargetFragment(MainActivityTrackFragment.this, RESULT_EXPORT_DIALOG);
+        dialogFragment.show(mActivity.getSupportFragmentManager(), "ExportDialog");
     }
 
 
@@ -596,8 +839,9 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
                 int dialogPositiveButton = R.string.dialog_delete_action_delete;
                 int dialogNegativeButton = R.string.dialog_default_action_cancel;
                 DateFormat df = DateFormat.getDateInstance(DateFormat.MEDIUM, Locale.getDefault());
-                String recordingStartDate = df.format(mTrack.getRecordingStart());
-                String dialogMessage = getString(R.string.dialog_delete_content) + " " + recordingStartDate + " | " + LengthUnitHelper.convertDistanceToString(mTrack.getTrackDistance());
+                TrackSummary trackSummary = mDropdownAdapter.getItem(mCurrentTrack).getTrackSummary();
+                String recordingStartDate = df.format(trackSummary.getRecordingStart());
+                String dialogMessage = getString(R.string.dialog_delete_content) + " " + recordingStartDate + " | " + LengthUnitHelper.convertDistanceToString(trackSummary.getTrackDistance());
 
                 // show delete dialog - results are handles by onActivityResult
                 DialogFragment dialogFragment = DialogHelper.newInstance(dialogTitle, dialogMessage, dialogPositiveButton, dialogNegativeButton);
@@ -656,41 +900,4 @@ public class MainActivityTrackFragment extends Fragment implements AdapterView.O
         });
     }
 
-
-    /**
-     * Inner class: Loads track from external storage using AsyncTask
-     */
-    private class LoadTrackAsyncHelper extends AsyncTask<Integer, Void, Void> {
-
-        @Override
-        protected Void doInBackground(Integer... ints) {
-            LogHelper.v(LOG_TAG, "Loading track object in background.");
-
-            StorageHelper storageHelper = new StorageHelper(mActivity);
-            if (ints.length > 0) {
-                // get track file from dropdown adapter
-                int item = ints[0];
-                File trackFile = mDropdownAdapter.getItem(item).getTrackFile();
-                LogHelper.v(LOG_TAG, "Loading track number " + item);
-                mTrack = storageHelper.loadTrack(trackFile);
-            } else {
-                // load track object from most current file
-                LogHelper.v(LOG_TAG, "No specific track specified. Loading most current one.");
-                mTrack = storageHelper.loadTrack(FILE_MOST_CURRENT_TRACK);
-            }
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            super.onPostExecute(aVoid);
-
-            // display track on map
-            displayTrack();
-        }
-    }
-    /**
-     * End of inner class
-     */
-
-}
\ No newline at end of file
+}
@@ -30,26 +30,36 @@ import android.hardware.SensorManager;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
-import android.os.AsyncTask;
 import android.os.Binder;
 import android.os.Bundle;
-import android.os.CountDownTimer;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.widget.Toast;
 
 import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.TrackDelta;
+import org.y20k.trackbook.core.WayPointPager;
+import org.y20k.trackbook.helpers.AdaptiveSamplingPolicy;
+import org.y20k.trackbook.helpers.JournalHelper;
+import org.y20k.trackbook.helpers.LocationDutyCycleHelper;
+import org.y20k.trackbook.helpers.LocationFilter;
 import org.y20k.trackbook.helpers.LocationHelper;
+import org.y20k.trackbook.helpers.LocationRingBuffer;
 import org.y20k.trackbook.helpers.LogHelper;
 import org.y20k.trackbook.helpers.NotificationHelper;
-import org.y20k.trackbook.helpers.StorageHelper;
+import org.y20k.trackbook.helpers.SamplingPolicy;
+import org.y20k.trackbook.helpers.TrackRepository;
 import org.y20k.trackbook.helpers.TrackbookKeys;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import static android.hardware.Sensor.TYPE_STEP_COUNTER;
 
@@ -65,12 +75,17 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
 
     /* Main class variables */
     private Track mTrack;
-    private CountDownTimer mTimer;
+    private JournalHelper mJournalHelper;
+    private WayPointPager mWayPointPager;
+    private SamplingPolicy mSamplingPolicy;
+    private Runnable mSamplingTick;
     private LocationManager mLocationManager;
     private SensorManager mSensorManager;
     private float mStepCountOffset;
-    private LocationListener mGPSListener = null;
-    private LocationListener mNetworkListener = null;
+    private LocationDutyCycleHelper mLocationDutyCycle;
+    private HandlerThread mLocationThread;
+    private LocationRingBuffer mLocationFixes;
+    private LocationFilter mLocationFilter;
     private SettingsContentObserver mSettingsContentObserver;
     private Location mCurrentBestLocation;
     private Notification mNotification;
@@ -79,6 +94,12 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
     private boolean mTrackerServiceRunning;
     private boolean mLocationSystemSetting;
     private boolean mResumedFlag;
+    private boolean mResumePending;
+    private int mResumeGeneration;
+    private Handler mMainHandler;
+    private final List<TrackObserverRecord> mTrackObservers = new ArrayList<>();
+    private boolean mTrackObserverDispatchScheduled;
+    private long mTrackSequence;
 
     private final IBinder mBinder = new LocalBinder(); // todo move to onCreate
 
@@ -105,6 +126,21 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
 
         // initialize the resume flag
         mResumedFlag = false;
+
+        // sampling adapts to speed and heading changes
+        mSamplingPolicy = new AdaptiveSamplingPolicy();
+
+        // observers are notified on the main thread
+        mMainHandler = new Handler(Looper.getMainLooper());
+
+        // location fixes arrive on their own thread - the sampling tick collects them from the buffer
+        mLocationFixes = new LocationRingBuffer(LOCATION_BUFFER_CAPACITY);
+        mLocationFilter = new LocationFilter();
+        mLocationThread = new HandlerThread(LOG_TAG + "-Location");
+        mLocationThread.start();
+
+        // older waypoints of the track are paged out to the segments of the temp track - they are read back on the I/O thread of TrackRepository
+        mWayPointPager = TrackRepository.getInstance(this).getWayPointPager();
     }
 
 
@@ -163,6 +199,9 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
     public void onDestroy() {
         LogHelper.v(LOG_TAG, "onDestroy called.");
 
+        // a temp track that is still loading must not start recording anymore
+        cancelPendingResume();
+
         if (mTrackerServiceRunning) {
             stopTracking();
         }
@@ -170,6 +209,13 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
         // remove TrackerService from foreground state
         stopForeground(true);
 
+        // drop observers and pending notifications
+        mMainHandler.removeCallbacksAndMessages(null);
+        mTrackObservers.clear();
+
+        // stop location thread
+        mLocationThread.quitSafely();
+
         super.onDestroy();
     }
 
@@ -186,6 +232,7 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
 
         // set step count in track
         mTrack.setStepCount(stepCount);
+        notifyStatisticsChanged();
     }
 
 
@@ -200,8 +247,15 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
         if (mLocationSystemSetting) {
             LogHelper.v(LOG_TAG, "Start tracking");
 
+            // a new track replaces a temp track that is still loading
+            cancelPendingResume();
+
             // create a new track - if requested
             mTrack = new Track();
+            mTrack.setWayPointPager(mWayPointPager);
+
+            // start a new journal for the temp track
+            mJournalHelper = new JournalHelper(this);
 
             // get last location
             if (lastLocation != null) {
@@ -221,38 +275,32 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
 
 
     /* Resume tracking after stop/pause */
-    public void resumeTracking(Location lastLocation) {
+    public void resumeTracking(final Location lastLocation) {
         if (mLocationSystemSetting) {
+            // ignore repeated requests - e.g. a double tap on the resume button
+            if (mResumePending || mTrackerServiceRunning) {
+                LogHelper.v(LOG_TAG, "Recording is already running or about to resume.");
+                return;
+            }
             LogHelper.v(LOG_TAG, "Recording resumed");
 
             // switch the resume flag
             mResumedFlag = true;
 
-            // create a new track - if requested
-            StorageHelper storageHelper = new StorageHelper(this);
-            if (storageHelper.tempFileExists()) {
-                // load temp track file
-                mTrack = storageHelper.loadTrack(FILE_TEMP_TRACK);
-                // try to mark last waypoint as stopover
-                int lastWayPoint = mTrack.getSize() - 1;
-                if (lastWayPoint >= 0) {
-                    mTrack.getWayPoints().get(lastWayPoint).setIsStopOver(true);
+            // load temp track file - recording continues once it is loaded, unless the resume has been cancelled meanwhile
+            mResumePending = true;
+            final int resumeGeneration = ++mResumeGeneration;
+            TrackRepository.getInstance(this).loadTrack(FILE_TEMP_TRACK, new TrackRepository.Callback<Track>() {
+                @Override
+                public void onResult(Track track) {
+                    if (resumeGeneration != mResumeGeneration) {
+                        LogHelper.v(LOG_TAG, "Resume has been cancelled. Ignoring loaded temp track.");
+                        return;
+                    }
+                    mResumePending = false;
+                    continueTracking(track, lastLocation);
                 }
-            } else {
-                // fallback, if tempfile did not exist
-                LogHelper.e(LOG_TAG, "Unable to find previously saved track temp file.");
-                mTrack = new Track();
-            }
-
-            // get last location
-            mCurrentBestLocation = lastLocation;
-            // FALLBACK: use last recorded location
-            if (mCurrentBestLocation == null && mTrack.getSize() > 0) {
-                mCurrentBestLocation = mTrack.getWayPointLocation(mTrack.getSize() -1);
-            }
-
-            // begin recording
-            startMovementRecording();
+            });
 
         } else {
             LogHelper.i(LOG_TAG, "Location Setting is turned off.");
@@ -265,25 +313,25 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
     public void stopTracking() {
         LogHelper.v(LOG_TAG, "Recording stopped");
 
+        // a temp track that is still loading must not start recording after the stop
+        cancelPendingResume();
+
         // catches a bug that leaves the ui in a incorrect state after a crash
         if (!mTrackerServiceRunning) {
             saveTrackerServiceState(mTrackerServiceRunning, FAB_STATE_SAVE);
-            broadcastTrackingStateChange();
+            notifyTrackingStateChanged();
             return;
         }
 
         // store current date and time
         mTrack.setRecordingEnd();
+        notifyStatisticsChanged();
 
-        // stop timer
-        mTimer.cancel();
-
-        // broadcast an updated track
-        broadcastTrackUpdate();
+        // stop sampling
+        stopRequestingLocationChanges();
 
         // save a temp file in case the activity has been killed
-        SaveTempTrackAsyncHelper saveTempTrackAsyncHelper = new SaveTempTrackAsyncHelper();
-        saveTempTrackAsyncHelper.execute();
+        saveTempTrack();
 
         // change notification
         displayNotification(false);
@@ -313,11 +361,24 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
     }
 
 
+    /* Invalidates a temp track load started by resumeTracking - its result will be ignored */
+    private void cancelPendingResume() {
+        if (mResumePending) {
+            mResumePending = false;
+            mResumedFlag = false;
+        }
+        mResumeGeneration++;
+    }
+
+
     /* Starts to record movements */
     private void startMovementRecording() {
         // initialize step counter
         mStepCountOffset = 0;
 
+        // observers need the whole track of a new or resumed recording
+        notifyTrackReplaced();
+
         // add last location as WayPoint to track
         addWayPointToTrack();
 
@@ -327,7 +388,7 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
         // create gps and network location listeners
         startFindingLocation();
 
-        // start timer that periodically request a location update
+        // start sampling tick that periodically tries to add a location to the track
         startRequestingLocationChanges();
 
         // start counting steps
@@ -353,32 +414,98 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
     }
 
 
-    /* Set timer to periodically retrieve new locations and to prevent endless tracking */
+    /* Starts the sampling tick that periodically adds locations to the track - the sampling policy decides when the next tick is due */
     private void startRequestingLocationChanges() {
         final long previouslyRecordedDuration = mTrack.getTrackDuration();
-        mTimer = new CountDownTimer(EIGHT_HOURS_IN_MILLISECONDS, FIFTEEN_SECONDS_IN_MILLISECONDS) {
+        final long sessionStart = SystemClock.elapsedRealtime();
+        stopRequestingLocationChanges();
+        mSamplingPolicy.reset();
+        mSamplingTick = new Runnable() {
             @Override
-            public void onTick(long millisUntilFinished) {
+            public void run() {
+                long sessionDuration = SystemClock.elapsedRealtime() - sessionStart;
                 // update track duration - and add duration from previously interrupted / paused session
-                long duration = EIGHT_HOURS_IN_MILLISECONDS - millisUntilFinished + previouslyRecordedDuration;
-                mTrack.setDuration(duration);
-                // try to add WayPoint to Track
+                mTrack.setDuration(sessionDuration + previouslyRecordedDuration);
+                notifyStatisticsChanged();
+                // fuse the fixes received since the last tick - then update movement state and try to add WayPoint to Track
+                drainLocationFixes();
+                mSamplingPolicy.onSample(mCurrentBestLocation);
                 addWayPointToTrack();
                 // update notification
                 mNotification = NotificationHelper.getUpdatedNotification(TrackerService.this, mNotificationBuilder, mTrack);
                 mNotificationManager.notify(TRACKER_SERVICE_NOTIFICATION_ID, mNotification);
                 // save a temp file in case the service has been killed by the system
-                SaveTempTrackAsyncHelper saveTempTrackAsyncHelper = new SaveTempTrackAsyncHelper();
-                saveTempTrackAsyncHelper.execute();
+                saveTempTrack();
+                // schedule next tick - gps is powered up again shortly before
+                long samplingInterval = mSamplingPolicy.getSamplingInterval();
+                mMainHandler.postDelayed(this, samplingInterval);
+                mLocationDutyCycle.onSampleTaken(samplingInterval);
+            }
+        };
+        mMainHandler.post(mSamplingTick);
+    }
+
+
+    /* Stops the sampling tick */
+    private void stopRequestingLocationChanges() {
+        if (mSamplingTick != null) {
+            mMainHandler.removeCallbacks(mSamplingTick);
+            mSamplingTick = null;
+        }
+    }
+
+
+    /* Continues recording with given temp track */
+    private void continueTracking(@Nullable Track track, Location lastLocation) {
+        if (track != null) {
+            mTrack = track;
+            // try to mark last waypoint as stopover
+            int lastWayPoint = mTrack.getSize() - 1;
+            if (lastWayPoint >= 0) {
+                mTrack.setWayPointStopOver(lastWayPoint, true);
             }
+        } else {
+            // fallback, if tempfile did not exist
+            LogHelper.e(LOG_TAG, "Unable to find previously saved track temp file.");
+            mTrack = new Track();
+        }
+        mTrack.setWayPointPager(mWayPointPager);
+
+        // continue with a fresh journal for the loaded track
+        mJournalHelper = new JournalHelper(this);
+
+        // get last location
+        mCurrentBestLocation = lastLocation;
+        // FALLBACK: use last recorded location
+        if (mCurrentBestLocation == null && mTrack.getSize() > 0) {
+            mCurrentBestLocation = mTrack.getWayPointLocation(mTrack.getSize() -1);
+        }
+
+        // begin recording
+        startMovementRecording();
+    }
+
 
+    /* Saves the changes of the current track to the temp journal - compacts journal into the temp file from time to time */
+    private void saveTempTrack() {
+        // waypoints that are stored in segments can be dropped from memory
+        final Track track = mTrack;
+        TrackRepository.Callback<Integer> pageOut = new TrackRepository.Callback<Integer>() {
             @Override
-            public void onFinish() {
-                // stop tracking after eight hours
-                stopTracking();
+            public void onResult(Integer storedWayPoints) {
+                if (storedWayPoints != null && track == mTrack) {
+                    mTrack.pageOutWayPoints(storedWayPoints);
+                }
             }
         };
-        mTimer.start();
+        if (mJournalHelper.checkCompaction()) {
+            // rewrite the whole track object - the snapshot supersedes all pending journal records
+            mJournalHelper.markCompacted(mTrack);
+            TrackRepository.getInstance(this).updateTempTrack(mJournalHelper, null, mTrack.snapshot(), pageOut);
+        } else {
+            // append changes to journal
+            TrackRepository.getInstance(this).updateTempTrack(mJournalHelper, mJournalHelper.collectChanges(mTrack), null, pageOut);
+        }
     }
 
 
@@ -402,27 +529,13 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
             if (LocationHelper.isAccurate(mCurrentBestLocation) && LocationHelper.isCurrent(mCurrentBestLocation)) {
                 // add first location to track
                 success = mTrack.addWayPoint(previousLocation, mCurrentBestLocation);
-            } else {
-                // just send a broadcast indicating that current location fix not not suited
-                broadcastTrackUpdate();
             }
         } else {
             // get location of previous WayPoint
             previousLocation = mTrack.getWayPointLocation(trackSize - 1);
 
-            // default value for average speed
-            float averageSpeed = 0f;
-
-            // compute average speed if new location came from network provider
-            if (trackSize > 1 && mCurrentBestLocation.getProvider().equals(LocationManager.NETWORK_PROVIDER)) {
-                Location firstWayPoint = mTrack.getWayPointLocation(0);
-                float distance = firstWayPoint.distanceTo(previousLocation);
-                long timeDifference = previousLocation.getElapsedRealtimeNanos() - firstWayPoint.getElapsedRealtimeNanos();
-                averageSpeed = distance / ((float) timeDifference / ONE_SECOND_IN_NANOSECOND);
-            }
-
-            // if accurate AND new
-            if (LocationHelper.isAccurate(mCurrentBestLocation) && LocationHelper.isNewWayPoint(previousLocation, mCurrentBestLocation, averageSpeed)) {
+            // if accurate AND new - implausible network jumps were already rejected by the location filter
+            if (LocationHelper.isAccurate(mCurrentBestLocation) && mSamplingPolicy.isNewWayPoint(previousLocation, mCurrentBestLocation)) {
                 // add current best location to track
                 success = mTrack.addWayPoint(previousLocation, mCurrentBestLocation);
             }
@@ -433,7 +546,7 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
                 int lastWayPoint = mTrack.getSize() - 2;
                 if (lastWayPoint >= 0) {
                     // mark last location as stop over
-                    mTrack.getWayPoints().get(lastWayPoint).setIsStopOver(true);
+                    mTrack.setWayPointStopOver(lastWayPoint, true);
                 }
                 mResumedFlag = false;
             } else {
@@ -441,33 +554,38 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
                 mTrack.updateDistance(previousLocation, mCurrentBestLocation);
             }
 
-            // send local broadcast if new WayPoint was added
-            broadcastTrackUpdate();
+            // notify observers if new WayPoint was added - stop over status of the previous WayPoint may have changed, too
+            notifyWayPointsAppended(Math.max(0, trackSize - 1));
+            notifyStatisticsChanged();
         }
 
     }
 
 
-    /* Broadcasts a track update */
-    private void broadcastTrackUpdate() {
-        if (mTrack != null) {
-            Intent i = new Intent();
-            i.setAction(ACTION_TRACK_UPDATED);
-            i.putExtra(EXTRA_TRACK, mTrack);
-            i.putExtra(EXTRA_LAST_LOCATION, mCurrentBestLocation);
-            LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(i);
+    /* Fuses all fixes from the location buffer - the current best location becomes the filtered estimate - must be called on the main thread */
+    private void drainLocationFixes() {
+        boolean updated = false;
+        while (!mLocationFixes.isEmpty()) {
+            // fixes are read in place - the filter keeps its state in primitive fields
+            updated |= mLocationFilter.update(mLocationFixes.getElapsedRealtimeNanos(), mLocationFixes.getTime(), mLocationFixes.getProvider(),
+                    mLocationFixes.getLatitude(), mLocationFixes.getLongitude(), mLocationFixes.getAccuracy(),
+                    mLocationFixes.getAltitude(), mLocationFixes.getSatellites());
+            mLocationFixes.remove();
+        }
+        if (updated) {
+            // save location
+            mCurrentBestLocation = mLocationFilter.getEstimate();
         }
     }
 
 
-    /* Creates a location listener */
+    /* Creates a location listener - its callbacks run on the location thread */
     private LocationListener createLocationListener() {
         return new LocationListener() {
             public void onLocationChanged(Location location) {
-                // check if the new location is better
-                if (LocationHelper.isBetterLocation(location, mCurrentBestLocation)) {
-                    // save location
-                    mCurrentBestLocation = location;
+                // hand the fix to the sampling tick
+                if (!mLocationFixes.offer(location)) {
+                    LogHelper.w(LOG_TAG, "Location buffer is full. Dropped fixes: " + mLocationFixes.getDroppedCount());
                 }
             }
 
@@ -486,47 +604,145 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
     }
 
 
-    /* Creates gps and network location listeners */
+    /* Starts receiving locations - gps is only powered up around the samples of the sampling tick */
     private void startFindingLocation() {
 
         // register location listeners and request updates
         List locationProviders = mLocationManager.getAllProviders();
-        if (locationProviders.contains(LocationManager.GPS_PROVIDER)) {
-            mGPSListener = createLocationListener();
+        if (locationProviders.contains(LocationManager.GPS_PROVIDER) || locationProviders.contains(LocationManager.NETWORK_PROVIDER)) {
             mTrackerServiceRunning = true;
         }
-        if (locationProviders.contains(LocationManager.NETWORK_PROVIDER)) {
-            mNetworkListener = createLocationListener();
-            mTrackerServiceRunning = true;
+        if (mLocationDutyCycle != null) {
+            mLocationDutyCycle.stop();
         }
-        LocationHelper.registerLocationListeners(mLocationManager, mGPSListener, mNetworkListener);
+        mLocationFixes.clear();
+        mLocationFilter.reset();
+        mLocationDutyCycle = new LocationDutyCycleHelper(mLocationManager, mMainHandler, mLocationThread.getLooper(), createLocationListener());
+        mLocationDutyCycle.start();
         saveTrackerServiceState(mTrackerServiceRunning, FAB_STATE_RECORDING);
 
         // notify MainActivity
-        broadcastTrackingStateChange();
+        notifyTrackingStateChanged();
     }
 
 
-    /* Removes gps and network location listeners */
+    /* Stops receiving locations */
     private void stopFindingLocation() {
         // remove listeners
-        LocationHelper.removeLocationListeners(mLocationManager, mGPSListener, mNetworkListener);
+        if (mLocationDutyCycle != null) {
+            mLocationDutyCycle.stop();
+            mLocationDutyCycle = null;
+        }
         mTrackerServiceRunning = false;
         saveTrackerServiceState(mTrackerServiceRunning, FAB_STATE_SAVE);
 
         // notify MainActivity
-        broadcastTrackingStateChange();
+        notifyTrackingStateChanged();
+    }
+
+
+    /* Tells observers that waypoints from given index on were appended or changed */
+    private void notifyWayPointsAppended(int firstIndex) {
+        mTrackSequence++;
+        for (TrackObserverRecord record : mTrackObservers) {
+            record.mFirstPendingWayPoint = Math.min(record.mFirstPendingWayPoint, firstIndex);
+        }
+        scheduleTrackObserverDispatch();
+    }
+
+
+    /* Tells observers that the current track was replaced - deltas of the previous track do not apply to it */
+    private void notifyTrackReplaced() {
+        for (TrackObserverRecord record : mTrackObservers) {
+            record.mSnapshotPending = true;
+        }
+        notifyWayPointsAppended(0);
+    }
+
+
+    /* Tells observers that the statistics of the track changed */
+    private void notifyStatisticsChanged() {
+        for (TrackObserverRecord record : mTrackObservers) {
+            record.mStatisticsPending = true;
+        }
+        scheduleTrackObserverDispatch();
+    }
+
+
+    /* Tells observers that tracking was started or stopped */
+    private void notifyTrackingStateChanged() {
+        for (TrackObserverRecord record : mTrackObservers) {
+            record.mTrackingStatePending = true;
+        }
+        scheduleTrackObserverDispatch();
+    }
+
+
+    /* Posts a single dispatch to the main thread - all notifications until then are delivered together */
+    private void scheduleTrackObserverDispatch() {
+        if (!mTrackObserverDispatchScheduled && !mTrackObservers.isEmpty()) {
+            mTrackObserverDispatchScheduled = true;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    dispatchToTrackObservers();
+                }
+            });
+        }
+    }
+
+
+    /* Delivers pending notifications to all observers that are not paused */
+    private void dispatchToTrackObservers() {
+        mTrackObserverDispatchScheduled = false;
+        Track snapshot = null;
+        // copy list - observers may unregister during a callback
+        for (TrackObserverRecord record : new ArrayList<>(mTrackObservers)) {
+            if (record.mPaused) {
+                continue;
+            }
+            boolean wayPointsPending = record.mSnapshotPending || record.mFirstPendingWayPoint != Integer.MAX_VALUE;
+            if (mTrack != null && (wayPointsPending || record.mStatisticsPending) && snapshot == null) {
+                // one snapshot is shared by all observers
+                snapshot = mTrack.snapshot();
+            }
+            if (snapshot != null && wayPointsPending) {
+                // an empty track is delivered, too - observers learn that a new recording has no waypoints yet
+                record.mObserver.onWayPointsAppended(createTrackDelta(record, snapshot));
+            }
+            if (snapshot != null && record.mStatisticsPending) {
+                record.mObserver.onStatisticsChanged(snapshot);
+            }
+            if (record.mTrackingStatePending) {
+                record.mObserver.onTrackingStateChanged(mTrackerServiceRunning, mCurrentBestLocation);
+            }
+            record.clearPending();
+        }
+    }
+
+
+    /* Creates the delta between the track state given observer received last and given snapshot - falls back to the whole track */
+    private TrackDelta createTrackDelta(TrackObserverRecord record, Track snapshot) {
+        TrackDelta delta;
+        if (record.mSnapshotPending || record.mDeliveredSequence == TRACK_SEQUENCE_UNKNOWN) {
+            delta = TrackDelta.createSnapshot(snapshot, mTrackSequence);
+        } else {
+            delta = new TrackDelta(snapshot, mTrackSequence, record.mDeliveredSequence, record.mDeliveredSize, record.mFirstPendingWayPoint);
+        }
+        record.mDeliveredSequence = mTrackSequence;
+        record.mDeliveredSize = snapshot.getSize();
+        return delta;
     }
 
 
-    /* Sends a broadcast with tracking changed */
-    private void broadcastTrackingStateChange() {
-        Intent i = new Intent();
-        i.setAction(ACTION_TRACKING_STATE_CHANGED);
-        i.putExtra(EXTRA_TRACK, mTrack);
-        i.putExtra(EXTRA_LAST_LOCATION, mCurrentBestLocation);
-        i.putExtra(EXTRA_TRACKING_STATE, mTrackerServiceRunning);
-        LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(i);
+    /* Finds the registration of given observer */
+    private TrackObserverRecord findTrackObserverRecord(TrackObserver observer) {
+        for (TrackObserverRecord record : mTrackObservers) {
+            if (record.mObserver == observer) {
+                return record;
+            }
+        }
+        return null;
     }
 
 
@@ -540,14 +756,113 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
     }
 
 
+    /**
+     * Inner interface: TrackObserver receives updates of the current recording on the main thread
+     * The track handed to the callbacks is a read-only snapshot - it can be kept without copying
+     */
+    public interface TrackObserver {
+
+        /* Waypoints were appended - or changed their stop over status - the delta applies to the state of the previous delta, unless it is a snapshot */
+        void onWayPointsAppended(TrackDelta delta);
+
+        /* Duration, distance, step count or elevation of the track changed */
+        void onStatisticsChanged(Track track);
+
+        /* Recording was started or stopped */
+        void onTrackingStateChanged(boolean trackingState, @Nullable Location lastLocation);
+
+    }
+    /**
+     * End of inner interface
+     */
+
+
     /**
      * Inner class: Local Binder that returns this service
+     * Observer methods must be called on the main thread
      */
     public class LocalBinder extends Binder {
         TrackerService getService() {
             // return this instance of TrackerService so clients can call public methods
             return TrackerService.this;
         }
+
+        /* Registers an observer - a new observer first receives the whole current track, if there is one - registering an observer twice has no effect */
+        public void registerTrackObserver(TrackObserver observer) {
+            if (findTrackObserverRecord(observer) == null) {
+                TrackObserverRecord record = new TrackObserverRecord(observer);
+                record.mSnapshotPending = true;
+                record.mStatisticsPending = true;
+                mTrackObservers.add(record);
+                scheduleTrackObserverDispatch();
+            }
+        }
+
+        /* Asks for the whole current track - used by observers that missed a delta */
+        public void requestTrackSnapshot(TrackObserver observer) {
+            TrackObserverRecord record = findTrackObserverRecord(observer);
+            if (record != null) {
+                record.mSnapshotPending = true;
+                if (!record.mPaused) {
+                    scheduleTrackObserverDispatch();
+                }
+            }
+        }
+
+        /* Removes an observer - pending notifications are dropped */
+        public void unregisterTrackObserver(TrackObserver observer) {
+            mTrackObservers.remove(findTrackObserverRecord(observer));
+        }
+
+        /* Pauses or resumes an observer - notifications for a paused observer are coalesced and delivered once it is resumed */
+        public void setTrackObserverPaused(TrackObserver observer, boolean paused) {
+            TrackObserverRecord record = findTrackObserverRecord(observer);
+            if (record != null && record.mPaused != paused) {
+                record.mPaused = paused;
+                if (!paused && record.hasPending()) {
+                    scheduleTrackObserverDispatch();
+                }
+            }
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+
+    /**
+     * Inner class: TrackObserverRecord holds the registration of an observer and the notifications it has not received yet
+     */
+    private static class TrackObserverRecord {
+
+        private final TrackObserver mObserver;
+        private boolean mPaused;
+        private int mFirstPendingWayPoint;
+        private boolean mSnapshotPending;
+        private boolean mStatisticsPending;
+        private boolean mTrackingStatePending;
+        private long mDeliveredSequence;
+        private int mDeliveredSize;
+
+        TrackObserverRecord(TrackObserver observer) {
+            mObserver = observer;
+            mPaused = false;
+            mDeliveredSequence = TRACK_SEQUENCE_UNKNOWN;
+            mDeliveredSize = 0;
+            clearPending();
+        }
+
+        boolean hasPending() {
+            return mFirstPendingWayPoint != Integer.MAX_VALUE || mSnapshotPending || mStatisticsPending || mTrackingStatePending;
+        }
+
+        void clearPending() {
+            mFirstPendingWayPoint = Integer.MAX_VALUE;
+            mSnapshotPending = false;
+            mStatisticsPending = false;
+            mTrackingStatePending = false;
+        }
+
     }
     /**
      * End of inner class
@@ -590,29 +905,4 @@ public class TrackerService extends Service implements TrackbookKeys, SensorEven
      * End of inner class
      */
 
-
-    /**
-     * Inner class: Saves track to external storage using AsyncTask
-     */
-    private class SaveTempTrackAsyncHelper extends AsyncTask<Void, Void, Void> {
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            LogHelper.v(LOG_TAG, "Saving temporary track object in background.");
-            // save track object
-            StorageHelper storageHelper = new StorageHelper(TrackerService.this);
-            storageHelper.saveTrack(mTrack, FILE_TEMP_TRACK);
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            super.onPostExecute(aVoid);
-            LogHelper.v(LOG_TAG, "Saving finished.");
-        }
-    }
-    /**
-     * End of inner class
-     */
-
 }
\ No newline at end of file
@@ -23,7 +23,6 @@ import android.os.Parcelable;
 import org.y20k.trackbook.helpers.LocationHelper;
 import org.y20k.trackbook.helpers.TrackbookKeys;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -42,7 +41,7 @@ public class Track implements TrackbookKeys, Parcelable {
 
     /* Main class variables */
     private final int mTrackFormatVersion;
-    private final List<WayPoint> mWayPoints;
+    private final WayPointList mWayPoints;
     private float mTrackLength;
     private long mDuration;
     private float mStepCount;
@@ -52,12 +51,13 @@ public class Track implements TrackbookKeys, Parcelable {
     private double mMinAltitude;
     private double mPositiveElevation;
     private double mNegativeElevation;
+    private long mMovingTime;
 
 
-    /* Generic Constructor */
-    public Track(int trackFormatVersion, List<WayPoint> wayPoints, float trackLength, long duration, float stepCount, Date recordingStart, Date recordingStop, double maxAltitude, double minAltitude, double positiveElevation, double negativeElevation) {
+    /* Generic Constructor - statistics are taken as given, use recalculateStatistics if they are unknown */
+    public Track(int trackFormatVersion, List<WayPoint> wayPoints, float trackLength, long duration, float stepCount, Date recordingStart, Date recordingStop, double maxAltitude, double minAltitude, double positiveElevation, double negativeElevation, long movingTime) {
         mTrackFormatVersion = trackFormatVersion;
-        mWayPoints = wayPoints;
+        mWayPoints = wayPoints instanceof WayPointList ? (WayPointList) wayPoints : new WayPointList(wayPoints);
         mTrackLength = trackLength;
         mDuration = duration;
         mStepCount = stepCount;
@@ -67,19 +67,26 @@ public class Track implements TrackbookKeys, Parcelable {
         mMinAltitude = minAltitude;
         mPositiveElevation = positiveElevation;
         mNegativeElevation = negativeElevation;
+        mMovingTime = movingTime;
     }
 
 
-    /* Copy Constructor */
+    /* Copy Constructor - the copy gets its own list of waypoints, so a snapshot can be copied into a writable track */
     public Track(Track track) {
-        this(track.getTrackFormatVersion(), track.getWayPoints(), track.getTrackLength(), track.getTrackDuration(), track.getStepCount(), track.getRecordingStart(), track.getRecordingStop(), track.getMaxAltitude(), track.getMinAltitude(), track.getPositiveElevation(), track.getNegativeElevation());
+        this(track.getTrackFormatVersion(), track.mWayPoints.copy(), track.getTrackLength(), track.getTrackDuration(), track.getStepCount(), track.getRecordingStart(), track.getRecordingStop(), track.getMaxAltitude(), track.getMinAltitude(), track.getPositiveElevation(), track.getNegativeElevation(), track.getMovingTime());
+    }
+
+
+    /* Constructor - creates a read-only snapshot of given track */
+    private Track(Track track, WayPointList wayPoints) {
+        this(track.mTrackFormatVersion, wayPoints, track.mTrackLength, track.mDuration, track.mStepCount, track.mRecordingStart, track.mRecordingStop, track.mMaxAltitude, track.mMinAltitude, track.mPositiveElevation, track.mNegativeElevation, track.mMovingTime);
     }
 
 
     /* Constructor */
     public Track() {
         mTrackFormatVersion = CURRENT_TRACK_FORMAT_VERSION;
-        mWayPoints = new ArrayList<WayPoint>();
+        mWayPoints = new WayPointList();
         mTrackLength = 0f;
         mDuration = 0;
         mStepCount = 0f;
@@ -89,13 +96,14 @@ public class Track implements TrackbookKeys, Parcelable {
         mMinAltitude = 0f;
         mPositiveElevation = 0f;
         mNegativeElevation = 0f;
+        mMovingTime = 0;
     }
 
 
     /* Constructor used by CREATOR */
     protected Track(Parcel in) {
         mTrackFormatVersion = in.readInt();
-        mWayPoints = in.createTypedArrayList(WayPoint.CREATOR);
+        mWayPoints = new WayPointList(in);
         mTrackLength = in.readFloat();
         mDuration = in.readLong();
         mStepCount = in.readFloat();
@@ -105,6 +113,7 @@ public class Track implements TrackbookKeys, Parcelable {
         mMinAltitude = in.readDouble();
         mPositiveElevation = in.readDouble();
         mNegativeElevation = in.readDouble();
+        mMovingTime = in.readLong();
     }
 
 
@@ -129,14 +138,18 @@ public class Track implements TrackbookKeys, Parcelable {
         boolean isStopOver = LocationHelper.isStopOver(previousLocation, newLocation);
         if (isStopOver) {
             int wayPointCount = mWayPoints.size();
-            mWayPoints.get(wayPointCount-1).setIsStopOver(isStopOver);
+            setWayPointStopOver(wayPointCount-1, isStopOver);
         }
 
         // create new WayPoint
         WayPoint wayPoint = new WayPoint(newLocation, false, mTrackLength);
 
-        // add new WayPoint to track
-        return mWayPoints.add(wayPoint);
+        // add new WayPoint to track and update statistics
+        boolean success = mWayPoints.add(wayPoint);
+        if (success) {
+            accumulateStatistics(mWayPoints.size() - 1);
+        }
+        return success;
     }
 
 
@@ -157,7 +170,51 @@ public class Track implements TrackbookKeys, Parcelable {
     /* Toggles stop over status of last waypoint */
     public void toggleLastWayPointStopOverStatus(boolean stopOver) {
         int wayPointCount = mWayPoints.size();
-        mWayPoints.get(wayPointCount-1).setIsStopOver(stopOver);
+        setWayPointStopOver(wayPointCount-1, stopOver);
+    }
+
+
+    /* Sets the stop over status of a waypoint - the time to the next waypoint does not count as moving time at a stop over */
+    public void setWayPointStopOver(int index, boolean isStopOver) {
+        if (mWayPoints.getIsStopOver(index) == isStopOver) {
+            return;
+        }
+        if (index + 1 < mWayPoints.size()) {
+            long interval = mWayPoints.getTime(index + 1) - mWayPoints.getTime(index);
+            mMovingTime = isStopOver ? mMovingTime - interval : mMovingTime + interval;
+        }
+        mWayPoints.setIsStopOver(index, isStopOver);
+    }
+
+
+    /* Creates a read-only snapshot of the track - waypoints are shared, so it is cheap even for long recordings */
+    public Track snapshot() {
+        return new Track(this, mWayPoints.snapshot());
+    }
+
+
+    /* Sets the pager that reads waypoints back that have been dropped from memory */
+    public void setWayPointPager(WayPointPager pager) {
+        mWayPoints.setPager(pager);
+    }
+
+
+    /* Drops older waypoints from memory - only waypoints below storedWayPoints, which the pager can read back, and never the last LIVE_TRACK_WINDOW waypoints */
+    public void pageOutWayPoints(int storedWayPoints) {
+        mWayPoints.pageOut(Math.min(storedWayPoints, mWayPoints.size() - LIVE_TRACK_WINDOW));
+    }
+
+
+    /* Calculates elevation and moving time from scratch - used for tracks that were stored without these statistics */
+    public void recalculateStatistics() {
+        mMaxAltitude = 0;
+        mMinAltitude = 0;
+        mPositiveElevation = 0;
+        mNegativeElevation = 0;
+        mMovingTime = 0;
+        for (int i = 0; i < mWayPoints.size(); i++) {
+            accumulateStatistics(i);
+        }
     }
 
 
@@ -209,8 +266,8 @@ public class Track implements TrackbookKeys, Parcelable {
     }
 
 
-    /* Getter for mWayPoints */
-    public List<WayPoint> getWayPoints() {
+    /* Getter for mWayPoints - use its column getters to go through many waypoints */
+    public WayPointList getWayPoints() {
         return mWayPoints;
     }
 
@@ -274,11 +331,17 @@ public class Track implements TrackbookKeys, Parcelable {
     }
 
 
+    /* Getter for moving time of recording - time between waypoints, without stop overs */
+    public long getMovingTime() {
+        return mMovingTime;
+    }
+
+
     /* Getter recorded distance */
     public Double getTrackDistance() {
         int size = mWayPoints.size();
         if (size > 0) {
-            return (double)mWayPoints.get(size - 1).getDistanceToStartingPoint();
+            return (double)mWayPoints.getDistanceToStartingPoint(size - 1);
         } else {
             return (double)0f;
         }
@@ -287,7 +350,7 @@ public class Track implements TrackbookKeys, Parcelable {
 
     /* Getter for location of specific WayPoint */
     public Location getWayPointLocation(int index) {
-        return mWayPoints.get(index).getLocation();
+        return mWayPoints.getLocation(index);
     }
 
 
@@ -300,7 +363,7 @@ public class Track implements TrackbookKeys, Parcelable {
     @Override
     public void writeToParcel(Parcel parcel, int flags) {
         parcel.writeInt(mTrackFormatVersion);
-        parcel.writeTypedList(mWayPoints);
+        mWayPoints.writeToParcel(parcel);
         parcel.writeFloat(mTrackLength);
         parcel.writeLong(mDuration);
         parcel.writeFloat(mStepCount);
@@ -310,6 +373,48 @@ public class Track implements TrackbookKeys, Parcelable {
         parcel.writeDouble(mMinAltitude);
         parcel.writeDouble(mPositiveElevation);
         parcel.writeDouble(mNegativeElevation);
+        parcel.writeLong(mMovingTime);
+    }
+
+
+    /* Adds the waypoint at given index to elevation and moving time - waypoints must be accumulated in order */
+    private void accumulateStatistics(int index) {
+        double currentLocationAltitude = mWayPoints.getAltitude(index);
+
+        // initial values for max height and min height - first waypoint
+        if (index == 0) {
+            mMaxAltitude = currentLocationAltitude;
+            mMinAltitude = currentLocationAltitude;
+            return;
+        }
+
+        // get time difference
+        long timeDiff = mWayPoints.getTime(index) - mWayPoints.getTime(index - 1);
+
+        // add up moving time - a stop over ends a movement
+        if (!mWayPoints.getIsStopOver(index - 1)) {
+            mMovingTime = mMovingTime + timeDiff;
+        }
+
+        // factor is bigger than 1 if the time stamp difference is larger than the movement recording interval (usually 15 seconds)
+        double timeDiffFactor = (double) timeDiff / FIFTEEN_SECONDS_IN_MILLISECONDS;
+
+        // check for new min and max heights
+        if (currentLocationAltitude > mMaxAltitude) {
+            mMaxAltitude = currentLocationAltitude;
+        }
+        if (mMinAltitude == 0 || currentLocationAltitude < mMinAltitude) {
+            mMinAltitude = currentLocationAltitude;
+        }
+
+        // get elevation difference and sum it up
+        double altitudeDiff = currentLocationAltitude - mWayPoints.getAltitude(index - 1);
+        if (altitudeDiff > 0 && altitudeDiff < MEASUREMENT_ERROR_THRESHOLD * timeDiffFactor && currentLocationAltitude != 0) {
+            mPositiveElevation = mPositiveElevation + altitudeDiff;
+        }
+        if (altitudeDiff < 0 && altitudeDiff > -MEASUREMENT_ERROR_THRESHOLD * timeDiffFactor && currentLocationAltitude != 0) {
+            mNegativeElevation = mNegativeElevation + altitudeDiff;
+        }
     }
 
 
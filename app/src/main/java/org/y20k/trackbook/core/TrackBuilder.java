@@ -44,10 +44,11 @@ public class TrackBuilder {
     private final double mMinAltitude;
     private final double mPositiveElevation;
     private final double mNegativeElevation;
+    private final long mMovingTime;
 
 
     /* Generic Constructor */
-    public TrackBuilder(int trackFormatVersion, List<WayPoint> wayPoints, float trackLength, long duration, float stepCount, Date recordingStart, Date recordingStop, double maxAltitude, double minAltitude, double positiveElevation, double negativeElevation) {
+    public TrackBuilder(int trackFormatVersion, List<WayPoint> wayPoints, float trackLength, long duration, float stepCount, Date recordingStart, Date recordingStop, double maxAltitude, double minAltitude, double positiveElevation, double negativeElevation, long movingTime) {
         mTrackFormatVersion = trackFormatVersion;
         mWayPoints = wayPoints;
         mTrackLength = trackLength;
@@ -59,18 +60,24 @@ public class TrackBuilder {
         mMinAltitude = minAltitude;
         mPositiveElevation = positiveElevation;
         mNegativeElevation = negativeElevation;
+        mMovingTime = movingTime;
     }
 
 
     /* Builds and return a Track object */
     public Track toTrack() {
+        Track track;
         switch (mTrackFormatVersion) {
             case 1:
                 // file format version 1 - does not have elevation data stored
-                return new Track(mTrackFormatVersion, mWayPoints, mTrackLength, mDuration, mStepCount, mRecordingStart, mRecordingStop, 0f, 0f, 0f, 0f);
             case 2:
-                // file format version 2 (current version)
-                return new Track(mTrackFormatVersion, mWayPoints, mTrackLength, mDuration, mStepCount, mRecordingStart, mRecordingStop, mMaxAltitude, mMinAltitude, mPositiveElevation, mNegativeElevation);
+                // file format version 2 - JSON - statistics are calculated from the waypoints
+                track = new Track(mTrackFormatVersion, mWayPoints, mTrackLength, mDuration, mStepCount, mRecordingStart, mRecordingStop, 0f, 0f, 0f, 0f, 0L);
+                track.recalculateStatistics();
+                return track;
+            case 3:
+                // file format version 3 (current version) - compact binary format
+                return new Track(mTrackFormatVersion, mWayPoints, mTrackLength, mDuration, mStepCount, mRecordingStart, mRecordingStop, mMaxAltitude, mMinAltitude, mPositiveElevation, mNegativeElevation, mMovingTime);
             default:
                 LogHelper.e(LOG_TAG, "Unknown file format version: " + mTrackFormatVersion);
                 return null;
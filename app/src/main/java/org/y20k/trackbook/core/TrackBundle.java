@@ -1,7 +1,7 @@
 /**
  * TrackBundle.java
  * Implements a TrackBundle
- * TrackBundle is a container for file and corresponding name of a track
+ * TrackBundle is a container for file, catalog entry and corresponding name of a track
  *
  * This file is part of
  * TRACKBOOK - Movement Recorder for Android
@@ -17,13 +17,8 @@
 
 package org.y20k.trackbook.core;
 
-import org.y20k.trackbook.helpers.LogHelper;
-
 import java.io.File;
 import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Locale;
 
 
@@ -37,13 +32,15 @@ public class TrackBundle {
 
     /* Main class variables */
     private final File mTrackFile;
+    private final TrackSummary mTrackSummary;
     private final String mTrackName;
 
 
     /* Constructor */
-    public TrackBundle(File file) {
+    public TrackBundle(File file, TrackSummary trackSummary) {
         mTrackFile = file;
-        mTrackName = buildTrackName(file);
+        mTrackSummary = trackSummary;
+        mTrackName = buildTrackName(trackSummary);
     }
 
 
@@ -53,33 +50,23 @@ public class TrackBundle {
     }
 
 
+    /* Getter for catalog entry of track */
+    public TrackSummary getTrackSummary() {
+        return mTrackSummary;
+    }
+
+
     /* Getter for track name */
     public String getTrackName() {
         return mTrackName;
     }
 
 
-    /* Builds a readable track name from the track's file name */
-    private String buildTrackName(File file) {
-
-        // get file name without extension
-        String readableTrackName = file.getName();
-        readableTrackName = readableTrackName.substring(0, readableTrackName.indexOf(".trackbook"));
-
-        try {
-            // convert file name to date
-            DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss", Locale.US);
-            Date trackDate = dateFormat.parse(readableTrackName);
-
-            // convert date to track name string according to current locale
-            readableTrackName = DateFormat.getDateInstance(DateFormat.LONG, Locale.getDefault()).format(trackDate) + " - " +
-                    DateFormat.getTimeInstance(DateFormat.SHORT, Locale.getDefault()).format(trackDate);
-
-        } catch (ParseException e) {
-            LogHelper.w(LOG_TAG, "Unable to parse file name into date object (yyyy-MM-dd-HH-mm-ss): " + e);
-        }
-
-        return readableTrackName;
+    /* Builds a readable track name from the track's start date */
+    private String buildTrackName(TrackSummary trackSummary) {
+        // convert date to track name string according to current locale
+        return DateFormat.getDateInstance(DateFormat.LONG, Locale.getDefault()).format(trackSummary.getRecordingStart()) + " - " +
+                DateFormat.getTimeInstance(DateFormat.SHORT, Locale.getDefault()).format(trackSummary.getRecordingStart());
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+/**
+ * TrackDelta.java
+ * Implements the TrackDelta class
+ * A TrackDelta describes the changes of the recording since the previous update a track observer received
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.core;
+
+import org.y20k.trackbook.helpers.TrackbookKeys;
+
+
+/**
+ * TrackDelta class
+ *
+ * A delta with base sequence n applies on top of the track state with sequence number n. Waypoints from
+ * the base size on were appended, waypoints from the first changed index up to the base size may have
+ * changed their stop over status. A snapshot has no base - it replaces whatever the observer knew.
+ * The delta carries a read-only snapshot of the whole track, which shares its waypoints with the recording.
+ */
+public class TrackDelta implements TrackbookKeys {
+
+    /* Main class variables */
+    private final Track mTrack;
+    private final long mSequence;
+    private final long mBaseSequence;
+    private final int mBaseSize;
+    private final int mFirstChangedIndex;
+
+
+    /* Constructor */
+    public TrackDelta(Track track, long sequence, long baseSequence, int baseSize, int firstChangedIndex) {
+        mTrack = track;
+        mSequence = sequence;
+        mBaseSequence = baseSequence;
+        mBaseSize = baseSize;
+        mFirstChangedIndex = Math.min(firstChangedIndex, baseSize);
+    }
+
+
+    /* Creates a delta that contains the whole track */
+    public static TrackDelta createSnapshot(Track track, long sequence) {
+        return new TrackDelta(track, sequence, TRACK_SEQUENCE_UNKNOWN, 0, 0);
+    }
+
+
+    /* Getter for the read-only snapshot of the track after the changes */
+    public Track getTrack() {
+        return mTrack;
+    }
+
+
+    /* Getter for sequence number */
+    public long getSequence() {
+        return mSequence;
+    }
+
+
+    /* Getter for the sequence number the delta builds upon - TRACK_SEQUENCE_UNKNOWN for a snapshot */
+    public long getBaseSequence() {
+        return mBaseSequence;
+    }
+
+
+    /* Getter for number of waypoints the delta builds upon */
+    public int getBaseSize() {
+        return mBaseSize;
+    }
+
+
+    /* Getter for index of the first appended or changed waypoint */
+    public int getFirstChangedIndex() {
+        return mFirstChangedIndex;
+    }
+
+
+    /* Returns true if the delta contains the whole track */
+    public boolean isSnapshot() {
+        return mBaseSequence == TRACK_SEQUENCE_UNKNOWN;
+    }
+
+
+    /* Returns true if the delta can be applied to the track state with given sequence number */
+    public boolean appliesTo(long sequence) {
+        return isSnapshot() || (sequence != TRACK_SEQUENCE_UNKNOWN && mBaseSequence == sequence);
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * TrackOverview.java
+ * Implements the TrackOverview class
+ * A TrackOverview holds a thinned out copy of the waypoints of a recording that are paged out
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.core;
+
+import org.y20k.trackbook.helpers.TrackbookKeys;
+
+import java.util.Arrays;
+
+import androidx.annotation.Nullable;
+
+
+/**
+ * TrackOverview class
+ *
+ * The overview covers the waypoints below its end. It keeps every waypoint whose index is a multiple
+ * of the stride, plus all stop overs. The stride doubles whenever the overview would grow beyond
+ * MAXIMUM_TRACK_OVERVIEW_SIZE. An overview never changes - extend creates a new one, so the main
+ * thread can draw an overview while the I/O thread builds the next.
+ */
+public final class TrackOverview implements TrackbookKeys {
+
+    /* Main class variables */
+    private final WayPointList mWayPoints; // read-only
+    private final int[] mIndices; // index of every overview waypoint within the track
+    private final int mEnd;
+    private final int mStride;
+
+
+    /* Constructor */
+    private TrackOverview(WayPointList wayPoints, int[] indices, int end, int stride) {
+        mWayPoints = wayPoints;
+        mIndices = indices;
+        mEnd = end;
+        mStride = stride;
+    }
+
+
+    /* Creates an overview of the waypoints of given list below given end - builds upon given overview of the same list, if there is one - reads paged out waypoints, so not for the main thread */
+    public static TrackOverview extend(@Nullable TrackOverview overview, WayPointList wayPoints, int end) {
+        int start = overview != null ? overview.mEnd : 0;
+        if (overview != null && end <= start) {
+            return overview;
+        }
+
+        // thin out further - powers of two keep the waypoints of a larger stride a subset of the current ones
+        int stride = overview != null ? overview.mStride : 1;
+        while (end > stride * MAXIMUM_TRACK_OVERVIEW_SIZE) {
+            stride *= 2;
+        }
+
+        WayPointList result = new WayPointList();
+        int[] indices = new int[MAXIMUM_TRACK_OVERVIEW_SIZE];
+        int count = 0;
+
+        // waypoints of the given overview that are kept with the new stride
+        if (overview != null) {
+            for (int i = 0; i < overview.mIndices.length; i++) {
+                if (overview.mIndices[i] % stride == 0 || overview.mWayPoints.getIsStopOver(i)) {
+                    indices = append(indices, count++, overview.mIndices[i]);
+                    result.add(overview.mWayPoints, i);
+                }
+            }
+        }
+
+        // new waypoints - in order, so every paged out chunk is read only once
+        for (int i = start; i < end; i++) {
+            if (i % stride == 0 || wayPoints.getIsStopOver(i)) {
+                indices = append(indices, count++, i);
+                result.add(wayPoints, i);
+            }
+        }
+
+        return new TrackOverview(result.snapshot(), Arrays.copyOf(indices, count), end, stride);
+    }
+
+
+    /* Getter for the waypoints of the overview */
+    public WayPointList getWayPoints() {
+        return mWayPoints;
+    }
+
+
+    /* Getter for the index within the track of the given waypoint of the overview */
+    public int getIndex(int overviewIndex) {
+        return mIndices[overviewIndex];
+    }
+
+
+    /* Getter for the number of waypoints of the track the overview covers */
+    public int getEnd() {
+        return mEnd;
+    }
+
+
+    /* Stores given index at given position - grows the array, if needed */
+    private static int[] append(int[] indices, int position, int index) {
+        if (position == indices.length) {
+            indices = Arrays.copyOf(indices, indices.length * 2);
+        }
+        indices[position] = index;
+        return indices;
+    }
+
+}
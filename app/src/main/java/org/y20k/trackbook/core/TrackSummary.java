@@ -0,0 +1,214 @@
+/**
+ * TrackSummary.java
+ * Implements a TrackSummary
+ * TrackSummary is a row of the track catalog - it describes a saved track without its waypoints
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+
+package org.y20k.trackbook.core;
+
+import java.util.Date;
+
+
+/**
+ * TrackSummary class
+ */
+public class TrackSummary {
+
+    /* Main class variables */
+    private final String mFileName;
+    private final Date mRecordingStart;
+    private final Date mRecordingStop;
+    private final double mTrackDistance;
+    private final long mDuration;
+    private final int mWayPointCount;
+    private final double mMinLatitude;
+    private final double mMaxLatitude;
+    private final double mMinLongitude;
+    private final double mMaxLongitude;
+    private final double mMaxAltitude;
+    private final double mMinAltitude;
+    private final double mPositiveElevation;
+    private final double mNegativeElevation;
+    private final long mArchiveOffset;
+
+
+    /* Generic Constructor */
+    public TrackSummary(String fileName, Date recordingStart, Date recordingStop, double trackDistance, long duration, int wayPointCount,
+                        double minLatitude, double maxLatitude, double minLongitude, double maxLongitude,
+                        double maxAltitude, double minAltitude, double positiveElevation, double negativeElevation, long archiveOffset) {
+        mFileName = fileName;
+        mRecordingStart = recordingStart;
+        mRecordingStop = recordingStop;
+        mTrackDistance = trackDistance;
+        mDuration = duration;
+        mWayPointCount = wayPointCount;
+        mMinLatitude = minLatitude;
+        mMaxLatitude = maxLatitude;
+        mMinLongitude = minLongitude;
+        mMaxLongitude = maxLongitude;
+        mMaxAltitude = maxAltitude;
+        mMinAltitude = minAltitude;
+        mPositiveElevation = positiveElevation;
+        mNegativeElevation = negativeElevation;
+        mArchiveOffset = archiveOffset;
+    }
+
+
+    /* Constructor - copies given summary and sets the offset of the track in the archive pack */
+    public TrackSummary(TrackSummary summary, long archiveOffset) {
+        this(summary.getFileName(), summary.getRecordingStart(), summary.getRecordingStop(), summary.getTrackDistance(), summary.getTrackDuration(), summary.getWayPointCount(),
+                summary.getMinLatitude(), summary.getMaxLatitude(), summary.getMinLongitude(), summary.getMaxLongitude(),
+                summary.getMaxAltitude(), summary.getMinAltitude(), summary.getPositiveElevation(), summary.getNegativeElevation(), archiveOffset);
+    }
+
+
+    /* Constructor - summarizes given track */
+    public TrackSummary(String fileName, Track track) {
+        mFileName = fileName;
+        mRecordingStart = track.getRecordingStart();
+        mRecordingStop = track.getRecordingStop();
+        mTrackDistance = track.getTrackDistance();
+        mDuration = track.getTrackDuration();
+        mWayPointCount = track.getSize();
+        mMaxAltitude = track.getMaxAltitude();
+        mMinAltitude = track.getMinAltitude();
+        mPositiveElevation = track.getPositiveElevation();
+        mNegativeElevation = track.getNegativeElevation();
+        mArchiveOffset = -1;
+
+        // calculate bounding box
+        double minLatitude = 0d;
+        double maxLatitude = 0d;
+        double minLongitude = 0d;
+        double maxLongitude = 0d;
+        WayPointList wayPoints = track.getWayPoints();
+        for (int i = 0; i < mWayPointCount; i++) {
+            double latitude = wayPoints.getLatitude(i);
+            double longitude = wayPoints.getLongitude(i);
+            if (i == 0 || latitude < minLatitude) {
+                minLatitude = latitude;
+            }
+            if (i == 0 || latitude > maxLatitude) {
+                maxLatitude = latitude;
+            }
+            if (i == 0 || longitude < minLongitude) {
+                minLongitude = longitude;
+            }
+            if (i == 0 || longitude > maxLongitude) {
+                maxLongitude = longitude;
+            }
+        }
+        mMinLatitude = minLatitude;
+        mMaxLatitude = maxLatitude;
+        mMinLongitude = minLongitude;
+        mMaxLongitude = maxLongitude;
+    }
+
+
+    /* Getter for name of track file */
+    public String getFileName() {
+        return mFileName;
+    }
+
+
+    /* Getter for start date of recording */
+    public Date getRecordingStart() {
+        return mRecordingStart;
+    }
+
+
+    /* Getter for stop date of recording */
+    public Date getRecordingStop() {
+        return mRecordingStop;
+    }
+
+
+    /* Getter for recorded distance */
+    public double getTrackDistance() {
+        return mTrackDistance;
+    }
+
+
+    /* Getter for duration of recording */
+    public long getTrackDuration() {
+        return mDuration;
+    }
+
+
+    /* Getter for number of waypoints */
+    public int getWayPointCount() {
+        return mWayPointCount;
+    }
+
+
+    /* Getter for southern edge of bounding box */
+    public double getMinLatitude() {
+        return mMinLatitude;
+    }
+
+
+    /* Getter for northern edge of bounding box */
+    public double getMaxLatitude() {
+        return mMaxLatitude;
+    }
+
+
+    /* Getter for western edge of bounding box */
+    public double getMinLongitude() {
+        return mMinLongitude;
+    }
+
+
+    /* Getter for eastern edge of bounding box */
+    public double getMaxLongitude() {
+        return mMaxLongitude;
+    }
+
+
+    /* Getter for maximum altitude of recording */
+    public double getMaxAltitude() {
+        return mMaxAltitude;
+    }
+
+
+    /* Getter for lowest altitude of recording */
+    public double getMinAltitude() {
+        return mMinAltitude;
+    }
+
+
+    /* Getter for positive elevation of recording (cumulative altitude difference) */
+    public double getPositiveElevation() {
+        return mPositiveElevation;
+    }
+
+
+    /* Getter for negative elevation of recording (cumulative altitude difference) */
+    public double getNegativeElevation() {
+        return mNegativeElevation;
+    }
+
+
+    /* Getter for offset of track in the archive pack - -1 if the track is stored as a single file */
+    public long getArchiveOffset() {
+        return mArchiveOffset;
+    }
+
+
+    /* Checks if the track has been moved to the archive pack */
+    public boolean isArchived() {
+        return mArchiveOffset >= 0;
+    }
+
+}
@@ -24,12 +24,16 @@ import android.os.Parcelable;
 
 /**
  * WayPoint class
+ *
+ * Tracks do not keep WayPoint objects - a WayPointList stores the attributes as columns and creates
+ * a WayPoint when one is requested. So a WayPoint is a value: changing its location does not change
+ * the track.
  */
 public class WayPoint implements Parcelable {
 
-    private Location mLocation;
-    private boolean mIsStopOver;
-    private float mDistanceToStartingPoint;
+    private final Location mLocation;
+    private final boolean mIsStopOver;
+    private final float mDistanceToStartingPoint;
     private final int mNumberSatellites;
 
     /* Constructor */
@@ -42,13 +46,23 @@ public class WayPoint implements Parcelable {
         Bundle extras = location.getExtras();
         if (extras != null && extras.containsKey("satellites")) {
             mNumberSatellites = extras.getInt("satellites", 0);
-            mLocation.setExtras(null); // necessary because Location Extras cause cannot be serialized properly by GSON
+            mLocation.setExtras(null); // satellite count is kept in mNumberSatellites - drop the extras bundle
         } else {
             mNumberSatellites = 0;
         }
 
     }
 
+
+    /* Constructor used when restoring a WayPoint whose satellite count is already known */
+    public WayPoint(Location location, boolean isStopOver, float distanceToStartingPoint, int numberSatellites) {
+        mLocation = location;
+        mIsStopOver = isStopOver;
+        mDistanceToStartingPoint = distanceToStartingPoint;
+        mNumberSatellites = numberSatellites;
+    }
+
+
     /* Constructor used by CREATOR */
     protected WayPoint(Parcel in) {
         mLocation = Location.CREATOR.createFromParcel(in);
@@ -90,23 +104,12 @@ public class WayPoint implements Parcelable {
     }
 
 
-    /* Setter for mLocation */
-    public void setLocation(Location location) {
-        mLocation = location;
-    }
-
-
-    /* Setter for mIsStopOver */
-    public void setIsStopOver(boolean isStopOver) {
-        mIsStopOver = isStopOver;
+    /* Getter for mNumberSatellites */
+    public int getNumberSatellites() {
+        return mNumberSatellites;
     }
 
 
-    /* Setter for mDistanceToStartingPoint */
-    public void setDistanceToStartingPoint(float distanceToStartingPoint) {
-        mDistanceToStartingPoint = distanceToStartingPoint;
-    }
-
     @Override
     public int describeContents() {
         return 0;
@@ -115,7 +118,6 @@ public class WayPoint implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel parcel, int flags) {
-        mLocation.setExtras(null); // necessary because Location Extras cause cannot be serialized properly by GSON
         mLocation.writeToParcel(parcel, flags);
         parcel.writeByte((byte) (mIsStopOver ? 1 : 0));
         parcel.writeFloat(mDistanceToStartingPoint);
@@ -0,0 +1,671 @@
+/**
+ * WayPointList.java
+ * Implements the WayPointList class
+ * A WayPointList stores the waypoints of a track as primitive columns in chunks that can be shared with read-only snapshots
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.core;
+
+import android.location.Location;
+import android.os.Parcel;
+
+import org.y20k.trackbook.helpers.LogHelper;
+import org.y20k.trackbook.helpers.TrackbookKeys;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+
+/**
+ * WayPointList class
+ *
+ * Waypoints are not stored as objects. Every chunk holds one primitive array per attribute, plus a
+ * bitset for the stop overs and a small provider table - about 65 bytes per waypoint instead of a
+ * WayPoint with its Location, Bundle and provider String. The column getters read single attributes
+ * without creating objects - use them when going through many waypoints. get and getLocation create
+ * a WayPoint or Location on demand, changing it does not change the list.
+ *
+ * A snapshot copies the chunk table only - the chunks themselves are shared. Appending writes to
+ * slots beyond the size of every snapshot, and copies the shared last chunk first if it would change
+ * something a snapshot reads - its stop over bits or its provider table. Replacing a waypoint copies
+ * its chunk first, if the chunk is shared with a snapshot. So a chunk never changes where a snapshot
+ * can see it, and a snapshot handed to another thread can be read there while the original keeps
+ * growing.
+ *
+ * A list with a pager can drop complete chunks from memory once the pager is able to read them back.
+ * Accessing a waypoint of a paged out chunk reads the chunk again - the last chunk that was read is
+ * kept, so going through the list in order reads every chunk only once. Paged out waypoints are
+ * read-only, pageIn puts them back into memory. The main thread only accesses waypoints from
+ * getFirstResidentIndex on.
+ */
+public final class WayPointList extends AbstractList<WayPoint> implements RandomAccess {
+
+    /* Define log tag */
+    private static final String LOG_TAG = WayPointList.class.getSimpleName();
+
+    /* Chunk layout - a chunk is also a page of the pager */
+    private static final int CHUNK_SIZE = TrackbookKeys.SEGMENT_SIZE; // 256 waypoints
+    private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+
+    /* Main class variables */
+    private Chunk[] mChunks; // null for chunks that are paged out
+    private int mSize;
+    private int mSharedChunks; // chunks below this index may be referenced by a snapshot
+    private final boolean mReadOnly;
+    private WayPointPager mPager;
+    private volatile PagedInChunk mPagedInChunk; // last paged out chunk that was read
+
+
+    /* Constructor */
+    public WayPointList() {
+        mChunks = new Chunk[4];
+        mSize = 0;
+        mSharedChunks = 0;
+        mReadOnly = false;
+    }
+
+
+    /* Constructor - copies given waypoints */
+    public WayPointList(Collection<WayPoint> wayPoints) {
+        this();
+        addAll(wayPoints);
+    }
+
+
+    /* Constructor used by Track - reads waypoints written by writeToParcel */
+    public WayPointList(Parcel in) {
+        this();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            add(in.readString(), in.readDouble(), in.readDouble(), in.readDouble(), in.readLong(), in.readLong(),
+                    in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), in.readInt(), in.readByte() != 0);
+        }
+    }
+
+
+    /* Constructor used by snapshot and copy */
+    private WayPointList(Chunk[] chunks, int size, WayPointPager pager, boolean readOnly) {
+        mChunks = chunks;
+        mSize = size;
+        mSharedChunks = chunks.length;
+        mReadOnly = readOnly;
+        mPager = pager;
+    }
+
+
+    /* Creates a read-only view of the current waypoints - costs one pointer per chunk */
+    public WayPointList snapshot() {
+        if (mReadOnly) {
+            return this;
+        }
+        int chunkCount = (mSize + CHUNK_MASK) >>> CHUNK_SHIFT;
+        mSharedChunks = chunkCount;
+        return new WayPointList(Arrays.copyOf(mChunks, chunkCount), mSize, mPager, true);
+    }
+
+
+    /* Creates a writable copy of the current waypoints - chunks are shared until either list changes them, paged out chunks stay paged out */
+    public WayPointList copy() {
+        int chunkCount = (mSize + CHUNK_MASK) >>> CHUNK_SHIFT;
+        Chunk[] chunks = Arrays.copyOf(mChunks, Math.max(4, chunkCount));
+        int fullChunks = mSize >>> CHUNK_SHIFT;
+        if (fullChunks < chunkCount) {
+            // both lists append to their last chunk - it can not be shared
+            chunks[fullChunks] = new Chunk(mChunks[fullChunks]);
+        }
+        if (!mReadOnly) {
+            mSharedChunks = Math.max(mSharedChunks, fullChunks);
+        }
+        WayPointList copy = new WayPointList(chunks, mSize, mPager, false);
+        copy.mSharedChunks = fullChunks;
+        return copy;
+    }
+
+
+    /* Sets the pager that reads paged out chunks - snapshots and copies use the same pager */
+    public void setPager(WayPointPager pager) {
+        mPager = pager;
+    }
+
+
+    /* Appends given number of complete chunks that are only available from the pager - the list must end with a complete chunk */
+    public void appendPagedOut(int chunkCount) {
+        checkWritable();
+        if (mPager == null || (mSize & CHUNK_MASK) != 0) {
+            throw new IllegalStateException("Unable to append paged out waypoints.");
+        }
+        int firstChunk = mSize >>> CHUNK_SHIFT;
+        if (firstChunk + chunkCount > mChunks.length) {
+            mChunks = Arrays.copyOf(mChunks, Math.max(mChunks.length * 2, firstChunk + chunkCount));
+        }
+        mSize += chunkCount * CHUNK_SIZE;
+        modCount++;
+    }
+
+
+    /* Drops the complete chunks holding waypoints below given index from memory - returns the number of chunks that are paged out now */
+    public int pageOut(int index) {
+        checkWritable();
+        if (mPager == null) {
+            return 0;
+        }
+        int pagedOutChunks = Math.max(0, Math.min(index, mSize)) >>> CHUNK_SHIFT;
+        for (int chunk = 0; chunk < pagedOutChunks; chunk++) {
+            mChunks[chunk] = null;
+        }
+        return pagedOutChunks;
+    }
+
+
+    /* Reads the paged out chunks holding waypoints from given index on back into memory - the pager must be usable on the calling thread */
+    public void pageIn(int index) throws IOException {
+        checkWritable();
+        int chunkCount = (mSize + CHUNK_MASK) >>> CHUNK_SHIFT;
+        for (int chunk = Math.max(0, index) >>> CHUNK_SHIFT; chunk < chunkCount; chunk++) {
+            if (mChunks[chunk] == null) {
+                mChunks[chunk] = readChunk(chunk);
+            }
+        }
+    }
+
+
+    /* Getter for the index of the first waypoint held in memory - this waypoint and all later ones are accessed without the pager */
+    public int getFirstResidentIndex() {
+        int chunk = (mSize + CHUNK_MASK) >>> CHUNK_SHIFT;
+        while (chunk > 0 && mChunks[chunk - 1] != null) {
+            chunk--;
+        }
+        return Math.min(mSize, chunk << CHUNK_SHIFT);
+    }
+
+
+    /* Getter for the latitude of a waypoint */
+    public double getLatitude(int index) {
+        return getChunk(index).mLatitudes[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the longitude of a waypoint */
+    public double getLongitude(int index) {
+        return getChunk(index).mLongitudes[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the altitude of a waypoint - 0 if unknown, like Location.getAltitude() */
+    public double getAltitude(int index) {
+        return getChunk(index).mAltitudes[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the UTC time of a waypoint */
+    public long getTime(int index) {
+        return getChunk(index).mTimes[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the elapsed realtime of a waypoint */
+    public long getElapsedRealtimeNanos(int index) {
+        return getChunk(index).mElapsedRealtimeNanos[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the accuracy of a waypoint */
+    public float getAccuracy(int index) {
+        return getChunk(index).mAccuracies[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the speed of a waypoint - NaN if unknown */
+    public float getSpeed(int index) {
+        return getChunk(index).mSpeeds[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the bearing of a waypoint - NaN if unknown */
+    public float getBearing(int index) {
+        return getChunk(index).mBearings[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the distance of a waypoint to the starting point */
+    public float getDistanceToStartingPoint(int index) {
+        return getChunk(index).mDistances[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the number of satellites of a waypoint */
+    public int getNumberSatellites(int index) {
+        return getChunk(index).mSatellites[index & CHUNK_MASK];
+    }
+
+
+    /* Getter for the provider of a waypoint */
+    public String getProvider(int index) {
+        return getChunk(index).getProvider(index & CHUNK_MASK);
+    }
+
+
+    /* Getter for the stop over status of a waypoint */
+    public boolean getIsStopOver(int index) {
+        return getChunk(index).getIsStopOver(index & CHUNK_MASK);
+    }
+
+
+    /* Creates a Location object for a waypoint */
+    public Location getLocation(int index) {
+        Chunk chunk = getChunk(index);
+        int slot = index & CHUNK_MASK;
+        Location location = new Location(chunk.getProvider(slot));
+        location.setLatitude(chunk.mLatitudes[slot]);
+        location.setLongitude(chunk.mLongitudes[slot]);
+        location.setAltitude(chunk.mAltitudes[slot]);
+        location.setTime(chunk.mTimes[slot]);
+        location.setElapsedRealtimeNanos(chunk.mElapsedRealtimeNanos[slot]);
+        location.setAccuracy(chunk.mAccuracies[slot]);
+        if (!Float.isNaN(chunk.mSpeeds[slot])) {
+            location.setSpeed(chunk.mSpeeds[slot]);
+        }
+        if (!Float.isNaN(chunk.mBearings[slot])) {
+            location.setBearing(chunk.mBearings[slot]);
+        }
+        return location;
+    }
+
+
+    @Override
+    public WayPoint get(int index) {
+        return new WayPoint(getLocation(index), getIsStopOver(index), getDistanceToStartingPoint(index), getNumberSatellites(index));
+    }
+
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+
+    @Override
+    public boolean add(WayPoint wayPoint) {
+        Location location = wayPoint.getLocation();
+        add(location.getProvider(), location.getLatitude(), location.getLongitude(), location.getAltitude(), location.getTime(), location.getElapsedRealtimeNanos(),
+                location.getAccuracy(), location.hasSpeed() ? location.getSpeed() : Float.NaN, location.hasBearing() ? location.getBearing() : Float.NaN,
+                wayPoint.getDistanceToStartingPoint(), wayPoint.getNumberSatellites(), wayPoint.getIsStopOver());
+        return true;
+    }
+
+
+    /* Appends the waypoint at given index of given list - without creating objects */
+    public void add(WayPointList wayPoints, int index) {
+        Chunk chunk = wayPoints.getChunk(index);
+        int slot = index & CHUNK_MASK;
+        add(chunk.getProvider(slot), chunk.mLatitudes[slot], chunk.mLongitudes[slot], chunk.mAltitudes[slot], chunk.mTimes[slot], chunk.mElapsedRealtimeNanos[slot],
+                chunk.mAccuracies[slot], chunk.mSpeeds[slot], chunk.mBearings[slot], chunk.mDistances[slot], chunk.mSatellites[slot], chunk.getIsStopOver(slot));
+    }
+
+
+    /* Appends a waypoint given by its attributes - speed and bearing are NaN if unknown */
+    public void add(String provider, double latitude, double longitude, double altitude, long time, long elapsedRealtimeNanos,
+                    float accuracy, float speed, float bearing, float distanceToStartingPoint, int numberSatellites, boolean isStopOver) {
+        getAppendChunk(provider, isStopOver).put(mSize & CHUNK_MASK, provider, latitude, longitude, altitude, time, elapsedRealtimeNanos,
+                accuracy, speed, bearing, distanceToStartingPoint, numberSatellites, isStopOver);
+        mSize++;
+        modCount++;
+    }
+
+
+    /* Appends a waypoint without attributes - used to read stored columns straight into the chunks, the column setters fill it in */
+    public void addBlank() {
+        getAppendChunk("", false).put(mSize & CHUNK_MASK, "", 0d, 0d, 0d, 0L, 0L, 0f, Float.NaN, Float.NaN, 0f, 0, false);
+        mSize++;
+        modCount++;
+    }
+
+
+    /* Setter for the provider of a waypoint */
+    public void setProvider(int index, String provider) {
+        Chunk chunk = getWritableChunk(index);
+        chunk.mProviderIndices[index & CHUNK_MASK] = (byte) chunk.getProviderIndex(provider != null ? provider : "");
+    }
+
+
+    /* Setter for the latitude of a waypoint */
+    public void setLatitude(int index, double latitude) {
+        getWritableChunk(index).mLatitudes[index & CHUNK_MASK] = latitude;
+    }
+
+
+    /* Setter for the longitude of a waypoint */
+    public void setLongitude(int index, double longitude) {
+        getWritableChunk(index).mLongitudes[index & CHUNK_MASK] = longitude;
+    }
+
+
+    /* Setter for the altitude of a waypoint */
+    public void setAltitude(int index, double altitude) {
+        getWritableChunk(index).mAltitudes[index & CHUNK_MASK] = altitude;
+    }
+
+
+    /* Setter for the UTC time of a waypoint */
+    public void setTime(int index, long time) {
+        getWritableChunk(index).mTimes[index & CHUNK_MASK] = time;
+    }
+
+
+    /* Setter for the elapsed realtime of a waypoint */
+    public void setElapsedRealtimeNanos(int index, long elapsedRealtimeNanos) {
+        getWritableChunk(index).mElapsedRealtimeNanos[index & CHUNK_MASK] = elapsedRealtimeNanos;
+    }
+
+
+    /* Setter for the accuracy of a waypoint */
+    public void setAccuracy(int index, float accuracy) {
+        getWritableChunk(index).mAccuracies[index & CHUNK_MASK] = accuracy;
+    }
+
+
+    /* Setter for the speed of a waypoint - NaN if unknown */
+    public void setSpeed(int index, float speed) {
+        getWritableChunk(index).mSpeeds[index & CHUNK_MASK] = speed;
+    }
+
+
+    /* Setter for the bearing of a waypoint - NaN if unknown */
+    public void setBearing(int index, float bearing) {
+        getWritableChunk(index).mBearings[index & CHUNK_MASK] = bearing;
+    }
+
+
+    /* Setter for the distance of a waypoint to the starting point */
+    public void setDistanceToStartingPoint(int index, float distanceToStartingPoint) {
+        getWritableChunk(index).mDistances[index & CHUNK_MASK] = distanceToStartingPoint;
+    }
+
+
+    /* Setter for the number of satellites of a waypoint */
+    public void setNumberSatellites(int index, int numberSatellites) {
+        getWritableChunk(index).mSatellites[index & CHUNK_MASK] = numberSatellites;
+    }
+
+
+    @Override
+    public WayPoint set(int index, WayPoint wayPoint) {
+        WayPoint previous = get(index);
+        Location location = wayPoint.getLocation();
+        getWritableChunk(index).put(index & CHUNK_MASK, location.getProvider(), location.getLatitude(), location.getLongitude(), location.getAltitude(), location.getTime(), location.getElapsedRealtimeNanos(),
+                location.getAccuracy(), location.hasSpeed() ? location.getSpeed() : Float.NaN, location.hasBearing() ? location.getBearing() : Float.NaN,
+                wayPoint.getDistanceToStartingPoint(), wayPoint.getNumberSatellites(), wayPoint.getIsStopOver());
+        return previous;
+    }
+
+
+    /* Setter for the stop over status of a waypoint */
+    public void setIsStopOver(int index, boolean isStopOver) {
+        if (getIsStopOver(index) != isStopOver) {
+            int slot = index & CHUNK_MASK;
+            getWritableChunk(index).mStopOvers[slot >>> 6] ^= 1L << slot;
+        }
+    }
+
+
+    @Override
+    public void clear() {
+        checkWritable();
+        mChunks = new Chunk[4];
+        mSize = 0;
+        mSharedChunks = 0;
+        mPagedInChunk = null;
+        modCount++;
+    }
+
+
+    /* Writes the attributes of all waypoints to given parcel - paged out waypoints are read back */
+    public void writeToParcel(Parcel parcel) {
+        parcel.writeInt(mSize);
+        for (int i = 0; i < mSize; i++) {
+            Chunk chunk = getChunk(i);
+            int slot = i & CHUNK_MASK;
+            parcel.writeString(chunk.getProvider(slot));
+            parcel.writeDouble(chunk.mLatitudes[slot]);
+            parcel.writeDouble(chunk.mLongitudes[slot]);
+            parcel.writeDouble(chunk.mAltitudes[slot]);
+            parcel.writeLong(chunk.mTimes[slot]);
+            parcel.writeLong(chunk.mElapsedRealtimeNanos[slot]);
+            parcel.writeFloat(chunk.mAccuracies[slot]);
+            parcel.writeFloat(chunk.mSpeeds[slot]);
+            parcel.writeFloat(chunk.mBearings[slot]);
+            parcel.writeFloat(chunk.mDistances[slot]);
+            parcel.writeInt(chunk.mSatellites[slot]);
+            parcel.writeByte((byte) (chunk.getIsStopOver(slot) ? 1 : 0));
+        }
+    }
+
+
+    /* Returns the chunk holding given waypoint - reads it, if it is paged out */
+    private Chunk getChunk(int index) {
+        checkIndex(index);
+        Chunk chunk = mChunks[index >>> CHUNK_SHIFT];
+        if (chunk == null) {
+            chunk = getPagedInChunk(index >>> CHUNK_SHIFT);
+        }
+        return chunk;
+    }
+
+
+    /* Returns the chunk that receives the next appended waypoint - creates it, or copies it if the waypoint would change what a snapshot reads */
+    private Chunk getAppendChunk(String provider, boolean isStopOver) {
+        checkWritable();
+        int chunkIndex = mSize >>> CHUNK_SHIFT;
+        if (chunkIndex == mChunks.length) {
+            mChunks = Arrays.copyOf(mChunks, mChunks.length * 2);
+        }
+        if (mChunks[chunkIndex] == null) {
+            mChunks[chunkIndex] = new Chunk();
+        } else if (chunkIndex < mSharedChunks && (isStopOver || mChunks[chunkIndex].findProvider(provider != null ? provider : "") < 0)) {
+            // the slot itself is beyond the size of every snapshot - but the stop over bits and the provider table are read by them
+            mChunks[chunkIndex] = new Chunk(mChunks[chunkIndex]);
+            mSharedChunks = chunkIndex;
+        }
+        return mChunks[chunkIndex];
+    }
+
+
+    /* Returns the chunk holding given waypoint for a change - copies it first, if a snapshot may see it */
+    private Chunk getWritableChunk(int index) {
+        checkWritable();
+        checkIndex(index);
+        int chunk = index >>> CHUNK_SHIFT;
+        if (mChunks[chunk] == null) {
+            throw new UnsupportedOperationException("Paged out waypoints are read-only.");
+        }
+        if (chunk < mSharedChunks) {
+            // copy on write - snapshots keep the old chunk
+            mChunks[chunk] = new Chunk(mChunks[chunk]);
+            if (chunk == mSharedChunks - 1) {
+                mSharedChunks--;
+            }
+        }
+        return mChunks[chunk];
+    }
+
+
+    /* Reads a paged out chunk - or returns it, if it was the last chunk read */
+    private Chunk getPagedInChunk(int chunk) {
+        PagedInChunk pagedInChunk = mPagedInChunk;
+        if (pagedInChunk != null && pagedInChunk.mIndex == chunk) {
+            return pagedInChunk.mChunk;
+        }
+        try {
+            mPagedInChunk = new PagedInChunk(chunk, readChunk(chunk));
+            return mPagedInChunk.mChunk;
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to read paged out waypoints (IOException): chunk " + chunk);
+            throw new IllegalStateException("Paged out waypoints are not available.", e);
+        }
+    }
+
+
+    /* Reads a paged out chunk from the pager */
+    private Chunk readChunk(int chunk) throws IOException {
+        WayPointList page = mPager.readPage(chunk);
+        if (page.size() != CHUNK_SIZE) {
+            throw new IOException("Page " + chunk + " holds " + page.size() + " waypoints.");
+        }
+        return page.getChunk(0);
+    }
+
+
+    /* Throws if given index is out of range */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+
+
+    /* Throws if this list is a snapshot */
+    private void checkWritable() {
+        if (mReadOnly) {
+            throw new UnsupportedOperationException("Waypoint snapshots are read-only.");
+        }
+    }
+
+
+    /**
+     * Inner class: The columns of CHUNK_SIZE waypoints - with their own provider table, which can never hold more than 256 entries
+     */
+    private static final class Chunk {
+        private final double[] mLatitudes;
+        private final double[] mLongitudes;
+        private final double[] mAltitudes;
+        private final long[] mTimes;
+        private final long[] mElapsedRealtimeNanos;
+        private final float[] mAccuracies;
+        private final float[] mSpeeds;
+        private final float[] mBearings;
+        private final float[] mDistances;
+        private final int[] mSatellites;
+        private final byte[] mProviderIndices;
+        private final long[] mStopOvers;
+        private String[] mProviders; // never changed while the chunk is shared - see getAppendChunk
+        private int mProviderCount;
+
+        private Chunk() {
+            mLatitudes = new double[CHUNK_SIZE];
+            mLongitudes = new double[CHUNK_SIZE];
+            mAltitudes = new double[CHUNK_SIZE];
+            mTimes = new long[CHUNK_SIZE];
+            mElapsedRealtimeNanos = new long[CHUNK_SIZE];
+            mAccuracies = new float[CHUNK_SIZE];
+            mSpeeds = new float[CHUNK_SIZE];
+            mBearings = new float[CHUNK_SIZE];
+            mDistances = new float[CHUNK_SIZE];
+            mSatellites = new int[CHUNK_SIZE];
+            mProviderIndices = new byte[CHUNK_SIZE];
+            mStopOvers = new long[CHUNK_SIZE / Long.SIZE];
+            mProviders = new String[4];
+            mProviderCount = 0;
+        }
+
+        private Chunk(Chunk chunk) {
+            mLatitudes = chunk.mLatitudes.clone();
+            mLongitudes = chunk.mLongitudes.clone();
+            mAltitudes = chunk.mAltitudes.clone();
+            mTimes = chunk.mTimes.clone();
+            mElapsedRealtimeNanos = chunk.mElapsedRealtimeNanos.clone();
+            mAccuracies = chunk.mAccuracies.clone();
+            mSpeeds = chunk.mSpeeds.clone();
+            mBearings = chunk.mBearings.clone();
+            mDistances = chunk.mDistances.clone();
+            mSatellites = chunk.mSatellites.clone();
+            mProviderIndices = chunk.mProviderIndices.clone();
+            mStopOvers = chunk.mStopOvers.clone();
+            mProviders = chunk.mProviders.clone();
+            mProviderCount = chunk.mProviderCount;
+        }
+
+        private void put(int slot, String provider, double latitude, double longitude, double altitude, long time, long elapsedRealtimeNanos,
+                         float accuracy, float speed, float bearing, float distanceToStartingPoint, int numberSatellites, boolean isStopOver) {
+            mLatitudes[slot] = latitude;
+            mLongitudes[slot] = longitude;
+            mAltitudes[slot] = altitude;
+            mTimes[slot] = time;
+            mElapsedRealtimeNanos[slot] = elapsedRealtimeNanos;
+            mAccuracies[slot] = accuracy;
+            mSpeeds[slot] = speed;
+            mBearings[slot] = bearing;
+            mDistances[slot] = distanceToStartingPoint;
+            mSatellites[slot] = numberSatellites;
+            mProviderIndices[slot] = (byte) getProviderIndex(provider != null ? provider : "");
+            // only write the stop over bits if they change - a snapshot may read the same word
+            if (getIsStopOver(slot) != isStopOver) {
+                mStopOvers[slot >>> 6] ^= 1L << slot;
+            }
+        }
+
+        private String getProvider(int slot) {
+            return mProviders[mProviderIndices[slot] & 0xFF];
+        }
+
+        private boolean getIsStopOver(int slot) {
+            return (mStopOvers[slot >>> 6] & (1L << slot)) != 0;
+        }
+
+        private int findProvider(String provider) {
+            for (int i = 0; i < mProviderCount; i++) {
+                if (mProviders[i].equals(provider)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int getProviderIndex(String provider) {
+            int index = findProvider(provider);
+            if (index >= 0) {
+                return index;
+            }
+            if (mProviderCount == mProviders.length) {
+                mProviders = Arrays.copyOf(mProviders, mProviders.length * 2);
+            }
+            mProviders[mProviderCount] = provider;
+            return mProviderCount++;
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+
+    /**
+     * Inner class: A paged out chunk that has been read again
+     */
+    private static class PagedInChunk {
+        private final int mIndex;
+        private final Chunk mChunk;
+
+        private PagedInChunk(int index, Chunk chunk) {
+            mIndex = index;
+            mChunk = chunk;
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+}
@@ -0,0 +1,33 @@
+/**
+ * WayPointPager.java
+ * Implements the WayPointPager interface
+ * A WayPointPager reads waypoints that a WayPointList has dropped from memory back from storage
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.core;
+
+import java.io.IOException;
+
+
+/**
+ * WayPointPager interface
+ *
+ * Page n holds the waypoints n * SEGMENT_SIZE up to (n + 1) * SEGMENT_SIZE of a track. Pages are
+ * read on the thread that accesses a paged out waypoint - a pager may refuse to read on the main thread.
+ */
+public interface WayPointPager {
+
+    /* Reads given page - returns a list of exactly SEGMENT_SIZE waypoints */
+    WayPointList readPage(int page) throws IOException;
+
+}
@@ -0,0 +1,156 @@
+/**
+ * AdaptiveSamplingPolicy.java
+ * Implements the AdaptiveSamplingPolicy class
+ * A AdaptiveSamplingPolicy adapts sampling interval and waypoint spacing to speed and heading changes
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import androidx.annotation.Nullable;
+
+
+/**
+ * AdaptiveSamplingPolicy class
+ *
+ * Waypoints are placed by distance: MAX_SPACING apart on straight paths, down to MIN_SPACING apart
+ * on paths that turn a lot. The curvature is measured in degrees of heading change per meter, so
+ * a twisty trail is sampled densely no matter how fast it is walked. The sampling interval is the
+ * time needed to cover the spacing at the current speed - fast movement is sampled often, slow
+ * movement rarely, and standing still only every MAX_INTERVAL.
+ */
+public final class AdaptiveSamplingPolicy implements SamplingPolicy, TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = AdaptiveSamplingPolicy.class.getSimpleName();
+
+    private static final long MIN_INTERVAL = 3000; // milliseconds
+    private static final long MAX_INTERVAL = 30000; // milliseconds - also bounds the delay until movement after a stop is noticed
+    private static final float MIN_SPACING = 8f; // meters between waypoints on twisty paths
+    private static final float MAX_SPACING = 50f; // meters between waypoints on straight paths
+    private static final float NETWORK_MIN_SPACING = 30f; // network locations jitter more than that anyway
+    private static final float TWISTY_CURVATURE = 3f; // degrees per meter - paths turning this much get MIN_SPACING
+    private static final float MIN_HEADING_DISTANCE = 5f; // meters - shorter movements are dominated by jitter
+    private static final float MIN_SPEED = 0.3f; // meters per second - slower counts as standing still
+    private static final float SMOOTHING = 0.5f; // weight of the newest sample
+
+
+    /* Main class variables */
+    private Location mLastSample;
+    private float mSpeed;
+    private float mCurvature;
+    private float mHeading;
+
+
+    /* Constructor */
+    public AdaptiveSamplingPolicy() {
+        reset();
+    }
+
+
+    @Override
+    public void reset() {
+        mLastSample = null;
+        mSpeed = 0f;
+        mCurvature = 0f;
+        mHeading = Float.NaN;
+    }
+
+
+    @Override
+    public void onSample(@Nullable Location location) {
+        if (location == null) {
+            return;
+        }
+        if (mLastSample == null) {
+            mLastSample = location;
+            return;
+        }
+        long timeDifference = location.getElapsedRealtimeNanos() - mLastSample.getElapsedRealtimeNanos();
+        if (timeDifference <= 0) {
+            // no new location since the last sample
+            return;
+        }
+
+        // update speed - gps reports it, otherwise it is derived from the distance covered
+        float distance = mLastSample.distanceTo(location);
+        float speed;
+        if (location.hasSpeed()) {
+            speed = location.getSpeed();
+        } else {
+            speed = distance / ((float) timeDifference / ONE_SECOND_IN_NANOSECOND);
+        }
+        mSpeed = smooth(mSpeed, speed);
+
+        // update curvature - only while moving and once the movement is clearly larger than the location error
+        if (mSpeed >= MIN_SPEED && distance >= Math.max(MIN_HEADING_DISTANCE, location.getAccuracy())) {
+            float heading = mLastSample.bearingTo(location);
+            if (!Float.isNaN(mHeading)) {
+                mCurvature = smooth(mCurvature, getHeadingChange(mHeading, heading) / distance);
+            }
+            mHeading = heading;
+            mLastSample = location;
+        }
+    }
+
+
+    @Override
+    public long getSamplingInterval() {
+        if (mSpeed < MIN_SPEED) {
+            return MAX_INTERVAL;
+        }
+        long interval = (long) (getSpacing() / mSpeed * 1000);
+        return Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, interval));
+    }
+
+
+    @Override
+    public boolean isNewWayPoint(Location lastWayPoint, Location newLocation) {
+        float distance = newLocation.distanceTo(lastWayPoint);
+        long timeDifference = newLocation.getElapsedRealtimeNanos() - lastWayPoint.getElapsedRealtimeNanos();
+        if (timeDifference < MIN_INTERVAL * 1000000L) {
+            return false;
+        }
+
+        if (newLocation.getProvider().equals(LocationManager.NETWORK_PROVIDER)) {
+            // SPECIAL CASE network: coarse fixes need a wider spacing
+            return distance > Math.max(NETWORK_MIN_SPACING, getSpacing());
+        } else {
+            // DEFAULT GPS: accept a little early - the next tick would otherwise overshoot the spacing
+            return distance > Math.max(getSpacing() * 0.75f, newLocation.getAccuracy());
+        }
+    }
+
+
+    /* Returns the desired distance between waypoints for the current curvature */
+    private float getSpacing() {
+        float twistiness = Math.min(1f, mCurvature / TWISTY_CURVATURE);
+        return MAX_SPACING - (MAX_SPACING - MIN_SPACING) * twistiness;
+    }
+
+
+    /* Returns the absolute difference between two headings in degrees - between 0 and 180 */
+    private static float getHeadingChange(float heading1, float heading2) {
+        float change = Math.abs(heading2 - heading1) % 360f;
+        return change > 180f ? 360f - change : change;
+    }
+
+
+    /* Blends a new value into an exponentially smoothed value */
+    private static float smooth(float smoothed, float value) {
+        return smoothed + SMOOTHING * (value - smoothed);
+    }
+
+}
@@ -0,0 +1,317 @@
+/**
+ * ArchiveHelper.java
+ * Implements the ArchiveHelper class
+ * An ArchiveHelper appends older tracks to the archive pack and reads them back
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import androidx.annotation.Nullable;
+
+
+/**
+ * ArchiveHelper class
+ *
+ * The archive pack is append-only. Each record holds the file name and the deflated content of
+ * one track file. The offset of a record is stored in the track catalog. Deleting an archived
+ * track appends a record without content, so that it stays deleted if the catalog is rebuilt.
+ * A scan skips damaged data (e.g. a record torn by a crash) up to the next record magic. Once more
+ * than COMPACTION_THRESHOLD of the pack is dead, compactArchive rewrites it with the live records.
+ */
+public class ArchiveHelper implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = ArchiveHelper.class.getSimpleName();
+
+    /* Archive file format */
+    private static final int RECORD_MAGIC = 0x54424152; // "TBAR"
+    private static final int DELETED_RECORD_LENGTH = -1;
+    private static final double COMPACTION_THRESHOLD = 0.5; // fraction of the pack held by deleted, replaced or damaged records
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    /* Guards appends to the archive pack */
+    private static final Object ARCHIVE_LOCK = new Object();
+
+
+    /* Main class variables */
+    private final File mArchiveFile;
+    private final File mArchiveTempFile;
+
+
+    /* Constructor */
+    public ArchiveHelper(File folder) {
+        mArchiveFile = new File(folder, FILE_NAME_ARCHIVE);
+        mArchiveTempFile = new File(folder, FILE_NAME_ARCHIVE + FILE_TYPE_TEMP_EXTENSION);
+    }
+
+
+    /* Appends given track file to the archive pack - returns the offset of its record or -1 */
+    public long appendTrack(File trackFile) {
+        // compress track file
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (FileInputStream in = new FileInputStream(trackFile);
+             DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to compress track file (IOException): " + trackFile.toString());
+            return -1;
+        } finally {
+            deflater.end();
+        }
+
+        // append record
+        long offset = appendRecord(trackFile.getName(), compressed);
+        if (offset >= 0) {
+            LogHelper.v(LOG_TAG, "Archived track " + trackFile.getName() + " at offset " + offset + " (" + compressed.size() + " bytes).");
+        }
+        return offset;
+    }
+
+
+    /* Marks the archived track with given file name as deleted */
+    public boolean removeTrack(String fileName) {
+        return appendRecord(fileName, null) >= 0;
+    }
+
+
+    /* Opens the content of the archived track at given offset - returns null if there is no valid record */
+    @Nullable
+    public InputStream openTrack(long offset, String fileName) {
+        try (RandomAccessFile archive = new RandomAccessFile(mArchiveFile, "r")) {
+            archive.seek(offset);
+            int length = archive.readInt() == RECORD_MAGIC && archive.readUTF().equals(fileName) ? archive.readInt() : DELETED_RECORD_LENGTH;
+            if (length < 0 || length > archive.length() - archive.getFilePointer()) {
+                LogHelper.e(LOG_TAG, "No archive record for " + fileName + " at offset " + offset + ".");
+                return null;
+            }
+            byte[] compressed = new byte[length];
+            archive.readFully(compressed);
+            return new InflaterInputStream(new ByteArrayInputStream(compressed));
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to read track from archive (IOException): " + fileName);
+            return null;
+        }
+    }
+
+
+    /* Gets the offsets of all records in the archive pack by file name - used to rebuild the catalog */
+    public Map<String, Long> scanArchive() {
+        Map<String, Long> offsets = new LinkedHashMap<>();
+        if (!mArchiveFile.exists()) {
+            return offsets;
+        }
+        try (RandomAccessFile archive = new RandomAccessFile(mArchiveFile, "r")) {
+            for (Map.Entry<String, Record> record : scanRecords(archive).entrySet()) {
+                offsets.put(record.getKey(), record.getValue().mOffset);
+            }
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to scan archive (IOException): " + mArchiveFile.toString());
+        }
+        return offsets;
+    }
+
+
+    /* Rewrites the archive pack with its live records only, if enough of it is dead - returns the new offsets by file name, or null if the pack was not rewritten */
+    @Nullable
+    public Map<String, Long> compactArchive() {
+        synchronized (ARCHIVE_LOCK) {
+            if (!mArchiveFile.exists()) {
+                return null;
+            }
+            Map<String, Long> offsets = new LinkedHashMap<>();
+            long archiveLength;
+            long liveLength = 0;
+            try (RandomAccessFile archive = new RandomAccessFile(mArchiveFile, "r")) {
+                archiveLength = archive.length();
+                Map<String, Record> records = scanRecords(archive);
+                for (Record record : records.values()) {
+                    liveLength += record.mLength;
+                }
+                if (archiveLength - liveLength <= archiveLength * COMPACTION_THRESHOLD) {
+                    return null;
+                }
+
+                // copy live records into a temp file first and swap it in - the pack is either the old or the new version
+                try (FileOutputStream fileOutputStream = new FileOutputStream(mArchiveTempFile);
+                     OutputStream out = new BufferedOutputStream(fileOutputStream)) {
+                    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                    long offset = 0;
+                    for (Map.Entry<String, Record> record : records.entrySet()) {
+                        offsets.put(record.getKey(), offset);
+                        archive.seek(record.getValue().mOffset);
+                        long remaining = record.getValue().mLength;
+                        while (remaining > 0) {
+                            int count = archive.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                            if (count < 0) {
+                                throw new EOFException("Archive record ends early: " + record.getKey());
+                            }
+                            out.write(buffer, 0, count);
+                            remaining -= count;
+                        }
+                        offset += record.getValue().mLength;
+                    }
+                    out.flush();
+                    fileOutputStream.getFD().sync();
+                }
+            } catch (IOException e) {
+                LogHelper.e(LOG_TAG, "Unable to compact archive (IOException): " + e.getMessage());
+                mArchiveTempFile.delete();
+                return null;
+            }
+            if (!mArchiveTempFile.renameTo(mArchiveFile)) {
+                LogHelper.e(LOG_TAG, "Unable to replace archive: " + mArchiveFile.toString());
+                mArchiveTempFile.delete();
+                return null;
+            }
+            LogHelper.v(LOG_TAG, "Compacted archive from " + archiveLength + " to " + liveLength + " bytes.");
+            return offsets;
+        }
+    }
+
+
+    /* Reads the headers of all records - the latest record of a track wins, deleted tracks are left out and damaged data is skipped */
+    private Map<String, Record> scanRecords(RandomAccessFile archive) throws IOException {
+        Map<String, Record> records = new LinkedHashMap<>();
+        long archiveLength = archive.length();
+        long offset = 0;
+        while (offset < archiveLength) {
+            long end = readRecordHeader(archive, offset, archiveLength, records);
+            if (end < 0) {
+                // damaged or torn record - continue with the next record magic
+                long next = findRecordMagic(archive, offset + 1);
+                LogHelper.w(LOG_TAG, "Skipping damaged archive data from offset " + offset + " to " + (next < 0 ? archiveLength : next) + ".");
+                if (next < 0) {
+                    break;
+                }
+                end = next;
+            }
+            offset = end;
+        }
+        return records;
+    }
+
+
+    /* Reads the header of the record at given offset into given records - returns the end of the record, or -1 if there is no valid record */
+    private long readRecordHeader(RandomAccessFile archive, long offset, long archiveLength, Map<String, Record> records) throws IOException {
+        try {
+            archive.seek(offset);
+            if (archive.readInt() != RECORD_MAGIC) {
+                return -1;
+            }
+            String fileName = archive.readUTF();
+            int length = archive.readInt();
+            if (length == DELETED_RECORD_LENGTH) {
+                records.remove(fileName);
+                return archive.getFilePointer();
+            }
+            if (length < 0 || length > archiveLength - archive.getFilePointer()) {
+                return -1;
+            }
+            // a track archived twice uses its latest record - remove first, so that the map keeps the order of the pack
+            long end = archive.getFilePointer() + length;
+            records.remove(fileName);
+            records.put(fileName, new Record(offset, end - offset));
+            return end;
+        } catch (EOFException | UTFDataFormatException e) {
+            return -1;
+        }
+    }
+
+
+    /* Finds the next record magic at or after given offset - returns its offset or -1 */
+    private long findRecordMagic(RandomAccessFile archive, long offset) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long position = offset;
+        int window = 0;
+        int count;
+        archive.seek(offset);
+        while ((count = archive.read(buffer)) != -1) {
+            for (int i = 0; i < count; i++) {
+                window = (window << 8) | (buffer[i] & 0xff);
+                position++;
+                if (position - offset >= 4 && window == RECORD_MAGIC) {
+                    return position - 4;
+                }
+            }
+        }
+        return -1;
+    }
+
+
+    /* Appends a record to the archive pack - returns its offset or -1 */
+    private long appendRecord(String fileName, @Nullable ByteArrayOutputStream compressed) {
+        synchronized (ARCHIVE_LOCK) {
+            long offset = mArchiveFile.length();
+            try (FileOutputStream fileOutputStream = new FileOutputStream(mArchiveFile, true);
+                 DataOutputStream out = new DataOutputStream(fileOutputStream)) {
+                out.writeInt(RECORD_MAGIC);
+                out.writeUTF(fileName);
+                if (compressed != null) {
+                    out.writeInt(compressed.size());
+                    compressed.writeTo(out);
+                } else {
+                    out.writeInt(DELETED_RECORD_LENGTH);
+                }
+                out.flush();
+                fileOutputStream.getFD().sync();
+                return offset;
+            } catch (IOException e) {
+                LogHelper.e(LOG_TAG, "Unable to append record to archive (IOException): " + fileName);
+                return -1;
+            }
+        }
+    }
+
+
+
+    /**
+     * Inner class: Position and size of a record in the archive pack
+     */
+    private static final class Record {
+        private final long mOffset;
+        private final long mLength;
+
+        private Record(long offset, long length) {
+            mOffset = offset;
+            mLength = length;
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+}
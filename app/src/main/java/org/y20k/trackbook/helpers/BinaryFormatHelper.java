@@ -0,0 +1,437 @@
+/**
+ * BinaryFormatHelper.java
+ * Implements the BinaryFormatHelper class
+ * A BinaryFormatHelper writes and reads tracks in the compact binary file format (version 3)
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.TrackBuilder;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+
+/**
+ * BinaryFormatHelper class
+ *
+ * Layout: magic ("TBK" + version byte) | statistics | index of the first waypoint | waypoint count |
+ * provider table | one column per waypoint attribute. Numeric columns store quantized values as
+ * zig-zag encoded deltas to the previous waypoint, written as variable length integers. Speed and
+ * bearing are stored as quantized value plus one - zero marks an unknown value.
+ *
+ * A file may hold only a part of the waypoints of a track - e.g. a segment of the temp track. The
+ * index of its first waypoint within the track is part of the header, the statistics are always
+ * those of the whole track.
+ */
+public final class BinaryFormatHelper implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = BinaryFormatHelper.class.getSimpleName();
+
+    /* File format */
+    private static final byte FORMAT_VERSION = 3;
+    private static final byte[] MAGIC = {'T', 'B', 'K', FORMAT_VERSION};
+    private static final double COORDINATE_SCALE = 1e7; // 1e-7 degrees ~ 1 centimeter
+    private static final double ALTITUDE_SCALE = 100d; // centimeters
+    private static final float ACCURACY_SCALE = 100f; // centimeters
+    private static final float DISTANCE_SCALE = 100f; // centimeters
+    private static final float SPEED_SCALE = 100f; // centimeters per second
+    private static final float BEARING_SCALE = 100f; // hundredths of a degree
+    private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+
+
+    /* Checks if the given header bytes start a binary track file */
+    public static boolean isBinaryFormat(byte[] header, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /* Getter for the number of header bytes needed by isBinaryFormat */
+    public static int getHeaderLength() {
+        return MAGIC.length;
+    }
+
+
+    /* Writes given track to given stream */
+    public static void writeTrack(Track track, OutputStream outputStream) throws IOException {
+        writeTrack(track, 0, track.getSize(), outputStream);
+    }
+
+
+    /* Writes the waypoints between fromIndex (inclusive) and toIndex (exclusive) of given track to given stream - the statistics are those of the whole track */
+    public static void writeTrack(Track track, int fromIndex, int toIndex, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        WayPointList wayPoints = track.getWayPoints();
+        int size = toIndex - fromIndex;
+
+        // header and statistics
+        out.write(MAGIC);
+        out.writeFloat(track.getTrackLength());
+        writeVarLong(out, track.getTrackDuration());
+        out.writeFloat(track.getStepCount());
+        out.writeLong(track.getRecordingStart().getTime());
+        out.writeLong(track.getRecordingStop().getTime());
+        out.writeDouble(track.getMaxAltitude());
+        out.writeDouble(track.getMinAltitude());
+        out.writeDouble(track.getPositiveElevation());
+        out.writeDouble(track.getNegativeElevation());
+        writeVarLong(out, track.getMovingTime());
+        writeVarLong(out, fromIndex);
+        writeVarLong(out, size);
+
+        // provider table
+        List<String> providers = new ArrayList<>();
+        int[] providerIndices = new int[size];
+        for (int i = 0; i < size; i++) {
+            String provider = wayPoints.getProvider(fromIndex + i);
+            int index = providers.indexOf(provider);
+            if (index == -1) {
+                index = providers.size();
+                providers.add(provider);
+            }
+            providerIndices[i] = index;
+        }
+        writeVarLong(out, providers.size());
+        for (String provider : providers) {
+            out.writeUTF(provider);
+        }
+
+        // columns
+        long previous = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            long latitude = Math.round(wayPoints.getLatitude(i) * COORDINATE_SCALE);
+            writeVarLong(out, zigZag(latitude - previous));
+            previous = latitude;
+        }
+        previous = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            long longitude = Math.round(wayPoints.getLongitude(i) * COORDINATE_SCALE);
+            writeVarLong(out, zigZag(longitude - previous));
+            previous = longitude;
+        }
+        previous = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            long altitude = Math.round(wayPoints.getAltitude(i) * ALTITUDE_SCALE);
+            writeVarLong(out, zigZag(altitude - previous));
+            previous = altitude;
+        }
+        previous = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            long time = wayPoints.getTime(i);
+            writeVarLong(out, zigZag(time - previous));
+            previous = time;
+        }
+        previous = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            long elapsedRealtime = wayPoints.getElapsedRealtimeNanos(i) / NANOSECONDS_PER_MILLISECOND;
+            writeVarLong(out, zigZag(elapsedRealtime - previous));
+            previous = elapsedRealtime;
+        }
+        previous = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            long accuracy = Math.round(wayPoints.getAccuracy(i) * ACCURACY_SCALE);
+            writeVarLong(out, zigZag(accuracy - previous));
+            previous = accuracy;
+        }
+        previous = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            long distance = Math.round(wayPoints.getDistanceToStartingPoint(i) * DISTANCE_SCALE);
+            writeVarLong(out, zigZag(distance - previous));
+            previous = distance;
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            writeVarLong(out, quantizeOptional(wayPoints.getSpeed(i), SPEED_SCALE));
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            writeVarLong(out, quantizeOptional(wayPoints.getBearing(i), BEARING_SCALE));
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            writeVarLong(out, wayPoints.getNumberSatellites(i));
+        }
+        for (int i = 0; i < size; i++) {
+            writeVarLong(out, providerIndices[i]);
+        }
+
+        // stop over bits
+        int bits = 0;
+        for (int i = 0; i < size; i++) {
+            if (wayPoints.getIsStopOver(fromIndex + i)) {
+                bits |= 1 << (i % 8);
+            }
+            if (i % 8 == 7 || i == size - 1) {
+                out.writeByte(bits);
+                bits = 0;
+            }
+        }
+
+        out.flush();
+    }
+
+
+    /* Reads a track from given stream - stream must be positioned at the start of the file */
+    public static Track readTrack(InputStream inputStream) throws IOException {
+        return readTrack(inputStream, new WayPointList());
+    }
+
+
+    /* Reads a track from given stream into given waypoints - waypoints the list already holds win over those of the file, the list must not be used if this throws */
+    public static Track readTrack(InputStream inputStream, WayPointList wayPoints) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+
+        // header and statistics
+        readMagic(in);
+        float trackLength = in.readFloat();
+        long duration = readVarLong(in);
+        float stepCount = in.readFloat();
+        Date recordingStart = new Date(in.readLong());
+        Date recordingStop = new Date(in.readLong());
+        double maxAltitude = in.readDouble();
+        double minAltitude = in.readDouble();
+        double positiveElevation = in.readDouble();
+        double negativeElevation = in.readDouble();
+        long movingTime = readVarLong(in);
+        int firstIndex = readInt(in, Integer.MAX_VALUE);
+        int size = readInt(in, Integer.MAX_VALUE - firstIndex);
+        if (firstIndex > wayPoints.size()) {
+            throw new IOException("Waypoints before index " + firstIndex + " are missing.");
+        }
+        readWayPoints(in, size, firstIndex, wayPoints);
+
+        return new TrackBuilder(FORMAT_VERSION, wayPoints, trackLength, duration, stepCount, recordingStart, recordingStop,
+                maxAltitude, minAltitude, positiveElevation, negativeElevation, movingTime).toTrack();
+    }
+
+
+    /* Reads only the recording start from given stream - e.g. to check which recording a segment belongs to */
+    public static long readRecordingStart(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        readMagic(in);
+        in.readFloat();
+        readVarLong(in);
+        in.readFloat();
+        return in.readLong();
+    }
+
+
+    /* Reads only the waypoints from given stream - e.g. of a segment */
+    public static WayPointList readWayPoints(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+
+        // skip header and statistics
+        readMagic(in);
+        in.readFloat();
+        readVarLong(in);
+        in.readFloat();
+        in.readLong();
+        in.readLong();
+        in.readDouble();
+        in.readDouble();
+        in.readDouble();
+        in.readDouble();
+        readVarLong(in);
+        readVarLong(in);
+        int size = readInt(in, Integer.MAX_VALUE);
+        WayPointList wayPoints = new WayPointList();
+        readWayPoints(in, size, 0, wayPoints);
+        return wayPoints;
+    }
+
+
+    /* Reads and checks the magic bytes */
+    private static void readMagic(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!isBinaryFormat(magic, magic.length)) {
+            throw new IOException("Not a binary track file.");
+        }
+    }
+
+
+    /* Reads provider table, columns and stop over bits of the waypoints firstIndex to firstIndex + size - straight into the chunks of given list, waypoints it already holds are kept */
+    private static void readWayPoints(DataInputStream in, int size, int firstIndex, WayPointList wayPoints) throws IOException {
+        // provider table - grows while it is read, so that a damaged count ends with an EOFException
+        long providerCount = readVarLong(in);
+        List<String> providers = new ArrayList<>();
+        for (long i = 0; i < providerCount; i++) {
+            providers.add(in.readUTF());
+        }
+
+        // waypoints the list already holds are kept - e.g. the temp file still holds waypoints of a segment that was stored after it, and
+        // paged out segments are read-only. Both copies were stored from the same recording, which the caller has to make sure of.
+        int skipped = wayPoints.size() - firstIndex;
+
+        // columns - the first column appends the waypoints while it is read, so memory only grows with the data actually present
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value += unZigZag(readVarLong(in));
+            if (i >= skipped) {
+                wayPoints.addBlank();
+                wayPoints.setLatitude(firstIndex + i, value / COORDINATE_SCALE);
+            }
+        }
+        value = 0;
+        for (int i = 0; i < size; i++) {
+            value += unZigZag(readVarLong(in));
+            if (i >= skipped) {
+                wayPoints.setLongitude(firstIndex + i, value / COORDINATE_SCALE);
+            }
+        }
+        value = 0;
+        for (int i = 0; i < size; i++) {
+            value += unZigZag(readVarLong(in));
+            if (i >= skipped) {
+                wayPoints.setAltitude(firstIndex + i, value / ALTITUDE_SCALE);
+            }
+        }
+        value = 0;
+        for (int i = 0; i < size; i++) {
+            value += unZigZag(readVarLong(in));
+            if (i >= skipped) {
+                wayPoints.setTime(firstIndex + i, value);
+            }
+        }
+        value = 0;
+        for (int i = 0; i < size; i++) {
+            value += unZigZag(readVarLong(in));
+            if (i >= skipped) {
+                wayPoints.setElapsedRealtimeNanos(firstIndex + i, value * NANOSECONDS_PER_MILLISECOND);
+            }
+        }
+        value = 0;
+        for (int i = 0; i < size; i++) {
+            value += unZigZag(readVarLong(in));
+            if (i >= skipped) {
+                wayPoints.setAccuracy(firstIndex + i, value / ACCURACY_SCALE);
+            }
+        }
+        value = 0;
+        for (int i = 0; i < size; i++) {
+            value += unZigZag(readVarLong(in));
+            if (i >= skipped) {
+                wayPoints.setDistanceToStartingPoint(firstIndex + i, value / DISTANCE_SCALE);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            float speed = unQuantizeOptional(readVarLong(in), SPEED_SCALE);
+            if (i >= skipped) {
+                wayPoints.setSpeed(firstIndex + i, speed);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            float bearing = unQuantizeOptional(readVarLong(in), BEARING_SCALE);
+            if (i >= skipped) {
+                wayPoints.setBearing(firstIndex + i, bearing);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int satellites = readInt(in, Integer.MAX_VALUE);
+            if (i >= skipped) {
+                wayPoints.setNumberSatellites(firstIndex + i, satellites);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int providerIndex = readInt(in, providers.size() - 1);
+            if (i >= skipped) {
+                wayPoints.setProvider(firstIndex + i, providers.get(providerIndex));
+            }
+        }
+
+        // stop over bits
+        int bits = 0;
+        for (int i = 0; i < size; i++) {
+            if (i % 8 == 0) {
+                bits = in.readUnsignedByte();
+            }
+            if (i >= skipped) {
+                wayPoints.setIsStopOver(firstIndex + i, (bits & (1 << (i % 8))) != 0);
+            }
+        }
+    }
+
+
+    /* Quantizes an optional value - 0 if it is unknown (NaN) */
+    private static long quantizeOptional(float value, float scale) {
+        return Float.isNaN(value) ? 0 : Math.max(0, Math.round(value * scale)) + 1;
+    }
+
+
+    /* Reverses quantizeOptional */
+    private static float unQuantizeOptional(long value, float scale) {
+        return value == 0 ? Float.NaN : (value - 1) / scale;
+    }
+
+
+    /* Reads a count, index or other non-negative integer - throws if it is larger than given maximum, so that a damaged file can not cause an out of range access */
+    private static int readInt(DataInputStream in, int maximum) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > maximum) {
+            throw new IOException("Damaged track file: value " + value + " is out of range (maximum " + maximum + ").");
+        }
+        return (int) value;
+    }
+
+
+    /* Maps signed values to unsigned values: 0, -1, 1, -2, 2 ... -> 0, 1, 2, 3, 4 ... */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+
+    /* Reverses zigZag */
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+
+    /* Writes an unsigned variable length integer - seven bits per byte, least significant group first */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+
+    /* Reads an unsigned variable length integer */
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new EOFException("Malformed variable length integer.");
+    }
+
+}
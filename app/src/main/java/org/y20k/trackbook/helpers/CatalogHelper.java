@@ -0,0 +1,248 @@
+/**
+ * CatalogHelper.java
+ * Implements the CatalogHelper class
+ * A CatalogHelper reads and updates the catalog file that summarizes all saved tracks
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.TrackSummary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+
+
+/**
+ * CatalogHelper class
+ *
+ * Several StorageHelpers - and with them several CatalogHelpers - may exist at the same time. The
+ * in-memory copy of a catalog file is therefore shared by all of them, and every change reads and
+ * writes it while holding the catalog lock.
+ */
+public class CatalogHelper implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = CatalogHelper.class.getSimpleName();
+
+    /* Catalog file format */
+    private static final int CATALOG_MAGIC = 0x54424349; // "TBCI"
+    private static final int CATALOG_VERSION = 2; // version 2 adds the archive offset
+
+    /* Guards read-modify-write cycles of the catalog file - tracks are saved and deleted from different threads */
+    private static final Object CATALOG_LOCK = new Object();
+
+    /* In-memory copies of the catalog files that have been read - guarded by CATALOG_LOCK */
+    private static final Map<File, List<TrackSummary>> CATALOG_CACHE = new HashMap<>();
+
+
+    /* Main class variables */
+    private final File mCatalogFile;
+    private final File mCatalogTempFile;
+
+
+    /* Constructor */
+    public CatalogHelper(File folder) {
+        mCatalogFile = new File(folder, FILE_NAME_CATALOG);
+        mCatalogTempFile = new File(folder, FILE_NAME_CATALOG + FILE_TYPE_TEMP_EXTENSION);
+    }
+
+
+    /* Reads all catalog entries - newest track first - returns null if there is no valid catalog */
+    @Nullable
+    public List<TrackSummary> readCatalog() {
+        synchronized (CATALOG_LOCK) {
+            List<TrackSummary> cachedEntries = CATALOG_CACHE.get(mCatalogFile);
+            if (cachedEntries != null) {
+                return new ArrayList<>(cachedEntries);
+            }
+            if (!mCatalogFile.exists()) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mCatalogFile)))) {
+                int version = in.readInt() == CATALOG_MAGIC ? in.readInt() : -1;
+                if (version < 1 || version > CATALOG_VERSION) {
+                    LogHelper.w(LOG_TAG, "Unknown catalog format.");
+                    return null;
+                }
+                int count = in.readInt();
+                List<TrackSummary> entries = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    entries.add(readEntry(in, version));
+                }
+                CATALOG_CACHE.put(mCatalogFile, entries);
+                return new ArrayList<>(entries);
+            } catch (IOException e) {
+                LogHelper.e(LOG_TAG, "Unable to read catalog (IOException): " + mCatalogFile.toString());
+                return null;
+            }
+        }
+    }
+
+
+    /* Replaces the catalog with given entries - sorts the given list newest track first */
+    public boolean writeCatalog(List<TrackSummary> entries) {
+        synchronized (CATALOG_LOCK) {
+            sortEntries(entries);
+
+            // write to a temp file first and swap it in - the catalog is either the old or the new version
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mCatalogTempFile)))) {
+                out.writeInt(CATALOG_MAGIC);
+                out.writeInt(CATALOG_VERSION);
+                out.writeInt(entries.size());
+                for (TrackSummary entry : entries) {
+                    writeEntry(out, entry);
+                }
+            } catch (IOException e) {
+                LogHelper.e(LOG_TAG, "Unable to write catalog (IOException): " + mCatalogTempFile.toString());
+                CATALOG_CACHE.remove(mCatalogFile);
+                return false;
+            }
+            if (!mCatalogTempFile.renameTo(mCatalogFile)) {
+                LogHelper.e(LOG_TAG, "Unable to replace catalog: " + mCatalogFile.toString());
+                CATALOG_CACHE.remove(mCatalogFile);
+                return false;
+            }
+            CATALOG_CACHE.put(mCatalogFile, new ArrayList<>(entries));
+            return true;
+        }
+    }
+
+
+    /* Adds or replaces the entry of a track */
+    public boolean putEntry(TrackSummary summary) {
+        synchronized (CATALOG_LOCK) {
+            List<TrackSummary> entries = readCatalog();
+            if (entries == null) {
+                return false;
+            }
+            removeEntry(entries, summary.getFileName());
+            entries.add(summary);
+            return writeCatalog(entries);
+        }
+    }
+
+
+    /* Removes the entry of a track */
+    public boolean removeEntry(String fileName) {
+        synchronized (CATALOG_LOCK) {
+            List<TrackSummary> entries = readCatalog();
+            if (entries == null) {
+                return false;
+            }
+            removeEntry(entries, fileName);
+            return writeCatalog(entries);
+        }
+    }
+
+
+    /* Points the entries of archived tracks to their new records - given offsets map file names to archive offsets */
+    public boolean updateArchiveOffsets(Map<String, Long> offsets) {
+        synchronized (CATALOG_LOCK) {
+            List<TrackSummary> entries = readCatalog();
+            if (entries == null) {
+                return false;
+            }
+            for (int i = 0; i < entries.size(); i++) {
+                TrackSummary entry = entries.get(i);
+                Long offset = entry.isArchived() ? offsets.get(entry.getFileName()) : null;
+                if (offset != null) {
+                    entries.set(i, new TrackSummary(entry, offset));
+                }
+            }
+            return writeCatalog(entries);
+        }
+    }
+
+
+    /* Removes the entry with given file name from given list */
+    private void removeEntry(List<TrackSummary> entries, String fileName) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i).getFileName().equals(fileName)) {
+                entries.remove(i);
+            }
+        }
+    }
+
+
+    /* Sorts entries in a way that the newest tracks are at the top */
+    private void sortEntries(List<TrackSummary> entries) {
+        Collections.sort(entries, new Comparator<TrackSummary>() {
+            @Override
+            public int compare(TrackSummary summary1, TrackSummary summary2) {
+                int result = summary2.getRecordingStart().compareTo(summary1.getRecordingStart());
+                if (result == 0) {
+                    result = summary2.getFileName().compareTo(summary1.getFileName());
+                }
+                return result;
+            }
+        });
+    }
+
+
+    /* Writes a single catalog entry */
+    private void writeEntry(DataOutputStream out, TrackSummary entry) throws IOException {
+        out.writeUTF(entry.getFileName());
+        out.writeLong(entry.getRecordingStart().getTime());
+        out.writeLong(entry.getRecordingStop().getTime());
+        out.writeDouble(entry.getTrackDistance());
+        out.writeLong(entry.getTrackDuration());
+        out.writeInt(entry.getWayPointCount());
+        out.writeDouble(entry.getMinLatitude());
+        out.writeDouble(entry.getMaxLatitude());
+        out.writeDouble(entry.getMinLongitude());
+        out.writeDouble(entry.getMaxLongitude());
+        out.writeDouble(entry.getMaxAltitude());
+        out.writeDouble(entry.getMinAltitude());
+        out.writeDouble(entry.getPositiveElevation());
+        out.writeDouble(entry.getNegativeElevation());
+        out.writeLong(entry.getArchiveOffset());
+    }
+
+
+    /* Reads a single catalog entry */
+    private TrackSummary readEntry(DataInputStream in, int version) throws IOException {
+        String fileName = in.readUTF();
+        Date recordingStart = new Date(in.readLong());
+        Date recordingStop = new Date(in.readLong());
+        double trackDistance = in.readDouble();
+        long duration = in.readLong();
+        int wayPointCount = in.readInt();
+        double minLatitude = in.readDouble();
+        double maxLatitude = in.readDouble();
+        double minLongitude = in.readDouble();
+        double maxLongitude = in.readDouble();
+        double maxAltitude = in.readDouble();
+        double minAltitude = in.readDouble();
+        double positiveElevation = in.readDouble();
+        double negativeElevation = in.readDouble();
+        long archiveOffset = version >= 2 ? in.readLong() : -1;
+        return new TrackSummary(fileName, recordingStart, recordingStop, trackDistance, duration, wayPointCount,
+                minLatitude, maxLatitude, minLongitude, maxLongitude, maxAltitude, minAltitude, positiveElevation, negativeElevation, archiveOffset);
+    }
+
+}
@@ -29,7 +29,6 @@ import android.widget.TextView;
 import org.y20k.trackbook.R;
 import org.y20k.trackbook.core.TrackBundle;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -57,8 +56,8 @@ public class DropdownAdapter extends BaseAdapter implements ThemedSpinnerAdapter
         // store activity
         mActivity = activity;
 
-        // fill list with track bundles
-        initializeTrackBundleList();
+        // start with an empty list - track bundles are loaded in the background by refresh
+        mTrackBundleList = new ArrayList<>();
 
         // create an adapter helper
         mDropdownAdapterHelper = new ThemedSpinnerAdapter.Helper(activity);
@@ -159,29 +158,20 @@ public class DropdownAdapter extends BaseAdapter implements ThemedSpinnerAdapter
     }
 
 
-    /* Refreshes the adapter data */
-    public void refresh() {
-        // re-initialize the adapter's array list
-        initializeTrackBundleList();
-    }
-
-
-    /* Initializes list of track bundles */
-    private void initializeTrackBundleList() {
-
-        // get list of files from storage
-        StorageHelper storageHelper = new StorageHelper(mActivity);
-        File files[] = storageHelper.getListOfTrackbookFiles();
-
-        // fill list with track bundles
-        mTrackBundleList = new ArrayList<>();
-        for (File file : files) {
-            String fileName = file.getName();
-            if (fileName.endsWith(FILE_TYPE_TRACKBOOK_EXTENSION) && !fileName.startsWith(FILE_NAME_TEMP)) {
-                mTrackBundleList.add(new TrackBundle(file));
+    /* Refreshes the adapter data in the background - runs given callback once the data has been replaced */
+    public void refresh(@Nullable final Runnable onRefreshed) {
+        // get list of track bundles from the track catalog
+        TrackRepository.getInstance(mActivity).getListOfTrackBundles(new TrackRepository.Callback<List<TrackBundle>>() {
+            @Override
+            public void onResult(List<TrackBundle> trackBundles) {
+                // re-initialize the adapter's array list
+                mTrackBundleList = trackBundles != null ? trackBundles : new ArrayList<TrackBundle>();
+                notifyDataSetChanged();
+                if (onRefreshed != null) {
+                    onRefreshed.run();
+                }
             }
-        }
-
+        });
     }
 
 }
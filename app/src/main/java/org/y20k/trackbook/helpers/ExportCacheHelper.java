@@ -0,0 +1,352 @@
+/**
+ * ExportCacheHelper.java
+ * Implements the ExportCacheHelper class
+ * A ExportCacheHelper keeps generated export files in the cache directory - keyed by track content and export format
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.content.Context;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * ExportCacheHelper class
+ *
+ * The cache key is a SHA-1 hash over everything an exporter writes - an edited or re-recorded
+ * track gets a new key, so cached exports never need to be invalidated. A cache hit refreshes
+ * the modification date of the file, which makes it the least-recently-used marker. Exports that
+ * have not been used for EXPORT_CACHE_MAX_AGE are deleted, and the oldest exports are deleted
+ * first whenever the cache exceeds EXPORT_CACHE_SIZE_BUDGET. The cache is trimmed after every
+ * new export, so it never has to be emptied as a whole.
+ */
+public final class ExportCacheHelper implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = ExportCacheHelper.class.getSimpleName();
+
+    private static final int COPY_BUFFER_SIZE = 65536;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /* Guards the cache folder - exports may be written from several threads */
+    private static final Object sLock = new Object();
+
+
+    /* Writes the export of given track into given stream - served from the cache if the track has been exported before - the stream is left open */
+    public static void writeTrack(Context context, Track track, int exportFormat, OutputStream stream) throws IOException {
+        TrackExporter exporter = ExportHelper.createExporter(exportFormat);
+        File folder = getCacheFolder(context);
+        if (folder == null) {
+            // no cache available - just encode
+            ExportHelper.writeTrack(track, exporter, stream);
+            return;
+        }
+
+        // CASE: cache hit - copy cached export
+        File cacheFile = new File(folder, getCacheKey(track, exportFormat) + exporter.getFileExtension());
+        InputStream cachedExport = openCacheFile(cacheFile);
+        if (cachedExport != null) {
+            try (InputStream in = cachedExport) {
+                LogHelper.v(LOG_TAG, "Using cached export: " + cacheFile.getName());
+                copy(in, stream);
+                return;
+            }
+        }
+
+        // CASE: cache miss - encode into given stream and into a temp file in the cache
+        File tempFile = new File(folder, cacheFile.getName() + "." + Thread.currentThread().getId() + FILE_TYPE_TEMP_EXTENSION);
+        CachingOutputStream cachingStream = new CachingOutputStream(stream, tempFile);
+        boolean success = false;
+        try {
+            ExportHelper.writeTrack(track, exporter, cachingStream);
+            success = true;
+        } finally {
+            if (cachingStream.commit(success, cacheFile)) {
+                trimCache(folder);
+            }
+        }
+    }
+
+
+    /* Deletes outdated files from the cache directory - exports are evicted by age and size, other files after EXPORT_CACHE_MAX_AGE */
+    public static void trimCacheDirectory(Context context) {
+        File exportFolder = getCacheFolder(context);
+        File[] cacheFiles = context.getCacheDir().listFiles();
+        if (cacheFiles != null) {
+            long now = System.currentTimeMillis();
+            for (File file : cacheFiles) {
+                if (file.isFile() && now - file.lastModified() > EXPORT_CACHE_MAX_AGE && !file.delete()) {
+                    LogHelper.w(LOG_TAG, "Unable to delete outdated cache file: " + file.getName());
+                }
+            }
+        }
+        if (exportFolder != null) {
+            trimCache(exportFolder);
+        }
+    }
+
+
+    /* Returns the cache key for given track and export format */
+    static String getCacheKey(Track track, int exportFormat) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not available.");
+        }
+
+        // hash everything an exporter might write
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(new NullOutputStream(), digest)));
+        out.writeInt(EXPORT_CACHE_VERSION);
+        out.writeInt(exportFormat);
+        out.writeLong(track.getRecordingStart().getTime());
+        out.writeLong(track.getRecordingStop().getTime());
+        out.writeLong(track.getTrackDuration());
+        out.writeFloat(track.getTrackLength());
+        out.writeFloat(track.getStepCount());
+        WayPointList wayPoints = track.getWayPoints();
+        int wayPointCount = wayPoints.size();
+        out.writeInt(wayPointCount);
+        for (int i = 0; i < wayPointCount; i++) {
+            out.writeDouble(wayPoints.getLatitude(i));
+            out.writeDouble(wayPoints.getLongitude(i));
+            out.writeDouble(wayPoints.getAltitude(i));
+            out.writeLong(wayPoints.getTime(i));
+            out.writeFloat(wayPoints.getDistanceToStartingPoint(i));
+            out.writeBoolean(wayPoints.getIsStopOver(i));
+        }
+        out.flush();
+
+        // convert hash to hex string
+        byte[] hash = digest.digest();
+        char[] key = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            key[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            key[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(key);
+    }
+
+
+    /* Returns the folder for cached exports - creates it if necessary */
+    private static File getCacheFolder(Context context) {
+        File folder = new File(context.getCacheDir(), EXPORT_CACHE_DIRECTORY_NAME);
+        if (!folder.exists() && !folder.mkdirs()) {
+            LogHelper.e(LOG_TAG, "Unable to create export cache: " + folder.toString());
+            return null;
+        }
+        return folder;
+    }
+
+
+    /* Opens given cache file and marks it as recently used - returns null if it does not exist */
+    private static InputStream openCacheFile(File cacheFile) {
+        synchronized (sLock) {
+            if (!cacheFile.exists()) {
+                return null;
+            }
+            cacheFile.setLastModified(System.currentTimeMillis());
+            try {
+                // an open file stays readable even if it is evicted while being copied
+                return new FileInputStream(cacheFile);
+            } catch (IOException e) {
+                LogHelper.w(LOG_TAG, "Unable to read cached export: " + cacheFile.getName());
+                return null;
+            }
+        }
+    }
+
+
+    /* Deletes exports that are too old - then deletes the least recently used exports until the cache fits its budget */
+    private static void trimCache(File folder) {
+        synchronized (sLock) {
+            File[] files = folder.listFiles();
+            if (files == null) {
+                return;
+            }
+
+            // collect modification dates once - they must not change while sorting
+            long now = System.currentTimeMillis();
+            List<CacheEntry> entries = new ArrayList<>(files.length);
+            for (File file : files) {
+                entries.add(new CacheEntry(file, file.lastModified(), file.length()));
+            }
+            Collections.sort(entries, new Comparator<CacheEntry>() {
+                @Override
+                public int compare(CacheEntry entry1, CacheEntry entry2) {
+                    // most recently used first
+                    return Long.compare(entry2.mLastModified, entry1.mLastModified);
+                }
+            });
+
+            long cacheSize = 0;
+            for (CacheEntry entry : entries) {
+                boolean inProgress = entry.mFile.getName().endsWith(FILE_TYPE_TEMP_EXTENSION);
+                boolean outdated = now - entry.mLastModified > EXPORT_CACHE_MAX_AGE;
+                if (!outdated && inProgress) {
+                    // export is still being written
+                    continue;
+                }
+                cacheSize += entry.mLength;
+                if ((outdated || cacheSize > EXPORT_CACHE_SIZE_BUDGET) && entry.mFile.delete()) {
+                    LogHelper.v(LOG_TAG, "Evicted cached export: " + entry.mFile.getName());
+                    cacheSize -= entry.mLength;
+                }
+            }
+        }
+    }
+
+
+    /* Copies given input stream into given output stream */
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        out.flush();
+    }
+
+
+    /**
+     * Inner class: OutputStream that writes into a target stream and into a cache file - the cache file is
+     * dropped silently if it can not be written, the target stream is never affected by the cache
+     */
+    private static final class CachingOutputStream extends OutputStream {
+        private final OutputStream mTarget;
+        private final File mTempFile;
+        private OutputStream mCache;
+
+        private CachingOutputStream(OutputStream target, File tempFile) {
+            mTarget = target;
+            mTempFile = tempFile;
+            try {
+                mCache = new FileOutputStream(tempFile);
+            } catch (IOException e) {
+                LogHelper.w(LOG_TAG, "Unable to create cache file: " + tempFile.getName());
+                mCache = null;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            mTarget.write(b);
+            if (mCache != null) {
+                try {
+                    mCache.write(b);
+                } catch (IOException e) {
+                    dropCache();
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            mTarget.write(buffer, offset, length);
+            if (mCache != null) {
+                try {
+                    mCache.write(buffer, offset, length);
+                } catch (IOException e) {
+                    dropCache();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // the cache file is flushed when it is committed
+            mTarget.flush();
+        }
+
+        /* Moves the complete cache file into place - or deletes it - returns true if a new export was added to the cache */
+        private boolean commit(boolean success, File cacheFile) {
+            if (mCache == null) {
+                return false;
+            }
+            try {
+                mCache.close();
+            } catch (IOException e) {
+                success = false;
+            }
+            mCache = null;
+            synchronized (sLock) {
+                if (success && mTempFile.renameTo(cacheFile)) {
+                    return true;
+                }
+            }
+            mTempFile.delete();
+            return false;
+        }
+
+        /* Stops writing the cache file - it is deleted on commit */
+        private void dropCache() {
+            LogHelper.w(LOG_TAG, "Unable to write cache file: " + mTempFile.getName());
+            try {
+                mCache.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+            mCache = null;
+            mTempFile.delete();
+        }
+    }
+
+
+    /**
+     * Inner class: OutputStream that discards everything - used to feed the digest
+     */
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+        }
+    }
+
+
+    /**
+     * Inner class: Snapshot of a cache file used for eviction
+     */
+    private static final class CacheEntry {
+        private final File mFile;
+        private final long mLastModified;
+        private final long mLength;
+
+        private CacheEntry(File file, long lastModified, long length) {
+            mFile = file;
+            mLastModified = lastModified;
+            mLength = length;
+        }
+    }
+
+}
@@ -1,7 +1,7 @@
 /**
  * ExportHelper.java
  * Implements the ExportHelper class
- * A ExportHelper can convert Track object into a GPX string
+ * A ExportHelper can write a Track object to an export file - GPX, GeoJSON, KML or FIT
  *
  * This file is part of
  * TRACKBOOK - Movement Recorder for Android
@@ -18,105 +18,179 @@ package org.y20k.trackbook.helpers;
 
 import android.content.Context;
 import android.content.Intent;
-import android.location.Location;
 import android.os.Environment;
-import android.widget.Toast;
 
-import org.y20k.trackbook.R;
 import org.y20k.trackbook.core.Track;
-import org.y20k.trackbook.core.WayPoint;
+import org.y20k.trackbook.core.WayPointList;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-import java.util.TimeZone;
-
-import androidx.core.content.FileProvider;
 
 /**
  * ExportHelper class
  */
-public final class ExportHelper extends FileProvider implements TrackbookKeys {
+public final class ExportHelper implements TrackbookKeys {
 
     /* Define log tag */
     private static final String LOG_TAG = ExportHelper.class.getSimpleName();
 
-
-    /* Checks if a GPX file for given track is already present */
-    public static boolean gpxFileExists(Track track) {
-        File folder = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-        return createFile(track, folder).exists();
+    private static final int[] EXPORT_FORMATS = {EXPORT_FORMAT_GPX, EXPORT_FORMAT_GEOJSON, EXPORT_FORMAT_KML, EXPORT_FORMAT_FIT};
+
+
+    /* Creates a new exporter for given export format */
+    public static TrackExporter createExporter(int exportFormat) {
+        switch (exportFormat) {
+            case EXPORT_FORMAT_GEOJSON:
+                return new GeoJsonExporter();
+            case EXPORT_FORMAT_KML:
+                return new KmlExporter();
+            case EXPORT_FORMAT_FIT:
+                return new FitExporter();
+            case EXPORT_FORMAT_GPX:
+            default:
+                return new GpxExporter();
+        }
     }
 
 
-    /* Exports given track to GPX */
-    public static boolean exportToGpx(Context context, Track track) {
-        // get file for given track
-        File gpxFile = createFile(track, getDownloadFolder());
+    /* Returns the export format for given export file name - or -1 if no format uses its extension */
+    static int getExportFormat(String fileName) {
+        for (int format : EXPORT_FORMATS) {
+            if (fileName.endsWith(createExporter(format).getFileExtension())) {
+                return format;
+            }
+        }
+        return -1;
+    }
 
-        // get GPX string representation for given track
-        String gpxString = createGpxString(track);
 
-        // write GPX file
-        if (writeGpxToFile(gpxString, gpxFile)) {
-            String toastMessage = context.getResources().getString(R.string.toast_message_export_success) + " " + gpxFile.toString();
-            Toast.makeText(context, toastMessage, Toast.LENGTH_LONG).show();
-            return true;
-        } else {
-            String toastMessage = context.getResources().getString(R.string.toast_message_export_fail) + " " + gpxFile.toString();
-            Toast.makeText(context, toastMessage, Toast.LENGTH_LONG).show();
-            return false;
+    /* Returns the names of all export formats - the position of a name is its export format */
+    public static String[] getExportFormatNames() {
+        String[] names = new String[EXPORT_FORMATS.length];
+        for (int format : EXPORT_FORMATS) {
+            names[format] = createExporter(format).getFormatName();
         }
+        return names;
     }
 
 
-    /* Creates Intent used to bring up an Android share sheet */
-    public static Intent getGpxFileIntent(Context context, Track track) {
+    /* Checks if an export file for given track is already present */
+    public static boolean exportFileExists(Track track, int exportFormat) {
+        return getExportFile(track, exportFormat).exists();
+    }
+
 
-        // create file in Cache directory for given track
-        File gpxFile = createFile(track, context.getCacheDir());
+    /* Returns the export file in the "Download" folder for given track */
+    public static File getExportFile(Track track, int exportFormat) {
+        File folder = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+        return createFile(track, folder, createExporter(exportFormat));
+    }
 
-        // get GPX string representation for given track
-        String gpxString = createGpxString(track);
 
-        // write GPX file
-        if (writeGpxToFile(gpxString, gpxFile)) {
-            String toastMessage = context.getResources().getString(R.string.toast_message_export_success) + " " + gpxFile.toString();
-            Toast.makeText(context, toastMessage, Toast.LENGTH_LONG).show();
-        } else {
-            String toastMessage = context.getResources().getString(R.string.toast_message_export_fail) + " " + gpxFile.toString();
-            Toast.makeText(context, toastMessage, Toast.LENGTH_LONG).show();
+    /* Exports given track to the "Download" folder - does disk I/O, so call it from the export thread of TrackRepository */
+    public static boolean exportToDownloads(Context context, Track track, int exportFormat) {
+        File exportFile = createFile(track, getDownloadFolder(), createExporter(exportFormat));
+        try (OutputStream stream = new FileOutputStream(exportFile)) {
+            LogHelper.v(LOG_TAG, "Saving track to external storage: " + exportFile.toString());
+            ExportCacheHelper.writeTrack(context, track, exportFormat, stream);
+            return true;
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to saving track to external storage (IOException): " + exportFile.toString());
+            return false;
         }
+    }
+
 
-        // create intent
-        String authority = "org.y20k.trackbook.exporthelper.provider";
+    /* Creates Intent used to bring up an Android share sheet - the export is generated when the receiving app opens it - a compact export is simplified to SHARE_COMPACT_SIZE_BUDGET */
+    public static Intent getShareIntent(File trackFile, Track track, int exportFormat, boolean compact) {
+        TrackExporter exporter = createExporter(exportFormat);
+        long maxBytes = compact ? SHARE_COMPACT_SIZE_BUDGET : 0;
         Intent intent = new Intent();
         intent.setAction(Intent.ACTION_SEND);
-        intent.setType("application/gpx+xml");
-        intent.putExtra(Intent.EXTRA_STREAM, FileProvider.getUriForFile(context, authority, gpxFile));
-        intent.setData(FileProvider.getUriForFile(context, authority, gpxFile));
-
+        intent.setType(exporter.getMimeType());
+        intent.putExtra(Intent.EXTRA_STREAM, TrackShareProvider.getUri(trackFile, getExportFileName(track, exporter), maxBytes));
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
         return intent;
     }
 
 
-    /* Empties the internal chache directory */
-    public static void emptyCacheDirectory(Context context) {
-        // todo implement a date check - delete only stuff that is a week old
-        File[] cacheFiles = context.getCacheDir().listFiles();
-        for (File file: cacheFiles) {
-            file.delete();
+    /* Streams given track through given exporter - the stream is left open */
+    public static void writeTrack(Track track, TrackExporter exporter, OutputStream stream) throws IOException {
+        WayPointList wayPoints = track.getWayPoints();
+        exporter.beginTrack(track, wayPoints.size(), stream);
+        do {
+            for (int i = 0; i < wayPoints.size(); i++) {
+                exporter.writeWayPoint(wayPoints, i);
+            }
+        } while (exporter.nextPass());
+        exporter.endTrack();
+    }
+
+
+    /* Streams a simplified version of given track that fits given budgets (0 = no limit) - endpoints and stop overs are always kept - errorBudget is the acceptable deviation in meters, it is only reported in the result */
+    public static SimplificationHelper.Result writeSimplifiedTrack(Track track, int exportFormat, OutputStream stream, int maxWayPoints, long maxBytes, double errorBudget) throws IOException {
+        SimplificationHelper simplificationHelper = new SimplificationHelper(track);
+        int wayPointCount = simplificationHelper.getOriginalSize();
+        if (maxWayPoints > 0) {
+            wayPointCount = Math.max(simplificationHelper.getMinimumSize(), Math.min(wayPointCount, maxWayPoints));
+        }
+
+        // find the largest number of waypoints that fits the byte budget - O(n log n) in total
+        if (maxBytes > 0 && measureSimplifiedTrack(track, exportFormat, simplificationHelper, wayPointCount) > maxBytes) {
+            int lower = simplificationHelper.getMinimumSize();
+            int upper = wayPointCount - 1;
+            wayPointCount = lower;
+            while (lower <= upper) {
+                int middle = (lower + upper) >>> 1;
+                if (measureSimplifiedTrack(track, exportFormat, simplificationHelper, middle) <= maxBytes) {
+                    wayPointCount = middle;
+                    lower = middle + 1;
+                } else {
+                    upper = middle - 1;
+                }
+            }
         }
+
+        // write simplified track
+        boolean[] kept = simplificationHelper.getKeptWayPoints(wayPointCount);
+        CountingOutputStream countingStream = new CountingOutputStream(stream);
+        writeWayPoints(track, createExporter(exportFormat), kept, wayPointCount, countingStream);
+        LogHelper.v(LOG_TAG, "Simplified track from " + simplificationHelper.getOriginalSize() + " to " + wayPointCount + " waypoints (" + countingStream.getCount() + " bytes).");
+        return new SimplificationHelper.Result(simplificationHelper.getOriginalSize(), wayPointCount, countingStream.getCount(), simplificationHelper.getMaxDeviation(kept), errorBudget);
+    }
+
+
+    /* Returns the size of the export of given track reduced to given number of waypoints - without writing it */
+    private static long measureSimplifiedTrack(Track track, int exportFormat, SimplificationHelper simplificationHelper, int wayPointCount) throws IOException {
+        CountingOutputStream countingStream = new CountingOutputStream(null);
+        writeWayPoints(track, createExporter(exportFormat), simplificationHelper.getKeptWayPoints(wayPointCount), wayPointCount, countingStream);
+        return countingStream.getCount();
+    }
+
+
+    /* Streams the kept waypoints of given track through given exporter - the stream is left open */
+    private static void writeWayPoints(Track track, TrackExporter exporter, boolean[] kept, int keptCount, OutputStream stream) throws IOException {
+        WayPointList wayPoints = track.getWayPoints();
+        exporter.beginTrack(track, keptCount, stream);
+        do {
+            for (int i = 0; i < wayPoints.size(); i++) {
+                if (kept[i]) {
+                    exporter.writeWayPoint(wayPoints, i);
+                }
+            }
+        } while (exporter.nextPass());
+        exporter.endTrack();
     }
 
 
     /* Get "Download" folder */
-    private static File getDownloadFolder() {
+    static File getDownloadFolder() {
         File folder = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
         if (folder != null && !folder.exists()) {
             LogHelper.v(LOG_TAG, "Creating new folder: " + folder.toString());
@@ -126,99 +200,59 @@ public final class ExportHelper extends FileProvider implements TrackbookKeys {
     }
 
 
-    /* Return a GPX filepath for a given track */
-    private static File createFile(Track track, File folder) {
+    /* Return an export file name for a given track */
+    static String getExportFileName(Track track, TrackExporter exporter) {
         Date recordingStart = track.getRecordingStart();
         DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss", Locale.US);
 
-        return new File(folder, dateFormat.format(recordingStart) + FILE_TYPE_GPX_EXTENSION);
+        return dateFormat.format(recordingStart) + exporter.getFileExtension();
     }
 
 
-    /* Writes given GPX string to given file */
-    private static boolean writeGpxToFile (String gpxString, File gpxFile) {
-        // write track
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(gpxFile))) {
-            LogHelper.v(LOG_TAG, "Saving track to external storage: " + gpxFile.toString());
-            bw.write(gpxString);
-            return true;
-        } catch (IOException e) {
-            LogHelper.e(LOG_TAG, "Unable to saving track to external storage (IOException): " + gpxFile.toString());
-            return false;
-        }
+    /* Return an export filepath for a given track */
+    private static File createFile(Track track, File folder, TrackExporter exporter) {
+        return new File(folder, getExportFileName(track, exporter));
     }
 
 
-    /* Creates GPX formatted string */
-    private static String createGpxString(Track track) {
-        String gpxString;
-
-        // add header
-        gpxString = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\" ?>\n" +
-                    "<gpx version=\"1.1\" creator=\"Transistor App (Android)\"\n" +
-                    "     xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
-                    "     xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1 http://www.topografix.com/GPX/1/1/gpx.xsd\">\n";
-
-        // add track
-        gpxString = gpxString + addTrack(track);
-
-        // add closing tag
-        gpxString = gpxString + "</gpx>\n";
-
-        return gpxString;
-    }
+    /**
+     * Inner class: OutputStream that counts the bytes written - and passes them on, if it has a target
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream mTarget;
+        private long mCount;
 
+        private CountingOutputStream(OutputStream target) {
+            mTarget = target;
+            mCount = 0;
+        }
 
-    /* Creates Track */
-    private static String addTrack(Track track) {
-        StringBuilder gpxTrack = new StringBuilder("");
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        // add opening track tag
-        gpxTrack.append("\t<trk>\n");
-
-        // add name to track
-        gpxTrack.append("\t\t<name>");
-        gpxTrack.append("Trackbook Recording");
-        gpxTrack.append("</name>\n");
-
-        // add opening track segment tag
-        gpxTrack.append("\t\t<trkseg>\n");
-
-        // add route point
-        for (WayPoint wayPoint:track.getWayPoints()) {
-            // get location from waypoint
-            Location location = wayPoint.getLocation();
-
-            // add longitude and latitude
-            gpxTrack.append("\t\t\t<trkpt lat=\"");
-            gpxTrack.append(location.getLatitude());
-            gpxTrack.append("\" lon=\"");
-            gpxTrack.append(location.getLongitude());
-            gpxTrack.append("\">\n");
-
-            // add time
-            gpxTrack.append("\t\t\t\t<time>");
-            gpxTrack.append(dateFormat.format(new Date(location.getTime())));
-            gpxTrack.append("</time>\n");
-
-            // add altitude
-            gpxTrack.append("\t\t\t\t<ele>");
-            gpxTrack.append(location.getAltitude());
-            gpxTrack.append("</ele>\n");
-
-            // add closing tag
-            gpxTrack.append("\t\t\t</trkpt>\n");
+        @Override
+        public void write(int b) throws IOException {
+            if (mTarget != null) {
+                mTarget.write(b);
+            }
+            mCount++;
         }
 
-        // add closing track segment tag
-        gpxTrack.append("\t\t</trkseg>\n");
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (mTarget != null) {
+                mTarget.write(buffer, offset, length);
+            }
+            mCount += length;
+        }
 
-        // add closing track tag
-        gpxTrack.append("\t</trk>\n");
+        @Override
+        public void flush() throws IOException {
+            if (mTarget != null) {
+                mTarget.flush();
+            }
+        }
 
-        return gpxTrack.toString();
+        private long getCount() {
+            return mCount;
+        }
     }
 
 }
@@ -0,0 +1,297 @@
+/**
+ * FitExporter.java
+ * Implements the FitExporter class
+ * A FitExporter encodes a track as FIT activity file (Flexible and Interoperable Data Transfer)
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * FitExporter class
+ *
+ * Writes file_id, one record message per waypoint and lap, session and activity summaries.
+ * All messages have a fixed size, so the data size in the file header is known up front - the
+ * exporter expects exactly the number of waypoints announced in beginTrack. The CRC is calculated while writing.
+ */
+public final class FitExporter implements TrackExporter, TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = FitExporter.class.getSimpleName();
+
+    /* File header */
+    private static final int HEADER_SIZE = 14;
+    private static final int PROTOCOL_VERSION = 0x10; // 1.0
+    private static final int PROFILE_VERSION = 2100; // 21.00
+    private static final long FIT_EPOCH_OFFSET = 631065600L; // seconds between 1970-01-01 and 1989-12-31
+
+    /* Base types */
+    private static final int ENUM = 0x00;
+    private static final int UINT16 = 0x84;
+    private static final int SINT32 = 0x85;
+    private static final int UINT32 = 0x86;
+
+    /* Global message numbers */
+    private static final int MESSAGE_FILE_ID = 0;
+    private static final int MESSAGE_SESSION = 18;
+    private static final int MESSAGE_LAP = 19;
+    private static final int MESSAGE_RECORD = 20;
+    private static final int MESSAGE_ACTIVITY = 34;
+
+    /* Local message types - every message type is defined once */
+    private static final int LOCAL_FILE_ID = 0;
+    private static final int LOCAL_RECORD = 1;
+    private static final int LOCAL_LAP = 2;
+    private static final int LOCAL_SESSION = 3;
+    private static final int LOCAL_ACTIVITY = 4;
+
+    /* Field definitions - field number, size, base type */
+    private static final int[][] FIELDS_FILE_ID = {{0, 1, ENUM}, {1, 2, UINT16}, {2, 2, UINT16}, {4, 4, UINT32}}; // type, manufacturer, product, time_created
+    private static final int[][] FIELDS_RECORD = {{253, 4, UINT32}, {0, 4, SINT32}, {1, 4, SINT32}, {2, 2, UINT16}, {5, 4, UINT32}}; // timestamp, position_lat, position_long, altitude, distance
+    private static final int[][] FIELDS_LAP = {{253, 4, UINT32}, {2, 4, UINT32}, {7, 4, UINT32}, {8, 4, UINT32}, {9, 4, UINT32}}; // timestamp, start_time, total_elapsed_time, total_timer_time, total_distance
+    private static final int[][] FIELDS_SESSION = {{253, 4, UINT32}, {2, 4, UINT32}, {7, 4, UINT32}, {8, 4, UINT32}, {9, 4, UINT32}, {10, 4, UINT32}, {5, 1, ENUM}}; // same as lap, total_cycles, sport
+    private static final int[][] FIELDS_ACTIVITY = {{253, 4, UINT32}, {0, 4, UINT32}, {1, 2, UINT16}, {2, 1, ENUM}, {3, 1, ENUM}, {4, 1, ENUM}}; // timestamp, total_timer_time, num_sessions, type, event, event_type
+
+    /* Field values */
+    private static final int FILE_TYPE_ACTIVITY = 4;
+    private static final int MANUFACTURER_DEVELOPMENT = 255;
+    private static final int SPORT_GENERIC = 0;
+    private static final int EVENT_ACTIVITY = 26;
+    private static final int EVENT_TYPE_STOP = 1;
+    private static final long INVALID_UINT32 = 0xFFFFFFFFL;
+
+    /* CRC-16 as specified by the FIT protocol - processed one nibble at a time */
+    private static final int[] CRC_TABLE = {
+            0x0000, 0xCC01, 0xD801, 0x1400, 0xF001, 0x3C00, 0x2800, 0xE401,
+            0xA001, 0x6C00, 0x7800, 0xB401, 0x5000, 0x9C01, 0x8801, 0x4400
+    };
+
+
+    /* Main class variables */
+    private OutputStream mStream;
+    private Track mTrack;
+    private int mCrc;
+    private int mExpectedWayPoints;
+    private int mWrittenWayPoints;
+
+
+    @Override
+    public String getFormatName() {
+        return "FIT";
+    }
+
+
+    @Override
+    public String getFileExtension() {
+        return FILE_TYPE_FIT_EXTENSION;
+    }
+
+
+    @Override
+    public String getMimeType() {
+        return "application/vnd.ant.fit";
+    }
+
+
+    @Override
+    public void beginTrack(Track track, int wayPointCount, OutputStream stream) throws IOException {
+        mStream = new BufferedOutputStream(stream);
+        mTrack = track;
+        mCrc = 0;
+        mExpectedWayPoints = wayPointCount;
+        mWrittenWayPoints = 0;
+
+        // data size - everything between header and CRC
+        long dataSize = definitionSize(FIELDS_FILE_ID) + messageSize(FIELDS_FILE_ID)
+                + definitionSize(FIELDS_RECORD) + (long) mExpectedWayPoints * messageSize(FIELDS_RECORD)
+                + definitionSize(FIELDS_LAP) + messageSize(FIELDS_LAP)
+                + definitionSize(FIELDS_SESSION) + messageSize(FIELDS_SESSION)
+                + definitionSize(FIELDS_ACTIVITY) + messageSize(FIELDS_ACTIVITY);
+
+        // write file header - its own CRC covers the first twelve bytes
+        writeByte(HEADER_SIZE);
+        writeByte(PROTOCOL_VERSION);
+        writeUInt16(PROFILE_VERSION);
+        writeUInt32(dataSize);
+        writeByte('.');
+        writeByte('F');
+        writeByte('I');
+        writeByte('T');
+        writeUInt16(mCrc);
+
+        // write file id
+        writeDefinition(LOCAL_FILE_ID, MESSAGE_FILE_ID, FIELDS_FILE_ID);
+        writeByte(LOCAL_FILE_ID);
+        writeByte(FILE_TYPE_ACTIVITY);
+        writeUInt16(MANUFACTURER_DEVELOPMENT);
+        writeUInt16(0);
+        writeUInt32(toFitTime(track.getRecordingStart().getTime()));
+
+        // records follow
+        writeDefinition(LOCAL_RECORD, MESSAGE_RECORD, FIELDS_RECORD);
+    }
+
+
+    @Override
+    public void writeWayPoint(WayPointList wayPoints, int index) throws IOException {
+        writeByte(LOCAL_RECORD);
+        writeUInt32(toFitTime(wayPoints.getTime(index)));
+        writeUInt32(toSemicircles(wayPoints.getLatitude(index)));
+        writeUInt32(toSemicircles(wayPoints.getLongitude(index)));
+        // altitude is stored with a scale of 5 and an offset of 500 meter
+        writeUInt16((int) Math.max(0, Math.min(0xFFFE, Math.round((wayPoints.getAltitude(index) + 500) * 5))));
+        // distance is stored in centimeter
+        writeUInt32(Math.round(wayPoints.getDistanceToStartingPoint(index) * 100.0));
+        mWrittenWayPoints++;
+    }
+
+
+    @Override
+    public boolean nextPass() {
+        // records carry all attributes of a waypoint
+        return false;
+    }
+
+
+    @Override
+    public void endTrack() throws IOException {
+        if (mWrittenWayPoints != mExpectedWayPoints) {
+            throw new IOException("FIT header declares " + mExpectedWayPoints + " records, but " + mWrittenWayPoints + " were written.");
+        }
+
+        long startTime = toFitTime(mTrack.getRecordingStart().getTime());
+        long endTime = toFitTime(mTrack.getRecordingStop().getTime());
+        long elapsedTime = Math.max(0, mTrack.getRecordingStop().getTime() - mTrack.getRecordingStart().getTime()); // milliseconds - same scale as FIT
+        long timerTime = mTrack.getTrackDuration();
+        long distance = Math.round(mTrack.getTrackLength() * 100.0);
+        long steps = mTrack.getStepCount() >= 0 ? Math.round(mTrack.getStepCount()) : INVALID_UINT32;
+
+        // write lap
+        writeDefinition(LOCAL_LAP, MESSAGE_LAP, FIELDS_LAP);
+        writeByte(LOCAL_LAP);
+        writeUInt32(endTime);
+        writeUInt32(startTime);
+        writeUInt32(elapsedTime);
+        writeUInt32(timerTime);
+        writeUInt32(distance);
+
+        // write session - step count goes into total cycles
+        writeDefinition(LOCAL_SESSION, MESSAGE_SESSION, FIELDS_SESSION);
+        writeByte(LOCAL_SESSION);
+        writeUInt32(endTime);
+        writeUInt32(startTime);
+        writeUInt32(elapsedTime);
+        writeUInt32(timerTime);
+        writeUInt32(distance);
+        writeUInt32(steps);
+        writeByte(SPORT_GENERIC);
+
+        // write activity
+        writeDefinition(LOCAL_ACTIVITY, MESSAGE_ACTIVITY, FIELDS_ACTIVITY);
+        writeByte(LOCAL_ACTIVITY);
+        writeUInt32(endTime);
+        writeUInt32(timerTime);
+        writeUInt16(1);
+        writeByte(0);
+        writeByte(EVENT_ACTIVITY);
+        writeByte(EVENT_TYPE_STOP);
+
+        // write CRC of header and data - flush only, the stream belongs to the caller
+        int crc = mCrc;
+        mStream.write(crc & 0xFF);
+        mStream.write((crc >> 8) & 0xFF);
+        mStream.flush();
+        mStream = null;
+        mTrack = null;
+    }
+
+
+    /* Writes a definition message for given local message type */
+    private void writeDefinition(int localMessage, int globalMessage, int[][] fields) throws IOException {
+        writeByte(0x40 | localMessage);
+        writeByte(0); // reserved
+        writeByte(0); // little endian
+        writeUInt16(globalMessage);
+        writeByte(fields.length);
+        for (int[] field : fields) {
+            writeByte(field[0]);
+            writeByte(field[1]);
+            writeByte(field[2]);
+        }
+    }
+
+
+    /* Writes a little endian unsigned 32 bit value */
+    private void writeUInt32(long value) throws IOException {
+        writeByte((int) value);
+        writeByte((int) (value >> 8));
+        writeByte((int) (value >> 16));
+        writeByte((int) (value >> 24));
+    }
+
+
+    /* Writes a little endian unsigned 16 bit value */
+    private void writeUInt16(int value) throws IOException {
+        writeByte(value);
+        writeByte(value >> 8);
+    }
+
+
+    /* Writes a single byte and adds it to the CRC */
+    private void writeByte(int value) throws IOException {
+        int b = value & 0xFF;
+        mStream.write(b);
+        int tmp = CRC_TABLE[mCrc & 0xF];
+        mCrc = (mCrc >> 4) & 0x0FFF;
+        mCrc = mCrc ^ tmp ^ CRC_TABLE[b & 0xF];
+        tmp = CRC_TABLE[mCrc & 0xF];
+        mCrc = (mCrc >> 4) & 0x0FFF;
+        mCrc = mCrc ^ tmp ^ CRC_TABLE[(b >> 4) & 0xF];
+    }
+
+
+    /* Returns the size of a definition message */
+    private static int definitionSize(int[][] fields) {
+        return 6 + 3 * fields.length;
+    }
+
+
+    /* Returns the size of a data message */
+    private static int messageSize(int[][] fields) {
+        int size = 1;
+        for (int[] field : fields) {
+            size += field[1];
+        }
+        return size;
+    }
+
+
+    /* Converts milliseconds since 1970 into seconds since the FIT epoch */
+    private static long toFitTime(long time) {
+        return time / 1000 - FIT_EPOCH_OFFSET;
+    }
+
+
+    /* Converts degrees into semicircles - 2^31 semicircles are 180 degrees */
+    private static long toSemicircles(double degrees) {
+        return Math.round(degrees * (2147483648.0 / 180.0));
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * GeoJsonExporter.java
+ * Implements the GeoJsonExporter class
+ * A GeoJsonExporter encodes a track as GeoJSON (RFC 7946)
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * GeoJsonExporter class
+ *
+ * The track becomes a single LineString feature. The times of the waypoints are listed in the
+ * "coordTimes" property - the first pass writes the times, the second pass the positions. A
+ * LineString needs at least two positions, so a single waypoint becomes a Point with a "time"
+ * property and an empty track a feature without geometry.
+ */
+public final class GeoJsonExporter extends TextTrackExporter implements TrackbookKeys {
+
+    /* Main class variables */
+    private int mWayPointCount;
+    private int mPass;
+    private boolean mFirstWayPoint;
+
+
+    @Override
+    public String getFormatName() {
+        return "GeoJSON";
+    }
+
+
+    @Override
+    public String getFileExtension() {
+        return FILE_TYPE_GEOJSON_EXTENSION;
+    }
+
+
+    @Override
+    public String getMimeType() {
+        return "application/geo+json";
+    }
+
+
+    @Override
+    public void beginTrack(Track track, int wayPointCount, OutputStream stream) throws IOException {
+        mWayPointCount = wayPointCount;
+        super.beginTrack(track, wayPointCount, stream);
+    }
+
+
+    @Override
+    protected void writeHeader(Track track) throws IOException {
+        mPass = 0;
+        mFirstWayPoint = true;
+        mWriter.write("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\n");
+
+        // properties first - the times of the waypoints are written by the first pass
+        mWriter.write("\"properties\":{\"name\":\"Trackbook Recording\",\"startTime\":\"");
+        mTimestampFormatter.write(mWriter, track.getRecordingStart().getTime());
+        mWriter.write("\",\"endTime\":\"");
+        mTimestampFormatter.write(mWriter, track.getRecordingStop().getTime());
+        mWriter.write('"');
+        if (mWayPointCount == 0) {
+            mWriter.write("},\n\"geometry\":null");
+        } else if (mWayPointCount == 1) {
+            mWriter.write(",\"time\":");
+        } else {
+            mWriter.write(",\"coordTimes\":[\n");
+        }
+    }
+
+
+    @Override
+    public void writeWayPoint(WayPointList wayPoints, int index) throws IOException {
+        if (!mFirstWayPoint) {
+            mWriter.write(",\n");
+        }
+        mFirstWayPoint = false;
+
+        if (mPass == 0) {
+            // time
+            mWriter.write('"');
+            mTimestampFormatter.write(mWriter, wayPoints.getTime(index));
+            mWriter.write('"');
+        } else {
+            // position is longitude, latitude, altitude
+            mWriter.write('[');
+            mWriter.write(Double.toString(wayPoints.getLongitude(index)));
+            mWriter.write(',');
+            mWriter.write(Double.toString(wayPoints.getLatitude(index)));
+            mWriter.write(',');
+            mWriter.write(Double.toString(wayPoints.getAltitude(index)));
+            mWriter.write(']');
+        }
+    }
+
+
+    @Override
+    public boolean nextPass() throws IOException {
+        if (mPass > 0 || mWayPointCount == 0) {
+            return false;
+        }
+
+        // close properties and open geometry
+        if (mWayPointCount == 1) {
+            mWriter.write("},\n\"geometry\":{\"type\":\"Point\",\"coordinates\":");
+        } else {
+            mWriter.write("\n]},\n\"geometry\":{\"type\":\"LineString\",\"coordinates\":[\n");
+        }
+        mPass++;
+        mFirstWayPoint = true;
+        return true;
+    }
+
+
+    @Override
+    protected void writeFooter() throws IOException {
+        if (mWayPointCount == 0) {
+            mWriter.write("}]}\n");
+        } else if (mWayPointCount == 1) {
+            mWriter.write("}}]}\n");
+        } else {
+            mWriter.write("\n]}}]}\n");
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * GpxExporter.java
+ * Implements the GpxExporter class
+ * A GpxExporter encodes a track as GPX 1.1
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.io.IOException;
+
+
+/**
+ * GpxExporter class
+ */
+public final class GpxExporter extends TextTrackExporter implements TrackbookKeys {
+
+    @Override
+    public String getFormatName() {
+        return "GPX";
+    }
+
+
+    @Override
+    public String getFileExtension() {
+        return FILE_TYPE_GPX_EXTENSION;
+    }
+
+
+    @Override
+    public String getMimeType() {
+        return "application/gpx+xml";
+    }
+
+
+    @Override
+    protected void writeHeader(Track track) throws IOException {
+        // add header
+        mWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\" ?>\n");
+        mWriter.write("<gpx version=\"1.1\" creator=\"Transistor App (Android)\"\n");
+        mWriter.write("     xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+        mWriter.write("     xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1 http://www.topografix.com/GPX/1/1/gpx.xsd\">\n");
+
+        // add opening track tag and name of track
+        mWriter.write("\t<trk>\n");
+        mWriter.write("\t\t<name>Trackbook Recording</name>\n");
+
+        // add opening track segment tag
+        mWriter.write("\t\t<trkseg>\n");
+    }
+
+
+    @Override
+    public void writeWayPoint(WayPointList wayPoints, int index) throws IOException {
+        // add longitude and latitude
+        mWriter.write("\t\t\t<trkpt lat=\"");
+        mWriter.write(Double.toString(wayPoints.getLatitude(index)));
+        mWriter.write("\" lon=\"");
+        mWriter.write(Double.toString(wayPoints.getLongitude(index)));
+        mWriter.write("\">\n");
+
+        // add time
+        mWriter.write("\t\t\t\t<time>");
+        mTimestampFormatter.write(mWriter, wayPoints.getTime(index));
+        mWriter.write("</time>\n");
+
+        // add altitude
+        mWriter.write("\t\t\t\t<ele>");
+        mWriter.write(Double.toString(wayPoints.getAltitude(index)));
+        mWriter.write("</ele>\n");
+
+        // add closing tag
+        mWriter.write("\t\t\t</trkpt>\n");
+    }
+
+
+    @Override
+    protected void writeFooter() throws IOException {
+        // add closing track segment tag, closing track tag and closing tag
+        mWriter.write("\t\t</trkseg>\n");
+        mWriter.write("\t</trk>\n");
+        mWriter.write("</gpx>\n");
+    }
+
+}
@@ -0,0 +1,293 @@
+/**
+ * JournalHelper.java
+ * Implements the JournalHelper class
+ * A JournalHelper appends the changes of the current recording to the temp journal and replays it
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.content.Context;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Date;
+
+import androidx.annotation.Nullable;
+
+
+/**
+ * JournalHelper class
+ */
+public class JournalHelper implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = JournalHelper.class.getSimpleName();
+
+    /* Journal file format */
+    private static final int JOURNAL_MAGIC = 0x54424A4C; // "TBJL"
+    private static final int JOURNAL_VERSION = 2; // version 2 adds speed and bearing to waypoint records
+    private static final byte RECORD_WAYPOINT = 1;
+    private static final byte RECORD_STOP_OVER = 2;
+    private static final byte RECORD_STATISTICS = 3;
+    static final int STOP_OVER_WINDOW = 2; // stop over status is only changed for the last two waypoints
+
+
+    /* Main class variables */
+    private final File mJournalFile;
+    private final BitSet mStopOvers;
+    private int mWayPointCount;
+    private int mRecordCount;
+    private boolean mCompactionDue;
+
+
+    /* Constructor */
+    public JournalHelper(Context context) {
+        mJournalFile = new File(context.getExternalFilesDir(TRACKS_DIRECTORY_NAME), FILE_NAME_TEMP + FILE_TYPE_JOURNAL_EXTENSION);
+        mStopOvers = new BitSet();
+        mWayPointCount = 0;
+        mRecordCount = 0;
+        // a new journal always starts with a full snapshot of the track
+        mCompactionDue = true;
+    }
+
+
+    /* Checks if the journal should be replaced by a full snapshot - resets the check */
+    public boolean checkCompaction() {
+        boolean compactionDue = mCompactionDue || mRecordCount >= JOURNAL_COMPACTION_THRESHOLD;
+        mCompactionDue = false;
+        if (compactionDue) {
+            mRecordCount = 0;
+        }
+        return compactionDue;
+    }
+
+
+    /* Encodes everything that changed in given track since the last call as journal records - must be called from the thread that modifies the track */
+    public byte[] collectChanges(Track track) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            WayPointList wayPoints = track.getWayPoints();
+            int wayPointCount = wayPoints.size();
+
+            // stop over status of already journaled waypoints
+            for (int i = Math.max(0, mWayPointCount - STOP_OVER_WINDOW); i < Math.min(mWayPointCount, wayPointCount); i++) {
+                boolean isStopOver = wayPoints.getIsStopOver(i);
+                if (isStopOver != mStopOvers.get(i)) {
+                    out.writeByte(RECORD_STOP_OVER);
+                    out.writeInt(i);
+                    out.writeBoolean(isStopOver);
+                    mStopOvers.set(i, isStopOver);
+                    mRecordCount++;
+                }
+            }
+
+            // new waypoints
+            for (int i = mWayPointCount; i < wayPointCount; i++) {
+                writeWayPoint(out, i, wayPoints);
+                mStopOvers.set(i, wayPoints.getIsStopOver(i));
+                mRecordCount++;
+            }
+            mWayPointCount = wayPointCount;
+
+            // statistics - always a single record
+            out.writeByte(RECORD_STATISTICS);
+            out.writeFloat(track.getTrackLength());
+            out.writeLong(track.getTrackDuration());
+            out.writeFloat(track.getStepCount());
+            out.writeLong(track.getRecordingStop().getTime());
+            mRecordCount++;
+
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to encode journal records (IOException).");
+        }
+        return buffer.toByteArray();
+    }
+
+
+    /* Marks everything in given track as journaled - used when a full snapshot is written instead of records */
+    public void markCompacted(Track track) {
+        WayPointList wayPoints = track.getWayPoints();
+        mWayPointCount = wayPoints.size();
+        mStopOvers.clear();
+        for (int i = Math.max(0, mWayPointCount - STOP_OVER_WINDOW); i < mWayPointCount; i++) {
+            mStopOvers.set(i, wayPoints.getIsStopOver(i));
+        }
+    }
+
+
+    /* Appends given journal records to the journal file */
+    public boolean appendToJournal(byte[] records) {
+        if (records == null || records.length == 0) {
+            return true;
+        }
+        try (FileOutputStream out = new FileOutputStream(mJournalFile, true)) {
+            out.write(records);
+            return true;
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to append to journal (IOException): " + mJournalFile.toString());
+            return false;
+        }
+    }
+
+
+    /* Replaces the journal with a snapshot of given track in the temp file and its segments */
+    public boolean compactJournal(Track track, StorageHelper storageHelper) {
+        LogHelper.v(LOG_TAG, "Compacting journal of temporary track.");
+        // write snapshot first - a stale journal left behind by a crash does not match the snapshot and is skipped during replay
+        if (!storageHelper.saveTrack(track, FILE_TEMP_TRACK)) {
+            return false;
+        }
+
+        // start an empty journal for the snapshot
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(mJournalFile, false))) {
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeInt(JOURNAL_VERSION);
+            out.writeInt(track.getSize());
+            out.writeLong(track.getTrackDuration());
+            return true;
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to reset journal (IOException): " + mJournalFile.toString());
+            return false;
+        }
+    }
+
+
+    /* Rebuilds a track by replaying the given journal on top of the snapshot from the temp file */
+    public static Track replayJournal(@Nullable Track track, File journalFile) {
+        if (track == null || !journalFile.exists()) {
+            return track;
+        }
+
+        WayPointList wayPoints = track.getWayPoints();
+        float trackLength = track.getTrackLength();
+        long duration = track.getTrackDuration();
+        float stepCount = track.getStepCount();
+        Date recordingStop = track.getRecordingStop();
+        int replayedRecords = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            // check if journal belongs to the snapshot (same size and duration)
+            if (in.readInt() != JOURNAL_MAGIC || in.readInt() != JOURNAL_VERSION || in.readInt() != wayPoints.size() || in.readLong() != duration) {
+                LogHelper.w(LOG_TAG, "Journal does not belong to temporary track. Skipping replay.");
+                return track;
+            }
+
+            // apply records - until the end of the file or an incomplete record
+            replay:
+            while (true) {
+                byte recordType;
+                try {
+                    recordType = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                switch (recordType) {
+                    case RECORD_WAYPOINT:
+                        int index = in.readInt();
+                        if (index == wayPoints.size()) {
+                            readWayPoint(in, wayPoints);
+                        } else if (index < wayPoints.size()) {
+                            // waypoints with a lower index are already part of the snapshot
+                            readWayPoint(in, null);
+                        } else {
+                            LogHelper.e(LOG_TAG, "Gap in journal detected at waypoint " + index + ".");
+                            break replay;
+                        }
+                        break;
+                    case RECORD_STOP_OVER:
+                        int stopOverIndex = in.readInt();
+                        boolean isStopOver = in.readBoolean();
+                        if (stopOverIndex < wayPoints.size()) {
+                            wayPoints.setIsStopOver(stopOverIndex, isStopOver);
+                        }
+                        break;
+                    case RECORD_STATISTICS:
+                        trackLength = in.readFloat();
+                        duration = in.readLong();
+                        stepCount = in.readFloat();
+                        recordingStop = new Date(in.readLong());
+                        break;
+                    default:
+                        LogHelper.e(LOG_TAG, "Unknown journal record type: " + recordType);
+                        break replay;
+                }
+                replayedRecords++;
+            }
+
+        } catch (EOFException e) {
+            LogHelper.w(LOG_TAG, "Journal ends with an incomplete record. Ignoring it.");
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to read journal (IOException): " + journalFile.toString());
+        }
+
+        LogHelper.v(LOG_TAG, "Replayed " + replayedRecords + " journal records.");
+        Track replayedTrack = new Track(track.getTrackFormatVersion(), wayPoints, trackLength, duration, stepCount, track.getRecordingStart(), recordingStop,
+                track.getMaxAltitude(), track.getMinAltitude(), track.getPositiveElevation(), track.getNegativeElevation(), track.getMovingTime());
+        // statistics of the snapshot do not include the replayed waypoints
+        if (replayedRecords > 0) {
+            replayedTrack.recalculateStatistics();
+        }
+        return replayedTrack;
+    }
+
+
+    /* Writes the waypoint at given index as a record */
+    private static void writeWayPoint(DataOutputStream out, int index, WayPointList wayPoints) throws IOException {
+        out.writeByte(RECORD_WAYPOINT);
+        out.writeInt(index);
+        out.writeUTF(wayPoints.getProvider(index));
+        out.writeDouble(wayPoints.getLatitude(index));
+        out.writeDouble(wayPoints.getLongitude(index));
+        out.writeDouble(wayPoints.getAltitude(index));
+        out.writeLong(wayPoints.getTime(index));
+        out.writeLong(wayPoints.getElapsedRealtimeNanos(index));
+        out.writeFloat(wayPoints.getAccuracy(index));
+        out.writeInt(wayPoints.getNumberSatellites(index));
+        out.writeBoolean(wayPoints.getIsStopOver(index));
+        out.writeFloat(wayPoints.getDistanceToStartingPoint(index));
+        out.writeFloat(wayPoints.getSpeed(index));
+        out.writeFloat(wayPoints.getBearing(index));
+    }
+
+
+    /* Reads a single waypoint record - without its type and index - and appends it to given waypoints, if any */
+    private static void readWayPoint(DataInputStream in, @Nullable WayPointList wayPoints) throws IOException {
+        String provider = in.readUTF();
+        double latitude = in.readDouble();
+        double longitude = in.readDouble();
+        double altitude = in.readDouble();
+        long time = in.readLong();
+        long elapsedRealtimeNanos = in.readLong();
+        float accuracy = in.readFloat();
+        int numberSatellites = in.readInt();
+        boolean isStopOver = in.readBoolean();
+        float distanceToStartingPoint = in.readFloat();
+        float speed = in.readFloat();
+        float bearing = in.readFloat();
+        if (wayPoints != null) {
+            wayPoints.add(provider, latitude, longitude, altitude, time, elapsedRealtimeNanos, accuracy, speed, bearing, distanceToStartingPoint, numberSatellites, isStopOver);
+        }
+    }
+
+}
@@ -0,0 +1,319 @@
+/**
+ * JsonFormatHelper.java
+ * Implements the JsonFormatHelper class
+ * A JsonFormatHelper reads tracks stored in the legacy JSON file format (version 1 and 2)
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.location.Location;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.TrackBuilder;
+import org.y20k.trackbook.core.WayPoint;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+
+/**
+ * JsonFormatHelper class
+ *
+ * Tracks are only written in the binary format - JSON files of older versions are still read.
+ * Parsing works token by token - waypoints are created directly from the stream without holding
+ * the file content in memory, and only the fields Trackbook needs are kept.
+ */
+public final class JsonFormatHelper implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = JsonFormatHelper.class.getSimpleName();
+
+    /* JSON file format */
+    private static final String DATE_FORMAT = "M/d/yy hh:mm a";
+    private static final int FIELDS_MASK_ALTITUDE = 1; // bit used by android.location.Location (API 26+)
+    private static final int FIELDS_MASK_SPEED = 2;
+    private static final int FIELDS_MASK_BEARING = 4;
+    private static final int FIELDS_MASK_ACCURACY = 8;
+
+
+    /* Reads a track from given stream */
+    public static Track readTrack(Reader reader) throws IOException {
+        JsonReader in = new JsonReader(reader);
+        in.setLenient(true);
+        return readTrack(in);
+    }
+
+
+    /* Parses a date written by the legacy Gson configuration */
+    private static Date parseDate(DateFormat dateFormat, String date) {
+        try {
+            return dateFormat.parse(date);
+        } catch (ParseException e) {
+            LogHelper.e(LOG_TAG, "Unable to parse date: " + date);
+            return null;
+        }
+    }
+
+
+    /* Reads a track object */
+    private static Track readTrack(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+        int trackFormatVersion = 1;
+        WayPointList wayPoints = new WayPointList();
+        float trackLength = 0f;
+        long duration = 0;
+        float stepCount = 0f;
+        Date recordingStart = null;
+        Date recordingStop = null;
+        double maxAltitude = 0d;
+        double minAltitude = 0d;
+        double positiveElevation = 0d;
+        double negativeElevation = 0d;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "mTrackFormatVersion":
+                    trackFormatVersion = in.nextInt();
+                    break;
+                case "mWayPoints":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        WayPoint wayPoint = readWayPoint(in);
+                        if (wayPoint != null) {
+                            wayPoints.add(wayPoint);
+                        }
+                    }
+                    in.endArray();
+                    break;
+                case "mTrackLength":
+                    trackLength = (float) in.nextDouble();
+                    break;
+                case "mDuration":
+                    duration = in.nextLong();
+                    break;
+                case "mStepCount":
+                    stepCount = (float) in.nextDouble();
+                    break;
+                case "mRecordingStart":
+                    recordingStart = parseDate(dateFormat, in.nextString());
+                    break;
+                case "mRecordingStop":
+                    recordingStop = parseDate(dateFormat, in.nextString());
+                    break;
+                case "mMaxAltitude":
+                    maxAltitude = in.nextDouble();
+                    break;
+                case "mMinAltitude":
+                    minAltitude = in.nextDouble();
+                    break;
+                case "mPositiveElevation":
+                    positiveElevation = in.nextDouble();
+                    break;
+                case "mNegativeElevation":
+                    negativeElevation = in.nextDouble();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return new TrackBuilder(trackFormatVersion, wayPoints, trackLength, duration, stepCount, recordingStart, recordingStop,
+                maxAltitude, minAltitude, positiveElevation, negativeElevation, 0L).toTrack();
+    }
+
+
+    /* Reads a waypoint object - returns null if it has no location */
+    private static WayPoint readWayPoint(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        Location location = null;
+        boolean isStopOver = false;
+        float distanceToStartingPoint = 0f;
+        int numberSatellites = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "mLocation":
+                    location = readLocation(in);
+                    break;
+                case "mIsStopOver":
+                    isStopOver = in.nextBoolean();
+                    break;
+                case "mDistanceToStartingPoint":
+                    distanceToStartingPoint = (float) in.nextDouble();
+                    break;
+                case "mNumberSatellites":
+                    numberSatellites = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        if (location == null) {
+            LogHelper.w(LOG_TAG, "Skipping waypoint without location.");
+            return null;
+        }
+        return new WayPoint(location, isStopOver, distanceToStartingPoint, numberSatellites);
+    }
+
+
+    /* Reads a location object - reads the field names of android.location.Location used by the different Android versions */
+    private static Location readLocation(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        String provider = null;
+        long time = 0;
+        long elapsedRealtimeNanos = 0;
+        double latitude = 0d;
+        double longitude = 0d;
+        double altitude = 0d;
+        float speed = 0f;
+        float bearing = 0f;
+        float accuracy = 0f;
+        int fieldsMask = -1;
+        boolean hasAltitude = false;
+        boolean hasSpeed = false;
+        boolean hasBearing = false;
+        boolean hasAccuracy = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "mProvider":
+                    provider = in.nextString();
+                    break;
+                case "mTime":
+                case "mTimeMs":
+                    time = in.nextLong();
+                    break;
+                case "mElapsedRealtimeNanos":
+                case "mElapsedRealtimeNs":
+                    elapsedRealtimeNanos = in.nextLong();
+                    break;
+                case "mLatitude":
+                case "mLatitudeDegrees":
+                    latitude = in.nextDouble();
+                    break;
+                case "mLongitude":
+                case "mLongitudeDegrees":
+                    longitude = in.nextDouble();
+                    break;
+                case "mAltitude":
+                case "mAltitudeMeters":
+                    altitude = in.nextDouble();
+                    break;
+                case "mSpeed":
+                case "mSpeedMetersPerSecond":
+                    speed = (float) in.nextDouble();
+                    break;
+                case "mBearing":
+                case "mBearingDegrees":
+                    bearing = (float) in.nextDouble();
+                    break;
+                case "mAccuracy":
+                case "mHorizontalAccuracyMeters":
+                    accuracy = (float) in.nextDouble();
+                    break;
+                case "mFieldsMask":
+                    fieldsMask = in.nextInt();
+                    break;
+                case "mHasAltitude":
+                    hasAltitude = in.nextBoolean();
+                    break;
+                case "mHasSpeed":
+                    hasSpeed = in.nextBoolean();
+                    break;
+                case "mHasBearing":
+                    hasBearing = in.nextBoolean();
+                    break;
+                case "mHasAccuracy":
+                    hasAccuracy = in.nextBoolean();
+                    break;
+                default:
+                    // cached distance results, extras, etc.
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        if (fieldsMask != -1) {
+            hasAltitude = (fieldsMask & FIELDS_MASK_ALTITUDE) != 0;
+            hasSpeed = (fieldsMask & FIELDS_MASK_SPEED) != 0;
+            hasBearing = (fieldsMask & FIELDS_MASK_BEARING) != 0;
+            hasAccuracy = (fieldsMask & FIELDS_MASK_ACCURACY) != 0;
+        }
+
+        Location location = new Location(provider);
+        location.setTime(time);
+        location.setElapsedRealtimeNanos(elapsedRealtimeNanos);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        if (hasAltitude) {
+            location.setAltitude(altitude);
+        }
+        if (hasSpeed) {
+            location.setSpeed(speed);
+        }
+        if (hasBearing) {
+            location.setBearing(bearing);
+        }
+        if (hasAccuracy) {
+            location.setAccuracy(accuracy);
+        }
+        return location;
+    }
+
+}
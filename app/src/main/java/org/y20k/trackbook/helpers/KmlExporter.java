@@ -0,0 +1,113 @@
+/**
+ * KmlExporter.java
+ * Implements the KmlExporter class
+ * A KmlExporter encodes a track as KML 2.2
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.io.IOException;
+
+
+/**
+ * KmlExporter class
+ *
+ * The track becomes a gx:Track placemark with the recording time as time span. A gx:Track lists
+ * the times of all waypoints before their coordinates - the first pass writes the when elements,
+ * the second pass the gx:coord elements.
+ */
+public final class KmlExporter extends TextTrackExporter implements TrackbookKeys {
+
+    /* Main class variables */
+    private int mPass;
+
+
+    @Override
+    public String getFormatName() {
+        return "KML";
+    }
+
+
+    @Override
+    public String getFileExtension() {
+        return FILE_TYPE_KML_EXTENSION;
+    }
+
+
+    @Override
+    public String getMimeType() {
+        return "application/vnd.google-earth.kml+xml";
+    }
+
+
+    @Override
+    protected void writeHeader(Track track) throws IOException {
+        mPass = 0;
+        mWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        mWriter.write("<kml xmlns=\"http://www.opengis.net/kml/2.2\" xmlns:gx=\"http://www.google.com/kml/ext/2.2\">\n");
+        mWriter.write("\t<Document>\n");
+        mWriter.write("\t\t<Placemark>\n");
+        mWriter.write("\t\t\t<name>Trackbook Recording</name>\n");
+
+        // add time span of recording
+        mWriter.write("\t\t\t<TimeSpan><begin>");
+        mTimestampFormatter.write(mWriter, track.getRecordingStart().getTime());
+        mWriter.write("</begin><end>");
+        mTimestampFormatter.write(mWriter, track.getRecordingStop().getTime());
+        mWriter.write("</end></TimeSpan>\n");
+
+        // open track
+        mWriter.write("\t\t\t<gx:Track>\n");
+        mWriter.write("\t\t\t\t<altitudeMode>absolute</altitudeMode>\n");
+    }
+
+
+    @Override
+    public void writeWayPoint(WayPointList wayPoints, int index) throws IOException {
+        if (mPass == 0) {
+            // time
+            mWriter.write("\t\t\t\t<when>");
+            mTimestampFormatter.write(mWriter, wayPoints.getTime(index));
+            mWriter.write("</when>\n");
+        } else {
+            // coordinate is longitude, latitude, altitude - separated by spaces
+            mWriter.write("\t\t\t\t<gx:coord>");
+            mWriter.write(Double.toString(wayPoints.getLongitude(index)));
+            mWriter.write(' ');
+            mWriter.write(Double.toString(wayPoints.getLatitude(index)));
+            mWriter.write(' ');
+            mWriter.write(Double.toString(wayPoints.getAltitude(index)));
+            mWriter.write("</gx:coord>\n");
+        }
+    }
+
+
+    @Override
+    public boolean nextPass() {
+        mPass++;
+        return mPass == 1;
+    }
+
+
+    @Override
+    protected void writeFooter() throws IOException {
+        mWriter.write("\t\t\t</gx:Track>\n");
+        mWriter.write("\t\t</Placemark>\n");
+        mWriter.write("\t</Document>\n");
+        mWriter.write("</kml>\n");
+    }
+
+}
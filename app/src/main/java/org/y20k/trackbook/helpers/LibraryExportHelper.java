@@ -0,0 +1,305 @@
+/**
+ * LibraryExportHelper.java
+ * Implements the LibraryExportHelper class
+ * A LibraryExportHelper exports all saved tracks into a single ZIP file in the "Download" folder
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.TrackBundle;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import androidx.annotation.Nullable;
+
+
+/**
+ * LibraryExportHelper class
+ *
+ * Tracks are loaded in parallel on a small worker pool - each worker reads saved tracks through its
+ * own StorageHelper, so the export never waits for the I/O thread of TrackRepository. A worker
+ * encodes its track into a pipe of PIPE_SIZE bytes, the writer thread reads the pipes in catalog
+ * order and deflates them into the ZIP file. At most one track per worker is in flight, so memory
+ * use does not grow with the library or with the length of a track. A track that fails to load is
+ * skipped.
+ */
+public final class LibraryExportHelper implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = LibraryExportHelper.class.getSimpleName();
+
+    private static final int MAX_WORKERS = 4;
+    private static final int PIPE_SIZE = 65536; // bytes a worker may encode ahead of the writer
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+
+    /* Main class variables */
+    private final Context mContext;
+    private final int mExportFormat;
+    private final Listener mListener;
+    private final Handler mMainHandler;
+    private final int mWorkerCount;
+    private final ExecutorService mWorkers;
+    private final Thread mWriterThread;
+    private volatile boolean mCancelled;
+
+
+    /* Interface for the progress of a library export - called on the main thread, never after cancel() */
+    public interface Listener {
+        void onProgress(int processedTracks, int totalTracks);
+        void onFinished(@Nullable File zipFile, int exportedTracks, int totalTracks); // zipFile is null if the export failed
+    }
+
+
+    /* Starts exporting all saved tracks in given format */
+    public static LibraryExportHelper start(Context context, int exportFormat, Listener listener) {
+        LibraryExportHelper libraryExport = new LibraryExportHelper(context.getApplicationContext(), exportFormat, listener);
+        libraryExport.mWriterThread.start();
+        return libraryExport;
+    }
+
+
+    /* Constructor */
+    private LibraryExportHelper(Context context, int exportFormat, Listener listener) {
+        mContext = context;
+        mExportFormat = exportFormat;
+        mListener = listener;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mWorkerCount = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+        mWorkers = Executors.newFixedThreadPool(mWorkerCount, new ThreadFactory() {
+            private int mThreadCount = 0;
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, LOG_TAG + "-" + mThreadCount++);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        mWriterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                exportLibrary();
+            }
+        }, LOG_TAG);
+        mWriterThread.setPriority(Thread.NORM_PRIORITY - 1);
+        mCancelled = false;
+    }
+
+
+    /* Cancels the export - the partially written ZIP file is deleted - must be called on the main thread */
+    public void cancel() {
+        mCancelled = true;
+        mWriterThread.interrupt();
+    }
+
+
+    /* Writes all saved tracks into the ZIP file - runs on the writer thread */
+    private void exportLibrary() {
+        File zipFile = getZipFile();
+        ArrayDeque<ExportTask> inFlight = new ArrayDeque<>(mWorkerCount);
+        int totalTracks = 0;
+        int processedTracks = 0;
+        int exportedTracks = 0;
+        boolean success = false;
+
+        try {
+            List<TrackBundle> trackBundles = new StorageHelper(mContext).getListOfTrackBundles();
+            totalTracks = trackBundles.size();
+            postProgress(0, totalTracks);
+
+            try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)))) {
+                LogHelper.v(LOG_TAG, "Exporting " + totalTracks + " tracks to: " + zipFile.toString());
+                Iterator<TrackBundle> iterator = trackBundles.iterator();
+                while (!mCancelled && (iterator.hasNext() || !inFlight.isEmpty())) {
+                    // keep every worker busy - but never hold more than one track per worker
+                    while (iterator.hasNext() && inFlight.size() < mWorkerCount) {
+                        ExportTask task = new ExportTask(iterator.next().getTrackFile());
+                        inFlight.add(task);
+                        mWorkers.execute(task);
+                    }
+
+                    // add the oldest pending track to the ZIP file - keeps catalog order
+                    if (inFlight.poll().writeEntry(zip)) {
+                        exportedTracks++;
+                    }
+                    processedTracks++;
+                    postProgress(processedTracks, totalTracks);
+                }
+            }
+            success = !mCancelled;
+
+        } catch (InterruptedException e) {
+            LogHelper.v(LOG_TAG, "Library export cancelled.");
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to export library: " + e);
+        } finally {
+            // closing the pipes stops workers that are still encoding
+            for (ExportTask pending : inFlight) {
+                pending.closePipe();
+            }
+            mWorkers.shutdownNow();
+            if (!success && zipFile.exists() && !zipFile.delete()) {
+                LogHelper.e(LOG_TAG, "Unable to delete incomplete export: " + zipFile.toString());
+            }
+        }
+
+        postFinished(success ? zipFile : null, exportedTracks, totalTracks);
+    }
+
+
+    /* Returns a new ZIP file in the "Download" folder */
+    private File getZipFile() {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss", Locale.US);
+        return new File(ExportHelper.getDownloadFolder(), "trackbook-" + dateFormat.format(new Date()) + FILE_TYPE_ZIP_EXTENSION);
+    }
+
+
+    /* Hands progress to the listener on the main thread */
+    private void postProgress(final int processedTracks, final int totalTracks) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    mListener.onProgress(processedTracks, totalTracks);
+                }
+            }
+        });
+    }
+
+
+    /* Hands the result to the listener on the main thread */
+    private void postFinished(@Nullable final File zipFile, final int exportedTracks, final int totalTracks) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    mListener.onFinished(zipFile, exportedTracks, totalTracks);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Inner class: A track that a worker loads and encodes into a pipe - the writer thread reads the pipe into the ZIP file
+     */
+    private final class ExportTask implements Runnable {
+        private final File mTrackFile;
+        private final PipedInputStream mData;
+        private final PipedOutputStream mPipe;
+        private final CountDownLatch mLoaded;
+        private volatile String mFileName; // null if the track can not be exported
+        private volatile long mRecordingStart;
+        private volatile boolean mComplete;
+
+        private ExportTask(File trackFile) throws IOException {
+            mTrackFile = trackFile;
+            mData = new PipedInputStream(PIPE_SIZE);
+            mPipe = new PipedOutputStream(mData);
+            mLoaded = new CountDownLatch(1);
+        }
+
+        /* Loads and encodes the track - runs on a worker thread */
+        @Override
+        public void run() {
+            try {
+                if (mCancelled) {
+                    return;
+                }
+                // a StorageHelper is not thread-safe - saved tracks are only read, so each task can use its own
+                Track track = new StorageHelper(mContext).loadTrack(mTrackFile);
+                if (track == null || track.getRecordingStart() == null) {
+                    LogHelper.e(LOG_TAG, "Skipping track that could not be loaded: " + mTrackFile.getName());
+                    return;
+                }
+                TrackExporter exporter = ExportHelper.createExporter(mExportFormat);
+                mRecordingStart = track.getRecordingStart().getTime();
+                mFileName = ExportHelper.getExportFileName(track, exporter);
+                mLoaded.countDown();
+                ExportHelper.writeTrack(track, exporter, mPipe);
+                mComplete = true;
+            } catch (Exception e) {
+                // also a broken track must not stop the export of the others
+                LogHelper.e(LOG_TAG, "Unable to export track: " + mTrackFile.getName() + " (" + e + ")");
+            } finally {
+                mLoaded.countDown();
+                try {
+                    mPipe.close();
+                } catch (IOException ignored) {
+                    // pipe is already closed
+                }
+            }
+        }
+
+        /* Copies the encoded track into a new entry of the ZIP file - returns false if the track was skipped - runs on the writer thread */
+        private boolean writeEntry(ZipOutputStream zip) throws IOException, InterruptedException {
+            mLoaded.await();
+            try (InputStream data = mData) {
+                if (mFileName == null) {
+                    return false;
+                }
+                ZipEntry entry = new ZipEntry(mFileName);
+                entry.setTime(mRecordingStart);
+                zip.putNextEntry(entry);
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int count;
+                while ((count = data.read(buffer)) != -1) {
+                    zip.write(buffer, 0, count);
+                }
+                zip.closeEntry();
+            }
+            if (!mComplete) {
+                // a ZIP entry can not be taken back once it has been started
+                LogHelper.e(LOG_TAG, "Track was exported incompletely: " + mTrackFile.getName());
+            }
+            return mComplete;
+        }
+
+        /* Closes the read end of the pipe - a worker that is still encoding stops with an IOException */
+        private void closePipe() {
+            try {
+                mData.close();
+            } catch (IOException ignored) {
+                // pipe is already closed
+            }
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+}
@@ -0,0 +1,239 @@
+/**
+ * LocationDutyCycleHelper.java
+ * Implements the LocationDutyCycleHelper class
+ * A LocationDutyCycleHelper powers the gps receiver up shortly before each sample and down again afterwards
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.List;
+
+
+/**
+ * LocationDutyCycleHelper class
+ *
+ * Between two samples only the passive provider is registered - it costs nothing and still picks
+ * up locations other apps request. GPS is requested a warm-up period before each sample is due.
+ * The warm-up period adapts to the time the receiver actually needs for its first fix: it shrinks
+ * while fixes come quickly and doubles whenever no fix arrived before the sample. If the next sample
+ * is due so soon that GPS would only be off for a moment, GPS stays on - a receiver that is
+ * restarted too often uses more energy than one that keeps running. GPS also stays on until it got
+ * its first fix of the recording, because a cold start takes longer than any warm-up period.
+ * Network updates are cheap and stay registered, but at the sampling interval instead of continuously.
+ */
+public final class LocationDutyCycleHelper implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = LocationDutyCycleHelper.class.getSimpleName();
+
+    private static final long MIN_WARM_UP = 5000; // milliseconds - warm start of the gps receiver
+    private static final long MAX_WARM_UP = 30000; // milliseconds - cold start under open sky
+    private static final long WARM_UP_MARGIN = 2000; // milliseconds added to the measured time to first fix
+    private static final long MIN_GPS_OFF_TIME = 10000; // milliseconds - shorter pauses keep gps running
+
+
+    /* Main class variables */
+    private final LocationManager mLocationManager;
+    private final Handler mHandler;
+    private final Looper mListenerLooper;
+    private final LocationListener mGpsListener;
+    private final LocationListener mNetworkListener;
+    private final LocationListener mPassiveListener;
+    private final Runnable mPowerUpGps;
+    private final boolean mGpsAvailable;
+    private final boolean mNetworkAvailable;
+    private long mWarmUp;
+    private long mNetworkInterval;
+    private boolean mGpsActive;
+    private long mGpsActiveSince;
+    private volatile long mFirstGpsFix; // written by the listener looper
+    private volatile boolean mGpsLocked; // written by the listener looper
+
+
+    /* Constructor - must be used on the thread of given handler - locations of all providers are handed to given listener on given looper */
+    public LocationDutyCycleHelper(LocationManager locationManager, Handler handler, Looper listenerLooper, final LocationListener listener) {
+        mLocationManager = locationManager;
+        mHandler = handler;
+        mListenerLooper = listenerLooper;
+        List locationProviders = locationManager.getAllProviders();
+        mGpsAvailable = locationProviders.contains(LocationManager.GPS_PROVIDER);
+        mNetworkAvailable = locationProviders.contains(LocationManager.NETWORK_PROVIDER);
+
+        // every provider gets its own listener - a listener can only be registered once
+        mGpsListener = new ForwardingLocationListener(listener) {
+            @Override
+            public void onLocationChanged(Location location) {
+                if (mFirstGpsFix == 0) {
+                    mFirstGpsFix = SystemClock.elapsedRealtime();
+                }
+                mGpsLocked = true;
+                super.onLocationChanged(location);
+            }
+        };
+        mNetworkListener = new ForwardingLocationListener(listener);
+        mPassiveListener = new ForwardingLocationListener(listener);
+        mPowerUpGps = new Runnable() {
+            @Override
+            public void run() {
+                startGps();
+            }
+        };
+        mWarmUp = MIN_WARM_UP * 2;
+    }
+
+
+    /* Starts receiving locations - gps is powered up right away, because the first sample is due immediately */
+    public void start() {
+        LogHelper.v(LOG_TAG, "Starting location duty cycle.");
+        requestUpdates(LocationManager.PASSIVE_PROVIDER, 0, mPassiveListener);
+        mNetworkInterval = 0;
+        if (mNetworkAvailable) {
+            requestUpdates(LocationManager.NETWORK_PROVIDER, mNetworkInterval, mNetworkListener);
+        }
+        mGpsLocked = false;
+        startGps();
+        // the first sample is taken right away - it can not tell how long the receiver needs
+        mGpsActiveSince = 0;
+    }
+
+
+    /* Stops receiving locations */
+    public void stop() {
+        LogHelper.v(LOG_TAG, "Stopping location duty cycle.");
+        mHandler.removeCallbacks(mPowerUpGps);
+        stopGps();
+        removeUpdates(mNetworkListener);
+        removeUpdates(mPassiveListener);
+    }
+
+
+    /* Tells the duty cycle that a sample was taken - and when the next sample is due */
+    public void onSampleTaken(long nextSampleDelay) {
+        // learn how long the receiver needs - measured only if gps was started from scratch for this sample
+        if (mGpsActive && mGpsActiveSince > 0) {
+            if (mFirstGpsFix > 0) {
+                mWarmUp = Math.max(MIN_WARM_UP, Math.min(MAX_WARM_UP, mFirstGpsFix - mGpsActiveSince + WARM_UP_MARGIN));
+            } else {
+                mWarmUp = Math.min(MAX_WARM_UP, mWarmUp * 2);
+            }
+        }
+
+        // network updates follow the sampling interval
+        if (mNetworkAvailable && nextSampleDelay != mNetworkInterval) {
+            mNetworkInterval = nextSampleDelay;
+            requestUpdates(LocationManager.NETWORK_PROVIDER, mNetworkInterval, mNetworkListener);
+        }
+
+        // power gps down until shortly before the next sample - unless the pause would be too short or gps never had a fix
+        mHandler.removeCallbacks(mPowerUpGps);
+        long gpsOffTime = nextSampleDelay - mWarmUp;
+        if (gpsOffTime < MIN_GPS_OFF_TIME || !mGpsLocked) {
+            if (mGpsActive) {
+                // keep running - the next sample does not measure a time to first fix
+                mGpsActiveSince = 0;
+            } else {
+                startGps();
+            }
+        } else {
+            stopGps();
+            mHandler.postDelayed(mPowerUpGps, gpsOffTime);
+        }
+    }
+
+
+    /* Requests continuous gps updates */
+    private void startGps() {
+        if (mGpsAvailable && !mGpsActive) {
+            mGpsActive = requestUpdates(LocationManager.GPS_PROVIDER, 0, mGpsListener);
+            mGpsActiveSince = SystemClock.elapsedRealtime();
+            mFirstGpsFix = 0;
+        }
+    }
+
+
+    /* Stops gps updates */
+    private void stopGps() {
+        if (mGpsActive) {
+            removeUpdates(mGpsListener);
+            mGpsActive = false;
+        }
+    }
+
+
+    /* Registers given listener for given provider - returns false if that failed */
+    private boolean requestUpdates(String provider, long minTime, LocationListener listener) {
+        try {
+            mLocationManager.requestLocationUpdates(provider, minTime, 0, listener, mListenerLooper);
+            return true;
+        } catch (SecurityException | IllegalArgumentException e) {
+            // catches permission problems and missing providers
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+
+    /* Removes given listener */
+    private void removeUpdates(LocationListener listener) {
+        try {
+            mLocationManager.removeUpdates(listener);
+        } catch (SecurityException e) {
+            // catches permission problems
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Inner class: LocationListener that hands everything to another listener
+     */
+    private static class ForwardingLocationListener implements LocationListener {
+        private final LocationListener mListener;
+
+        private ForwardingLocationListener(LocationListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void onLocationChanged(Location location) {
+            mListener.onLocationChanged(location);
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+            mListener.onStatusChanged(provider, status, extras);
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+            mListener.onProviderEnabled(provider);
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+            mListener.onProviderDisabled(provider);
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+}
@@ -0,0 +1,302 @@
+/**
+ * LocationFilter.java
+ * Implements the LocationFilter class
+ * A LocationFilter fuses gps and network fixes into one smoothed position and velocity estimate
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.location.Location;
+import android.os.Bundle;
+
+
+/**
+ * LocationFilter class
+ *
+ * A constant-velocity Kalman filter. Positions are projected onto a plane around the first fix - x
+ * points east, y points north, both in meters. East and north are filtered independently, each with
+ * the state [position, velocity] and a 2x2 covariance kept in plain fields, so an update allocates
+ * nothing. Every fix is weighted by its reported accuracy: a precise gps fix moves the estimate a lot,
+ * a coarse network fix only a little. A fix without accuracy cannot be weighted and is ignored. Fixes
+ * that are far outside the predicted uncertainty are rejected - this replaces the speed plausibility
+ * check for network fixes. If several fixes in a row are rejected, or no fix arrived for a long time,
+ * the filter starts over from the next fix.
+ */
+public final class LocationFilter implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = LocationFilter.class.getSimpleName();
+
+    private static final double EARTH_RADIUS = 6371008.8; // mean radius in meters
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+    private static final double ACCELERATION_VARIANCE = 1.0; // (meters per second squared)^2 - how quickly speed and heading may change
+    private static final double INITIAL_VELOCITY_VARIANCE = 100.0; // (meters per second)^2 - velocity is unknown at the first fix
+    private static final double RADIUS_PER_SIGMA = 1.51; // the reported accuracy is the radius containing 68 percent of a 2D normal distribution
+    private static final double REJECTION_THRESHOLD = 13.8; // chi-square with two degrees of freedom at 99.9 percent
+    private static final int MAX_REJECTIONS = 4; // consecutive rejected fixes - then the estimate is considered lost
+    private static final long MAX_PREDICTION = 120L * ONE_SECOND_IN_NANOSECOND; // longer gaps start over
+    private static final double MAX_PLANE_DISTANCE = 20000; // meters from the origin - then the plane is moved
+    private static final float MIN_BEARING_SPEED = 0.5f; // meters per second - slower movement has no meaningful bearing
+
+
+    /* Main class variables */
+    private boolean mInitialized;
+    private int mRejectedCount;
+    private long mElapsedRealtimeNanos;
+
+    /* Origin of the plane */
+    private double mOriginLatitude;
+    private double mOriginLongitude;
+    private double mMetersPerDegreeLongitude;
+
+    /* State and covariance - east - the covariance is between position and velocity */
+    private double mX;
+    private double mVelocityX;
+    private double mVarianceX;
+    private double mCovarianceX;
+    private double mVelocityVarianceX;
+
+    /* State and covariance - north */
+    private double mY;
+    private double mVelocityY;
+    private double mVarianceY;
+    private double mCovarianceY;
+    private double mVelocityVarianceY;
+
+    /* Properties of the latest accepted fix that are passed through */
+    private long mTime;
+    private String mProvider;
+    private double mAltitude;
+    private int mSatellites;
+
+
+    /* Constructor */
+    public LocationFilter() {
+        reset();
+    }
+
+
+    /* Forgets the estimate - the next fix starts over */
+    public void reset() {
+        mInitialized = false;
+        mRejectedCount = 0;
+        mAltitude = Double.NaN;
+        mSatellites = -1;
+    }
+
+
+    /* Fuses a fix into the estimate - accuracy and altitude are NaN and satellites -1 if unknown - returns false if the fix was ignored, rejected or out of order */
+    public boolean update(long elapsedRealtimeNanos, long time, String provider, double latitude, double longitude, float accuracy, double altitude, int satellites) {
+        // CASE: fix without accuracy - it would otherwise get the weight of a perfect fix
+        if (!(accuracy > 0)) {
+            return false;
+        }
+
+        double measurementVariance = Math.max(1.0, accuracy / RADIUS_PER_SIGMA);
+        measurementVariance *= measurementVariance;
+
+        // CASE: first fix - or the estimate was lost
+        if (!mInitialized || elapsedRealtimeNanos - mElapsedRealtimeNanos > MAX_PREDICTION || mRejectedCount >= MAX_REJECTIONS) {
+            initialize(latitude, longitude, measurementVariance);
+            accept(elapsedRealtimeNanos, time, provider, altitude, satellites);
+            return true;
+        }
+
+        // CASE: duplicate fix from the passive provider - or an older fix that arrived late
+        if (elapsedRealtimeNanos <= mElapsedRealtimeNanos) {
+            return false;
+        }
+
+        // predict both axes to the time of the fix
+        double dt = (double) (elapsedRealtimeNanos - mElapsedRealtimeNanos) / ONE_SECOND_IN_NANOSECOND;
+        double dt2 = dt * dt;
+        double q = ACCELERATION_VARIANCE;
+        mX += mVelocityX * dt;
+        mVarianceX += dt * (2 * mCovarianceX + dt * mVelocityVarianceX) + q * dt2 * dt2 / 4;
+        mCovarianceX += dt * mVelocityVarianceX + q * dt2 * dt / 2;
+        mVelocityVarianceX += q * dt2;
+        mY += mVelocityY * dt;
+        mVarianceY += dt * (2 * mCovarianceY + dt * mVelocityVarianceY) + q * dt2 * dt2 / 4;
+        mCovarianceY += dt * mVelocityVarianceY + q * dt2 * dt / 2;
+        mVelocityVarianceY += q * dt2;
+
+        // measure how surprising the fix is
+        double innovationX = getX(longitude) - mX;
+        double innovationY = getY(latitude) - mY;
+        double innovationVarianceX = mVarianceX + measurementVariance;
+        double innovationVarianceY = mVarianceY + measurementVariance;
+        double distance = innovationX * innovationX / innovationVarianceX + innovationY * innovationY / innovationVarianceY;
+        if (distance > REJECTION_THRESHOLD) {
+            // the prediction is kept - the next fix is compared against a wider uncertainty
+            mRejectedCount++;
+            mElapsedRealtimeNanos = elapsedRealtimeNanos;
+            return false;
+        }
+
+        // correct east axis
+        double gainX = mVarianceX / innovationVarianceX;
+        double gainVelocityX = mCovarianceX / innovationVarianceX;
+        mX += gainX * innovationX;
+        mVelocityX += gainVelocityX * innovationX;
+        mVelocityVarianceX -= gainVelocityX * mCovarianceX;
+        mCovarianceX *= 1 - gainX;
+        mVarianceX *= 1 - gainX;
+
+        // correct north axis
+        double gainY = mVarianceY / innovationVarianceY;
+        double gainVelocityY = mCovarianceY / innovationVarianceY;
+        mY += gainY * innovationY;
+        mVelocityY += gainVelocityY * innovationY;
+        mVelocityVarianceY -= gainVelocityY * mCovarianceY;
+        mCovarianceY *= 1 - gainY;
+        mVarianceY *= 1 - gainY;
+
+        accept(elapsedRealtimeNanos, time, provider, altitude, satellites);
+        moveOriginIfNecessary();
+        return true;
+    }
+
+
+    /* Checks if the filter has an estimate */
+    public boolean hasEstimate() {
+        return mInitialized;
+    }
+
+
+    /* Getter for the estimated latitude */
+    public double getLatitude() {
+        return mOriginLatitude + mY / METERS_PER_DEGREE;
+    }
+
+
+    /* Getter for the estimated longitude - between -180 and 180 */
+    public double getLongitude() {
+        double longitude = mOriginLongitude + mX / mMetersPerDegreeLongitude;
+        if (longitude > 180) {
+            longitude -= 360;
+        } else if (longitude < -180) {
+            longitude += 360;
+        }
+        return longitude;
+    }
+
+
+    /* Getter for the accuracy of the estimate in meters - same meaning as Location.getAccuracy() */
+    public float getAccuracy() {
+        return (float) (RADIUS_PER_SIGMA * Math.sqrt((mVarianceX + mVarianceY) / 2));
+    }
+
+
+    /* Getter for the estimated speed in meters per second */
+    public float getSpeed() {
+        return (float) Math.hypot(mVelocityX, mVelocityY);
+    }
+
+
+    /* Creates a Location object for the estimate - time and provider are taken from the latest accepted fix */
+    public Location getEstimate() {
+        if (!mInitialized) {
+            return null;
+        }
+        Location location = new Location(mProvider);
+        location.setTime(mTime);
+        location.setElapsedRealtimeNanos(mElapsedRealtimeNanos);
+        location.setLatitude(getLatitude());
+        location.setLongitude(getLongitude());
+        location.setAccuracy(getAccuracy());
+        float speed = getSpeed();
+        location.setSpeed(speed);
+        if (speed >= MIN_BEARING_SPEED) {
+            location.setBearing((float) ((Math.toDegrees(Math.atan2(mVelocityX, mVelocityY)) + 360) % 360));
+        }
+        if (!Double.isNaN(mAltitude)) {
+            location.setAltitude(mAltitude);
+        }
+        if (mSatellites >= 0) {
+            // WayPoint reads the satellite count from the extras
+            Bundle extras = new Bundle();
+            extras.putInt("satellites", mSatellites);
+            location.setExtras(extras);
+        }
+        return location;
+    }
+
+
+    /* Starts over at given position */
+    private void initialize(double latitude, double longitude, double measurementVariance) {
+        setOrigin(latitude, longitude);
+        mX = 0;
+        mVelocityX = 0;
+        mVarianceX = measurementVariance;
+        mCovarianceX = 0;
+        mVelocityVarianceX = INITIAL_VELOCITY_VARIANCE;
+        mY = 0;
+        mVelocityY = 0;
+        mVarianceY = measurementVariance;
+        mCovarianceY = 0;
+        mVelocityVarianceY = INITIAL_VELOCITY_VARIANCE;
+        mInitialized = true;
+    }
+
+
+    /* Stores the properties of an accepted fix */
+    private void accept(long elapsedRealtimeNanos, long time, String provider, double altitude, int satellites) {
+        mRejectedCount = 0;
+        mElapsedRealtimeNanos = elapsedRealtimeNanos;
+        mTime = time;
+        mProvider = provider;
+        if (!Double.isNaN(altitude)) {
+            mAltitude = altitude;
+        }
+        if (satellites >= 0) {
+            mSatellites = satellites;
+        }
+    }
+
+
+    /* Moves the origin of the plane to the estimate once it is far away - the projection distorts with distance */
+    private void moveOriginIfNecessary() {
+        if (Math.abs(mX) > MAX_PLANE_DISTANCE || Math.abs(mY) > MAX_PLANE_DISTANCE) {
+            setOrigin(getLatitude(), getLongitude());
+            mX = 0;
+            mY = 0;
+        }
+    }
+
+
+    /* Sets the origin of the plane */
+    private void setOrigin(double latitude, double longitude) {
+        mOriginLatitude = latitude;
+        mOriginLongitude = longitude;
+        mMetersPerDegreeLongitude = Math.max(1.0, METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+    }
+
+
+    /* Projects given longitude onto the plane - unwrapped at the date line */
+    private double getX(double longitude) {
+        double delta = longitude - mOriginLongitude;
+        if (delta > 180) {
+            delta -= 360;
+        } else if (delta < -180) {
+            delta += 360;
+        }
+        return delta * mMetersPerDegreeLongitude;
+    }
+
+
+    /* Projects given latitude onto the plane */
+    private double getY(double latitude) {
+        return (latitude - mOriginLatitude) * METERS_PER_DEGREE;
+    }
+
+}
@@ -143,44 +143,6 @@ public final class LocationHelper implements TrackbookKeys {
     }
 
 
-    /* Checks if given location is a new WayPoint */
-    public static boolean isNewWayPoint(Location lastLocation, Location newLocation, float averageSpeed) {
-        float distance = newLocation.distanceTo(lastLocation);
-        long timeDifference = newLocation.getElapsedRealtimeNanos() - lastLocation.getElapsedRealtimeNanos();
-
-        if (newLocation.getProvider().equals(LocationManager.NETWORK_PROVIDER)) {
-            // calculate speed difference
-            float speedDifference;
-            float currentSpeed = distance / ((float)timeDifference / ONE_SECOND_IN_NANOSECOND);
-            if (currentSpeed > averageSpeed) {
-                speedDifference = currentSpeed / averageSpeed;
-            } else {
-                speedDifference = averageSpeed / currentSpeed;
-            }
-
-            // SPECIAL CASE network: plausibility check for network provider. looking for sudden location jump errors
-            if (averageSpeed != 0f && currentSpeed > 10f && speedDifference > 2f) {
-                // implausible location (speed is high (10 m/s == 36km/h) and has doubled)
-                return false;
-            }
-
-            // SPECIAL CASE network: if last location came from gps. only accept location fixes with decent accuracy
-            if (lastLocation.getProvider().equals(LocationManager.GPS_PROVIDER) && newLocation.getAccuracy() < 66) {
-                // network locations tend to be too in accurate
-                return false;
-            }
-
-            // DEFAULT network: distance is bigger than 30 meters and time difference bigger than 12 seconds
-            return distance > 30 && timeDifference >= 12 * ONE_SECOND_IN_NANOSECOND; // TODO add minimal accuracy
-
-        } else {
-            // DEFAULT GPS: distance is bigger than 10 meters and time difference bigger than 12 seconds
-            return distance > 10 && timeDifference >= 12 * ONE_SECOND_IN_NANOSECOND;
-        }
-
-    }
-
-
     /* Checks if given location is a stop over */
     public static boolean isStopOver(@Nullable Location previousLocation, Location newLocation) {
         if (previousLocation != null) {
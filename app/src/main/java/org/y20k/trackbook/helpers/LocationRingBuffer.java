@@ -0,0 +1,263 @@
+/**
+ * LocationRingBuffer.java
+ * Implements the LocationRingBuffer class
+ * A LocationRingBuffer hands location fixes from the location thread to the recorder without locking
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Bundle;
+
+
+/**
+ * LocationRingBuffer class
+ *
+ * Single producer, single consumer: exactly one thread may call offer(), exactly one other thread
+ * may call the remaining methods. Fixes are copied into preallocated primitive arrays, so the buffer
+ * allocates nothing after it has been created. The producer publishes a fix by advancing the
+ * volatile head, the consumer frees a slot by advancing the volatile tail - neither ever waits for
+ * the other. If the consumer falls behind by a whole buffer, new fixes are dropped until it catches
+ * up. The consumer reads the oldest fix in place and only creates a Location object for fixes it
+ * wants to keep.
+ */
+public final class LocationRingBuffer {
+
+    /* Define log tag */
+    private static final String LOG_TAG = LocationRingBuffer.class.getSimpleName();
+
+    private static final byte PROVIDER_GPS = 0;
+    private static final byte PROVIDER_NETWORK = 1;
+    private static final byte PROVIDER_OTHER = 2;
+
+    private static final byte HAS_ALTITUDE = 1;
+    private static final byte HAS_SPEED = 2;
+    private static final byte HAS_BEARING = 4;
+    private static final byte HAS_ACCURACY = 8;
+
+
+    /* Main class variables */
+    private final int mMask;
+    private final long[] mTime;
+    private final long[] mElapsedRealtimeNanos;
+    private final double[] mLatitude;
+    private final double[] mLongitude;
+    private final double[] mAltitude;
+    private final float[] mSpeed;
+    private final float[] mBearing;
+    private final float[] mAccuracy;
+    private final int[] mSatellites;
+    private final byte[] mProvider;
+    private final byte[] mFlags;
+    private volatile long mHead; // next slot to write - only advanced by the producer
+    private volatile long mTail; // next slot to read - only advanced by the consumer
+    private volatile int mDroppedCount; // only written by the producer
+
+
+    /* Constructor - capacity is rounded up to a power of two */
+    public LocationRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        mMask = size - 1;
+        mTime = new long[size];
+        mElapsedRealtimeNanos = new long[size];
+        mLatitude = new double[size];
+        mLongitude = new double[size];
+        mAltitude = new double[size];
+        mSpeed = new float[size];
+        mBearing = new float[size];
+        mAccuracy = new float[size];
+        mSatellites = new int[size];
+        mProvider = new byte[size];
+        mFlags = new byte[size];
+    }
+
+
+    /* PRODUCER: Copies given location into the buffer - returns false if the buffer is full */
+    public boolean offer(Location location) {
+        long head = mHead;
+        if (head - mTail > mMask) {
+            mDroppedCount++;
+            return false;
+        }
+        int slot = (int) (head & mMask);
+        mTime[slot] = location.getTime();
+        mElapsedRealtimeNanos[slot] = location.getElapsedRealtimeNanos();
+        mLatitude[slot] = location.getLatitude();
+        mLongitude[slot] = location.getLongitude();
+        mAltitude[slot] = location.getAltitude();
+        mSpeed[slot] = location.getSpeed();
+        mBearing[slot] = location.getBearing();
+        mAccuracy[slot] = location.getAccuracy();
+        Bundle extras = location.getExtras();
+        mSatellites[slot] = extras != null ? extras.getInt("satellites", -1) : -1;
+        mProvider[slot] = encodeProvider(location.getProvider());
+        byte flags = 0;
+        if (location.hasAltitude()) {
+            flags |= HAS_ALTITUDE;
+        }
+        if (location.hasSpeed()) {
+            flags |= HAS_SPEED;
+        }
+        if (location.hasBearing()) {
+            flags |= HAS_BEARING;
+        }
+        if (location.hasAccuracy()) {
+            flags |= HAS_ACCURACY;
+        }
+        mFlags[slot] = flags;
+        // publish the fix - the volatile write makes the slot visible to the consumer
+        mHead = head + 1;
+        return true;
+    }
+
+
+    /* CONSUMER: Checks if there is no fix to read */
+    public boolean isEmpty() {
+        return mTail == mHead;
+    }
+
+
+    /* CONSUMER: Getter for the UTC time of the oldest fix */
+    public long getTime() {
+        return mTime[getTailSlot()];
+    }
+
+
+    /* CONSUMER: Getter for the latitude of the oldest fix */
+    public double getLatitude() {
+        return mLatitude[getTailSlot()];
+    }
+
+
+    /* CONSUMER: Getter for the longitude of the oldest fix */
+    public double getLongitude() {
+        return mLongitude[getTailSlot()];
+    }
+
+
+    /* CONSUMER: Getter for the altitude of the oldest fix - NaN if it has none */
+    public double getAltitude() {
+        int slot = getTailSlot();
+        return (mFlags[slot] & HAS_ALTITUDE) != 0 ? mAltitude[slot] : Double.NaN;
+    }
+
+
+    /* CONSUMER: Getter for the number of satellites of the oldest fix - -1 if unknown */
+    public int getSatellites() {
+        return mSatellites[getTailSlot()];
+    }
+
+
+    /* CONSUMER: Getter for the elapsed realtime of the oldest fix */
+    public long getElapsedRealtimeNanos() {
+        return mElapsedRealtimeNanos[getTailSlot()];
+    }
+
+
+    /* CONSUMER: Getter for the accuracy of the oldest fix - NaN if it has none */
+    public float getAccuracy() {
+        int slot = getTailSlot();
+        return (mFlags[slot] & HAS_ACCURACY) != 0 ? mAccuracy[slot] : Float.NaN;
+    }
+
+
+    /* CONSUMER: Getter for the provider of the oldest fix */
+    public String getProvider() {
+        return decodeProvider(mProvider[getTailSlot()]);
+    }
+
+
+    /* CONSUMER: Creates a Location object for the oldest fix */
+    public Location toLocation() {
+        int slot = getTailSlot();
+        Location location = new Location(decodeProvider(mProvider[slot]));
+        location.setTime(mTime[slot]);
+        location.setElapsedRealtimeNanos(mElapsedRealtimeNanos[slot]);
+        location.setLatitude(mLatitude[slot]);
+        location.setLongitude(mLongitude[slot]);
+        byte flags = mFlags[slot];
+        if ((flags & HAS_ALTITUDE) != 0) {
+            location.setAltitude(mAltitude[slot]);
+        }
+        if ((flags & HAS_SPEED) != 0) {
+            location.setSpeed(mSpeed[slot]);
+        }
+        if ((flags & HAS_BEARING) != 0) {
+            location.setBearing(mBearing[slot]);
+        }
+        if ((flags & HAS_ACCURACY) != 0) {
+            location.setAccuracy(mAccuracy[slot]);
+        }
+        if (mSatellites[slot] >= 0) {
+            // WayPoint reads the satellite count from the extras
+            Bundle extras = new Bundle();
+            extras.putInt("satellites", mSatellites[slot]);
+            location.setExtras(extras);
+        }
+        return location;
+    }
+
+
+    /* CONSUMER: Removes the oldest fix - frees its slot for the producer */
+    public void remove() {
+        mTail = mTail + 1;
+    }
+
+
+    /* CONSUMER: Removes all fixes */
+    public void clear() {
+        mTail = mHead;
+    }
+
+
+    /* Returns the number of fixes dropped because the buffer was full - since the buffer was created */
+    public int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+
+    /* Returns the slot of the oldest fix */
+    private int getTailSlot() {
+        if (isEmpty()) {
+            throw new IllegalStateException("Location buffer is empty.");
+        }
+        return (int) (mTail & mMask);
+    }
+
+
+    /* Maps a provider name to its code */
+    private static byte encodeProvider(String provider) {
+        if (LocationManager.GPS_PROVIDER.equals(provider)) {
+            return PROVIDER_GPS;
+        } else if (LocationManager.NETWORK_PROVIDER.equals(provider)) {
+            return PROVIDER_NETWORK;
+        } else {
+            return PROVIDER_OTHER;
+        }
+    }
+
+
+    /* Maps a provider code to its name - other providers are reported as passive provider */
+    private static String decodeProvider(byte provider) {
+        switch (provider) {
+            case PROVIDER_GPS:
+                return LocationManager.GPS_PROVIDER;
+            case PROVIDER_NETWORK:
+                return LocationManager.NETWORK_PROVIDER;
+            default:
+                return LocationManager.PASSIVE_PROVIDER;
+        }
+    }
+
+}
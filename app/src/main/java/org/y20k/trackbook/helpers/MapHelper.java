@@ -26,19 +26,20 @@ import org.osmdroid.views.overlay.ItemizedIconOverlay;
 import org.osmdroid.views.overlay.OverlayItem;
 import org.y20k.trackbook.R;
 import org.y20k.trackbook.core.Track;
-import org.y20k.trackbook.core.WayPoint;
+import org.y20k.trackbook.core.TrackOverview;
+import org.y20k.trackbook.core.WayPointList;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
 
+import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 
 /**
  * MapHelper class
  */
-public final class MapHelper {
+public final class MapHelper implements TrackbookKeys {
 
     /* Define log tag */
     private static final String LOG_TAG = MapHelper.class.getSimpleName();
@@ -84,66 +85,49 @@ public final class MapHelper {
     }
 
 
-    /* Creates icon overlay for track */
+    /* Creates icon overlay for track - only waypoints held in memory are drawn, at most about MAXIMUM_TRACK_OVERLAY_SIZE of them */
     public static ItemizedIconOverlay createTrackOverlay(final Context context, Track track, boolean trackingActive){
+        return createTrackOverlay(context, track, null, trackingActive);
+    }
+
+
+    /* Creates icon overlay for track - paged out waypoints are drawn from given overview, waypoints held in memory are thinned out to about MAXIMUM_TRACK_OVERLAY_SIZE */
+    public static ItemizedIconOverlay createTrackOverlay(final Context context, Track track, @Nullable TrackOverview overview, boolean trackingActive){
 
         final ArrayList<OverlayItem> overlayItems = new ArrayList<>();
         boolean currentPosition;
         final int trackSize = track.getSize();
-        final List<WayPoint> wayPoints = track.getWayPoints();
-        WayPoint wayPoint;
-
-        for (int i = 0; i < track.getSize(); i++) {
-
-            // get WayPoint and check if it is current position
-            wayPoint = wayPoints.get(i);
-            currentPosition = i == trackSize - 1;
-
-            // create marker
-            Drawable newMarker;
-
-            // CASE 1: Tracking active and WayPoint is not current position
-            if (trackingActive && !currentPosition) {
-                if (wayPoint.getIsStopOver()) {
-                    // stop over marker
-                    newMarker = ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_grey_24dp);
-                } else {
-                    // default marker for this case
-                    newMarker = ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_red_24dp);
-                }
+        final WayPointList wayPoints = track.getWayPoints();
+        boolean isStopOver;
+
+        // paged out waypoints - reading them back is not a task for the main thread, the overview was built on the I/O thread
+        int firstIndex = wayPoints.getFirstResidentIndex();
+        if (overview != null) {
+            final WayPointList overviewWayPoints = overview.getWayPoints();
+            for (int i = 0; i < overviewWayPoints.size() && overview.getIndex(i) < trackSize - 1; i++) {
+                OverlayItem overlayItem = createOverlayItem(context, overviewWayPoints, i);
+                overlayItem.setMarker(getTrackMarker(context, overviewWayPoints.getIsStopOver(i), false, trackingActive));
+                overlayItems.add(overlayItem);
             }
+            firstIndex = Math.max(firstIndex, Math.min(overview.getEnd(), trackSize - 1));
+        }
 
-            // CASE 2: Tracking active and WayPoint is current position
-            else if (trackingActive && currentPosition) {
-                if (wayPoint.getIsStopOver()) {
-                    // stop over marker
-                    newMarker = ContextCompat.getDrawable(context, R.drawable.ic_my_location_dot_blue_grey_24dp);
-                } else {
-                    // default marker for this case
-                    newMarker = ContextCompat.getDrawable(context, R.drawable.ic_my_location_dot_red_24dp);
-                }
-            }
+        // waypoints held in memory
+        final int stride = Math.max(1, (trackSize - firstIndex + MAXIMUM_TRACK_OVERLAY_SIZE - 1) / MAXIMUM_TRACK_OVERLAY_SIZE);
+        for (int i = firstIndex; i < trackSize; i++) {
 
-            // CASE 3: Tracking not active and WayPoint is not current position
-            else if (!trackingActive && !currentPosition) {
-                if (wayPoint.getIsStopOver()) {
-                    // stop over marker
-                    newMarker = ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_grey_24dp);
-                } else {
-                    // default marker for this case
-                    newMarker = ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_blue_24dp);
-                }
-            }
+            // get stop over status of WayPoint and check if it is current position
+            isStopOver = wayPoints.getIsStopOver(i);
+            currentPosition = i == trackSize - 1;
 
-            // CASE 4: Tracking not active and WayPoint is current position
-            else {
-                // default marker
-                newMarker = ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_blue_24dp);
+            // thin out long tracks
+            if ((i - firstIndex) % stride != 0 && !isStopOver && !currentPosition) {
+                continue;
             }
 
             // create overlay item
-            OverlayItem overlayItem = createOverlayItem(context, wayPoint.getLocation());
-            overlayItem.setMarker(newMarker);
+            OverlayItem overlayItem = createOverlayItem(context, wayPoints, i);
+            overlayItem.setMarker(getTrackMarker(context, isStopOver, currentPosition, trackingActive));
 
             // add marker to list of overlay items
             overlayItems.add(overlayItem);
@@ -170,6 +154,50 @@ public final class MapHelper {
     }
 
 
+    /* Selects the marker for a waypoint of a track */
+    private static Drawable getTrackMarker(Context context, boolean isStopOver, boolean currentPosition, boolean trackingActive) {
+
+        // CASE 1: Tracking active and WayPoint is not current position
+        if (trackingActive && !currentPosition) {
+            if (isStopOver) {
+                // stop over marker
+                return ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_grey_24dp);
+            } else {
+                // default marker for this case
+                return ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_red_24dp);
+            }
+        }
+
+        // CASE 2: Tracking active and WayPoint is current position
+        else if (trackingActive && currentPosition) {
+            if (isStopOver) {
+                // stop over marker
+                return ContextCompat.getDrawable(context, R.drawable.ic_my_location_dot_blue_grey_24dp);
+            } else {
+                // default marker for this case
+                return ContextCompat.getDrawable(context, R.drawable.ic_my_location_dot_red_24dp);
+            }
+        }
+
+        // CASE 3: Tracking not active and WayPoint is not current position
+        else if (!trackingActive && !currentPosition) {
+            if (isStopOver) {
+                // stop over marker
+                return ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_grey_24dp);
+            } else {
+                // default marker for this case
+                return ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_blue_24dp);
+            }
+        }
+
+        // CASE 4: Tracking not active and WayPoint is current position
+        else {
+            // default marker
+            return ContextCompat.getDrawable(context, R.drawable.ic_my_location_crumb_blue_24dp);
+        }
+    }
+
+
     /* Creates a marker overlay item */
     private static OverlayItem createOverlayItem(Context context, Location location) {
         // create content of overlay item
@@ -181,4 +209,16 @@ public final class MapHelper {
         return new OverlayItem(title, description, position);
     }
 
+
+    /* Creates a marker overlay item for the waypoint at given index - without creating a Location object */
+    private static OverlayItem createOverlayItem(Context context, WayPointList wayPoints, int index) {
+        // create content of overlay item
+        String time = SimpleDateFormat.getTimeInstance(SimpleDateFormat.MEDIUM, Locale.getDefault()).format(wayPoints.getTime(index));
+        final String title = context.getString(R.string.marker_description_source) + ": " + wayPoints.getProvider(index) + " | " + context.getString(R.string.marker_description_time) + ": " + time;
+        final String description = context.getString(R.string.marker_description_accuracy) + ": " + wayPoints.getAccuracy(index);
+        final GeoPoint position = new GeoPoint(wayPoints.getLatitude(index), wayPoints.getLongitude(index));
+
+        return new OverlayItem(title, description, position);
+    }
+
 }
\ No newline at end of file
@@ -55,7 +55,7 @@ public final class NotificationHelper implements TrackbookKeys {
         // ACTION: NOTIFICATION TAP & BUTTON SHOW
         Intent tapActionIntent = new Intent(context, MainActivity.class);
         tapActionIntent.setAction(ACTION_SHOW_MAP);
-        tapActionIntent.putExtra(EXTRA_TRACK, track);
+        // no track extra - the map fragment gets the track from the service, and a long track does not fit into an intent
         tapActionIntent.putExtra(EXTRA_TRACKING_STATE, tracking);
         // artificial back stack for started Activity (https://developer.android.com/training/notify-user/navigation.html#DirectEntry)
         TaskStackBuilder tapActionIntentBuilder = TaskStackBuilder.create(context);
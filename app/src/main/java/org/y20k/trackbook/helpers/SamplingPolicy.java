@@ -0,0 +1,45 @@
+/**
+ * SamplingPolicy.java
+ * Implements the SamplingPolicy interface
+ * A SamplingPolicy decides how often TrackerService samples the current location and which locations become waypoints
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.location.Location;
+
+import androidx.annotation.Nullable;
+
+
+/**
+ * SamplingPolicy interface
+ *
+ * TrackerService calls onSample with the current best location on every sampling tick, then asks
+ * isNewWayPoint whether to add it to the track and getSamplingInterval when the next tick is due.
+ * All methods are called on the same thread.
+ */
+public interface SamplingPolicy {
+
+    /* Forgets the movement state - called when a recording starts or resumes */
+    void reset();
+
+    /* Updates the movement state with the current best location - called once per sampling tick */
+    void onSample(@Nullable Location location);
+
+    /* Returns the time until the next sampling tick in milliseconds */
+    long getSamplingInterval();
+
+    /* Checks if given location should be added to the track after the last waypoint */
+    boolean isNewWayPoint(Location lastWayPoint, Location newLocation);
+
+}
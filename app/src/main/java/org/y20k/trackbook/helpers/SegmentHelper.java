@@ -0,0 +1,188 @@
+/**
+ * SegmentHelper.java
+ * Implements the SegmentHelper class
+ * A SegmentHelper stores the completed parts of the temp track as a chain of segment files
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.WayPointList;
+import org.y20k.trackbook.core.WayPointPager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * SegmentHelper class
+ *
+ * Segment n holds the waypoints n * SEGMENT_SIZE up to (n + 1) * SEGMENT_SIZE of the temp track in
+ * the binary format. A segment is written once, as soon as its waypoints can no longer change - after
+ * that the temp file only needs to hold the waypoints of the open segment. So saving the temp track
+ * costs the same after an hour and after a week of recording. Like StorageHelper, a SegmentHelper is
+ * only used on the I/O thread of TrackRepository. Segments are the pages of the temp track: the live
+ * track drops stored segments from memory and reads them back through TrackRepository.getWayPointPager.
+ * The header of every segment holds the recording start of its track - segments of another recording
+ * are discarded.
+ */
+public class SegmentHelper implements TrackbookKeys, WayPointPager {
+
+    /* Define log tag */
+    private static final String LOG_TAG = SegmentHelper.class.getSimpleName();
+
+
+    /* Main class variables */
+    private final File mSegmentFolder;
+    private int mSegmentCount; // -1 until the segment folder has been scanned
+    private long mRecordingStart; // recording start of the track the stored segments belong to - -1 until the first segment has been read
+
+
+    /* Constructor */
+    public SegmentHelper(File folder) {
+        mSegmentFolder = new File(folder, TEMP_SEGMENTS_DIRECTORY_NAME);
+        mSegmentCount = -1;
+        mRecordingStart = -1;
+    }
+
+
+    /* Getter for the number of stored segments */
+    public int getSegmentCount() {
+        if (mSegmentCount < 0) {
+            // count consecutive segment files - a segment after a missing one is useless
+            mSegmentCount = 0;
+            while (getSegmentFile(mSegmentCount).exists()) {
+                mSegmentCount++;
+            }
+        }
+        return mSegmentCount;
+    }
+
+
+    /* Getter for the index of the first waypoint that is not part of a stored segment */
+    public int getFirstOpenIndex() {
+        return getSegmentCount() * SEGMENT_SIZE;
+    }
+
+
+    /* Deletes the segments if they can not belong to given track - they are left over from an earlier recording */
+    public void discardStaleSegments(Track track) {
+        discardStaleSegments(track.getRecordingStart().getTime(), track.getSize());
+    }
+
+
+    /* Deletes the segments if they do not belong to the recording with given start and size */
+    public void discardStaleSegments(long recordingStart, int size) {
+        if (segmentsExist() && (getRecordingStart() != recordingStart || getFirstOpenIndex() > size)) {
+            LogHelper.w(LOG_TAG, "Discarding " + mSegmentCount + " segments of an earlier recording.");
+            deleteSegments();
+        }
+    }
+
+
+    /* Writes every segment of given track that is complete and not stored yet */
+    public boolean writeSegments(Track track) {
+        // the stop over status of the last waypoints may still change - the segment is written once they are settled
+        while (getFirstOpenIndex() + SEGMENT_SIZE + JournalHelper.STOP_OVER_WINDOW <= track.getSize()) {
+            if (!writeSegment(track, mSegmentCount)) {
+                return false;
+            }
+            mSegmentCount++;
+            mRecordingStart = track.getRecordingStart().getTime();
+        }
+        return true;
+    }
+
+
+    @Override
+    public WayPointList readPage(int page) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(getSegmentFile(page)))) {
+            WayPointList wayPoints = BinaryFormatHelper.readWayPoints(in);
+            if (wayPoints.size() != SEGMENT_SIZE) {
+                throw new IOException("Segment " + page + " is incomplete.");
+            }
+            return wayPoints;
+        }
+    }
+
+
+    /* Checks if any segment is stored */
+    public boolean segmentsExist() {
+        return getSegmentCount() > 0;
+    }
+
+
+    /* Deletes all segments - returns false if there were none */
+    public boolean deleteSegments() {
+        boolean deleted = false;
+        File[] files = mSegmentFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleted |= file.delete();
+            }
+        }
+        mSegmentCount = 0;
+        mRecordingStart = -1;
+        return deleted;
+    }
+
+
+    /* Getter for the recording start of the track the stored segments belong to - reads it from the first segment - -1 if it is unknown */
+    private long getRecordingStart() {
+        if (mRecordingStart < 0 && segmentsExist()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(getSegmentFile(0)))) {
+                mRecordingStart = BinaryFormatHelper.readRecordingStart(in);
+            } catch (IOException e) {
+                LogHelper.e(LOG_TAG, "Unable to read first segment (IOException): " + e.getMessage());
+            }
+        }
+        return mRecordingStart;
+    }
+
+
+    /* Writes a single segment - to a temp file first, so that a segment file is always complete */
+    private boolean writeSegment(Track track, int index) {
+        if (!mSegmentFolder.exists() && !mSegmentFolder.mkdirs()) {
+            LogHelper.e(LOG_TAG, "Unable to create segment folder: " + mSegmentFolder.toString());
+            return false;
+        }
+        File segmentFile = getSegmentFile(index);
+        File tempFile = new File(mSegmentFolder, segmentFile.getName() + FILE_TYPE_TEMP_EXTENSION);
+        int fromIndex = index * SEGMENT_SIZE;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+            BinaryFormatHelper.writeTrack(track, fromIndex, fromIndex + SEGMENT_SIZE, out);
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to write segment (IOException): " + tempFile.toString());
+            return false;
+        }
+        if (!tempFile.renameTo(segmentFile)) {
+            LogHelper.e(LOG_TAG, "Unable to store segment: " + segmentFile.toString());
+            return false;
+        }
+        LogHelper.v(LOG_TAG, "Stored segment " + index + " of temporary track.");
+        return true;
+    }
+
+
+    /* Returns the file of given segment */
+    private File getSegmentFile(int index) {
+        return new File(mSegmentFolder, index + FILE_TYPE_SEGMENT_EXTENSION);
+    }
+
+}
@@ -0,0 +1,316 @@
+/**
+ * SimplificationHelper.java
+ * Implements the SimplificationHelper class
+ * A SimplificationHelper decides which waypoints of a track can be left out of a size-limited export
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.util.Arrays;
+
+
+/**
+ * SimplificationHelper class
+ *
+ * Uses the Visvalingam-Whyatt algorithm: the waypoint that spans the smallest triangle with its
+ * neighbors is removed first, then the triangles of its neighbors are updated. The removal order
+ * is calculated once in O(n log n) using an indexed heap - afterwards the simplification for any
+ * number of waypoints is available in O(n). The first and the last waypoint and all stop overs
+ * are never removed. Distances are measured on a local equirectangular projection in meters.
+ */
+public final class SimplificationHelper {
+
+    /* Define log tag */
+    private static final String LOG_TAG = SimplificationHelper.class.getSimpleName();
+
+    private static final double EARTH_RADIUS = 6371008.8; // mean radius in meters
+
+
+    /* Main class variables */
+    private final int mSize;
+    private final double[] mX;
+    private final double[] mY;
+    private final int[] mRemovalOrder; // removable waypoints - least important first
+
+    /* Heap state - only used while calculating the removal order */
+    private double[] mArea;
+    private int[] mHeap;
+    private int[] mHeapPosition;
+    private int mHeapSize;
+
+
+    /* Constructor - calculates the removal order for given track */
+    public SimplificationHelper(Track track) {
+        WayPointList wayPoints = track.getWayPoints();
+        mSize = wayPoints.size();
+        mX = new double[mSize];
+        mY = new double[mSize];
+        projectWayPoints(wayPoints);
+        mRemovalOrder = calculateRemovalOrder(wayPoints);
+    }
+
+
+    /* Returns the number of waypoints of the original track */
+    public int getOriginalSize() {
+        return mSize;
+    }
+
+
+    /* Returns the number of waypoints that are never removed - endpoints and stop overs */
+    public int getMinimumSize() {
+        return mSize - mRemovalOrder.length;
+    }
+
+
+    /* Returns which waypoints to keep if the track is reduced to given number of waypoints - never fewer than getMinimumSize() */
+    public boolean[] getKeptWayPoints(int wayPointCount) {
+        int removedCount = mSize - Math.max(getMinimumSize(), Math.min(mSize, wayPointCount));
+        boolean[] kept = new boolean[mSize];
+        Arrays.fill(kept, true);
+        for (int i = 0; i < removedCount; i++) {
+            kept[mRemovalOrder[i]] = false;
+        }
+        return kept;
+    }
+
+
+    /* Returns the largest distance in meters between a removed waypoint and the simplified line */
+    public double getMaxDeviation(boolean[] kept) {
+        double maxDeviation = 0;
+        int previousKept = -1;
+        for (int i = 0; i < mSize; i++) {
+            if (!kept[i]) {
+                continue;
+            }
+            // measure all removed waypoints between the previous and this kept waypoint
+            for (int j = previousKept + 1; previousKept >= 0 && j < i; j++) {
+                maxDeviation = Math.max(maxDeviation, getSegmentDistance(j, previousKept, i));
+            }
+            previousKept = i;
+        }
+        return maxDeviation;
+    }
+
+
+    /* Projects all waypoints onto a plane - x and y in meters, longitudes are unwrapped at the date line */
+    private void projectWayPoints(WayPointList wayPoints) {
+        if (mSize == 0) {
+            return;
+        }
+        double scaleX = EARTH_RADIUS * Math.cos(Math.toRadians(wayPoints.getLatitude(0)));
+        double previousLongitude = wayPoints.getLongitude(0);
+        double longitude = previousLongitude;
+        for (int i = 0; i < mSize; i++) {
+            double delta = wayPoints.getLongitude(i) - previousLongitude;
+            if (delta > 180) {
+                delta -= 360;
+            } else if (delta < -180) {
+                delta += 360;
+            }
+            longitude += delta;
+            previousLongitude = wayPoints.getLongitude(i);
+            mX[i] = scaleX * Math.toRadians(longitude);
+            mY[i] = EARTH_RADIUS * Math.toRadians(wayPoints.getLatitude(i));
+        }
+    }
+
+
+    /* Removes the least important waypoint until only endpoints and stop overs are left - returns the removal order */
+    private int[] calculateRemovalOrder(WayPointList wayPoints) {
+        int[] previous = new int[mSize];
+        int[] next = new int[mSize];
+        mArea = new double[mSize];
+        mHeap = new int[mSize];
+        mHeapPosition = new int[mSize];
+        mHeapSize = 0;
+
+        // put all removable waypoints on the heap
+        for (int i = 0; i < mSize; i++) {
+            previous[i] = i - 1;
+            next[i] = i + 1;
+            mHeapPosition[i] = -1;
+            if (i > 0 && i < mSize - 1 && !wayPoints.getIsStopOver(i)) {
+                mArea[i] = getTriangleArea(i - 1, i, i + 1);
+                mHeap[mHeapSize] = i;
+                mHeapPosition[i] = mHeapSize;
+                mHeapSize++;
+            }
+        }
+        for (int i = mHeapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+
+        // remove waypoints - smallest triangle first
+        int[] removalOrder = new int[mHeapSize];
+        int removedCount = 0;
+        while (mHeapSize > 0) {
+            int removed = popHeap();
+            removalOrder[removedCount++] = removed;
+            int before = previous[removed];
+            int after = next[removed];
+            next[before] = after;
+            previous[after] = before;
+            if (mHeapPosition[before] >= 0) {
+                mArea[before] = getTriangleArea(previous[before], before, after);
+                updateHeap(before);
+            }
+            if (mHeapPosition[after] >= 0) {
+                mArea[after] = getTriangleArea(before, after, next[after]);
+                updateHeap(after);
+            }
+        }
+
+        // free heap state
+        mArea = null;
+        mHeap = null;
+        mHeapPosition = null;
+        return removalOrder;
+    }
+
+
+    /* Returns the area of the triangle spanned by three waypoints */
+    private double getTriangleArea(int a, int b, int c) {
+        return Math.abs((mX[b] - mX[a]) * (mY[c] - mY[a]) - (mX[c] - mX[a]) * (mY[b] - mY[a])) / 2;
+    }
+
+
+    /* Returns the distance of a waypoint to the line segment between two other waypoints */
+    private double getSegmentDistance(int point, int start, int end) {
+        double dx = mX[end] - mX[start];
+        double dy = mY[end] - mY[start];
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((mX[point] - mX[start]) * dx + (mY[point] - mY[start]) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        return Math.hypot(mX[point] - (mX[start] + t * dx), mY[point] - (mY[start] + t * dy));
+    }
+
+
+    /* Removes the waypoint with the smallest area from the heap */
+    private int popHeap() {
+        int top = mHeap[0];
+        mHeapPosition[top] = -1;
+        mHeapSize--;
+        if (mHeapSize > 0) {
+            mHeap[0] = mHeap[mHeapSize];
+            mHeapPosition[mHeap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+
+    /* Restores heap order after the area of given waypoint changed */
+    private void updateHeap(int wayPoint) {
+        int position = mHeapPosition[wayPoint];
+        if (position > 0 && mArea[mHeap[(position - 1) / 2]] > mArea[wayPoint]) {
+            siftUp(position);
+        } else {
+            siftDown(position);
+        }
+    }
+
+
+    /* Moves the heap entry at given position up until its parent is smaller */
+    private void siftUp(int position) {
+        int wayPoint = mHeap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (mArea[mHeap[parent]] <= mArea[wayPoint]) {
+                break;
+            }
+            mHeap[position] = mHeap[parent];
+            mHeapPosition[mHeap[position]] = position;
+            position = parent;
+        }
+        mHeap[position] = wayPoint;
+        mHeapPosition[wayPoint] = position;
+    }
+
+
+    /* Moves the heap entry at given position down until its children are larger */
+    private void siftDown(int position) {
+        int wayPoint = mHeap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= mHeapSize) {
+                break;
+            }
+            if (child + 1 < mHeapSize && mArea[mHeap[child + 1]] < mArea[mHeap[child]]) {
+                child++;
+            }
+            if (mArea[mHeap[child]] >= mArea[wayPoint]) {
+                break;
+            }
+            mHeap[position] = mHeap[child];
+            mHeapPosition[mHeap[position]] = position;
+            position = child;
+        }
+        mHeap[position] = wayPoint;
+        mHeapPosition[wayPoint] = position;
+    }
+
+
+    /**
+     * Inner class: Describes how a track was simplified for an export
+     */
+    public static final class Result {
+        private final int mOriginalSize;
+        private final int mSize;
+        private final long mByteCount;
+        private final double mMaxDeviation;
+        private final double mErrorBudget;
+
+        Result(int originalSize, int size, long byteCount, double maxDeviation, double errorBudget) {
+            mOriginalSize = originalSize;
+            mSize = size;
+            mByteCount = byteCount;
+            mMaxDeviation = maxDeviation;
+            mErrorBudget = errorBudget;
+        }
+
+        /* Getter for the number of waypoints of the original track */
+        public int getOriginalSize() {
+            return mOriginalSize;
+        }
+
+        /* Getter for the number of exported waypoints */
+        public int getSize() {
+            return mSize;
+        }
+
+        /* Getter for the size of the export in bytes */
+        public long getByteCount() {
+            return mByteCount;
+        }
+
+        /* Getter for the largest distance in meters between a left out waypoint and the exported line */
+        public double getMaxDeviation() {
+            return mMaxDeviation;
+        }
+
+        /* Returns the share of the error budget that was used - above 1 the size budget forced a coarser track than allowed - -1 if there was no error budget */
+        public double getErrorBudgetUsed() {
+            if (mErrorBudget <= 0) {
+                return -1;
+            }
+            return mMaxDeviation / mErrorBudget;
+        }
+    }
+
+}
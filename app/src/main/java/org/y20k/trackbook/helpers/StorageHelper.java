@@ -17,28 +17,35 @@
 package org.y20k.trackbook.helpers;
 
 import android.content.Context;
+import android.location.Location;
 import android.os.Environment;
 import android.widget.Toast;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 import org.y20k.trackbook.R;
 import org.y20k.trackbook.core.Track;
-import org.y20k.trackbook.core.TrackBuilder;
-
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import org.y20k.trackbook.core.TrackBundle;
+import org.y20k.trackbook.core.TrackSummary;
+import org.y20k.trackbook.core.WayPoint;
+import org.y20k.trackbook.core.WayPointList;
+import org.y20k.trackbook.core.WayPointPager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import androidx.annotation.Nullable;
 import androidx.core.os.EnvironmentCompat;
@@ -46,6 +53,10 @@ import androidx.core.os.EnvironmentCompat;
 
 /**
  * StorageHelper class
+ *
+ * A StorageHelper is not thread-safe. TrackRepository creates one and uses it on its I/O thread for
+ * everything that writes. Exports create their own to load saved tracks on their threads - saved
+ * track files, catalog and archive pack are only replaced or appended to, never changed in place.
  */
 public class StorageHelper implements TrackbookKeys {
 
@@ -56,10 +67,15 @@ public class StorageHelper implements TrackbookKeys {
     private final Context mContext;
     private final File mFolder;
     private final File mTempFile;
+    private final File mJournalFile;
+    private final CatalogHelper mCatalogHelper;
+    private final ArchiveHelper mArchiveHelper;
+    private final SegmentHelper mSegmentHelper;
+    private WayPointPager mWayPointPager; // reads the paged out waypoints of a loaded temp track
 
 
-    /* Constructor */
-    public StorageHelper(Context context) {
+    /* Constructor - use TrackRepository to access stored tracks, except for loading saved tracks during an export */
+    StorageHelper(Context context) {
         // store activity
         mContext = context;
 
@@ -76,21 +92,47 @@ public class StorageHelper implements TrackbookKeys {
         // create temp file object // todo check -> may produce NullPointerException
         String tempFilePathName = mFolder.toString() + "/" + FILE_NAME_TEMP + FILE_TYPE_TRACKBOOK_EXTENSION;
         mTempFile = new File(tempFilePathName);
+        mJournalFile = new File(mFolder, FILE_NAME_TEMP + FILE_TYPE_JOURNAL_EXTENSION);
+
+        // create catalog and archive objects - old tracks are archived whenever a track is saved
+        mCatalogHelper = new CatalogHelper(mFolder);
+        mArchiveHelper = new ArchiveHelper(mFolder);
 
-        // delete old track - exclude temp file
-        deleteOldTracks(false);
+        // create segment object - completed parts of the temp track are stored as segments
+        mSegmentHelper = new SegmentHelper(mFolder);
+        mWayPointPager = mSegmentHelper;
     }
 
 
     /* Checks if a temp file exits */
     public boolean tempFileExists() {
-        return mTempFile.exists();
+        return mTempFile.exists() || mJournalFile.exists() || mSegmentHelper.segmentsExist();
     }
 
 
-    /* Deletes temp file - if it exits */
+    /* Deletes temp file, its journal and its segments - if they exit */
     public boolean deleteTempFile() {
-        return mTempFile.exists() && mTempFile.delete();
+        boolean journalDeleted = mJournalFile.exists() && mJournalFile.delete();
+        boolean segmentsDeleted = mSegmentHelper.deleteSegments();
+        return (mTempFile.exists() && mTempFile.delete()) || journalDeleted || segmentsDeleted;
+    }
+
+
+    /* Sets the pager handed to loaded temp tracks - TrackRepository uses one that reads segments on its I/O thread */
+    void setWayPointPager(WayPointPager pager) {
+        mWayPointPager = pager;
+    }
+
+
+    /* Reads a stored segment of the temp track - a page of the live track */
+    WayPointList readSegment(int page) throws IOException {
+        return mSegmentHelper.readPage(page);
+    }
+
+
+    /* Getter for the number of waypoints of the temp track that are stored in segments - they can be paged out of memory */
+    public int getStoredWayPointCount() {
+        return mSegmentHelper.getFirstOpenIndex();
     }
 
 
@@ -103,9 +145,6 @@ public class StorageHelper implements TrackbookKeys {
         }
 
         if (mFolder != null && mFolder.exists() && mFolder.isDirectory() && mFolder.canWrite() && recordingStart != null && track != null) {
-            // calculate elevation and store it in track
-            track = calculateElevation(track);
-
             // create file object
             String fileName;
             if (fileType == FILE_TEMP_TRACK) {
@@ -118,26 +157,32 @@ public class StorageHelper implements TrackbookKeys {
             }
             File file = new File(mFolder.toString() + "/" +  fileName);
 
-            // convert track to JSON
-            Gson gson = getCustomGson();
-            String json = gson.toJson(track);
+            // temp file only holds the waypoints that are not part of a stored segment
+            int firstIndex = 0;
+            if (fileType == FILE_TEMP_TRACK) {
+                mSegmentHelper.discardStaleSegments(track);
+                firstIndex = mSegmentHelper.getFirstOpenIndex();
+            }
 
-            // write track
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+            // write track - using the compact binary format
+            try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
                 LogHelper.v(LOG_TAG, "Saving track to external storage: " + file.toString());
-                bw.write(json);
+                BinaryFormatHelper.writeTrack(track, firstIndex, track.getSize(), out);
             } catch (IOException e) {
                 LogHelper.e(LOG_TAG, "Unable to saving track to external storage (IOException): " + file.toString());
                 return false;
             }
 
-            // if write was successful delete old track files - only if not a temp file
+            // if write was successful add track to catalog and archive old track files - only if not a temp file
             if (fileType != FILE_TEMP_TRACK) {
+                updateCatalog(new TrackSummary(fileName, track));
                 // include temp file if it exists
-                deleteOldTracks(true);
+                archiveOldTracks(true);
+                return true;
             }
 
-            return true;
+            // store completed segments of the temp track - after the temp file, which still contains their waypoints
+            return mSegmentHelper.writeSegments(track);
 
         } else {
             LogHelper.e(LOG_TAG, "Unable to save track to external storage.");
@@ -154,8 +199,13 @@ public class StorageHelper implements TrackbookKeys {
         File trackFile;
         switch (fileType) {
             case FILE_TEMP_TRACK:
+                // read segments and temp file and replay the changes recorded in its journal
                 trackFile = getTempFile();
-                break;
+                if (trackFile == null) {
+                    LogHelper.e(LOG_TAG, "Unable to find the temp file.");
+                    return null;
+                }
+                return JournalHelper.replayJournal(readTempTrack(trackFile), mJournalFile);
             case FILE_MOST_CURRENT_TRACK:
                 trackFile = getMostCurrentTrack();
                 break;
@@ -186,12 +236,32 @@ public class StorageHelper implements TrackbookKeys {
     }
 
 
-    /* Gets a list of .trackbook files - excluding the temp file */
-    public File[] getListOfTrackbookFiles() {
-        // TODO HANDLE CASE: EMPTY FILE LIST
+    /* Deletes given track file and removes it from the catalog */
+    public boolean deleteTrack(File file) {
+        TrackSummary summary = findCatalogEntry(file.getName());
+        boolean archived = summary != null && summary.isArchived();
+        if (archived ? !mArchiveHelper.removeTrack(file.getName()) : !file.delete()) {
+            LogHelper.e(LOG_TAG, "Unable to delete track: " + file.toString());
+            return false;
+        }
+        if (!mCatalogHelper.removeEntry(file.getName())) {
+            LogHelper.e(LOG_TAG, "Unable to remove track from catalog: " + file.getName());
+        }
+        if (archived) {
+            compactArchive();
+        }
+        return true;
+    }
+
 
-        // get files and sort them
-        return sortFiles(mFolder.listFiles());
+    /* Gets a list of track bundles from the catalog - newest track first, excluding the temp file */
+    public List<TrackBundle> getListOfTrackBundles() {
+        List<TrackSummary> catalog = getCatalog();
+        List<TrackBundle> trackBundles = new ArrayList<>(catalog.size());
+        for (TrackSummary summary : catalog) {
+            trackBundles.add(new TrackBundle(new File(mFolder, summary.getFileName()), summary));
+        }
+        return trackBundles;
     }
 
 
@@ -221,123 +291,218 @@ public class StorageHelper implements TrackbookKeys {
             return null;
         }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+        // check if track has been moved to the archive pack
+        if (!file.exists()) {
+            TrackSummary summary = findCatalogEntry(file.getName());
+            if (summary != null && summary.isArchived()) {
+                Track track = readTrackFromArchive(summary.getFileName(), summary.getArchiveOffset());
+                if (track == null) {
+                    // the archive pack may have been compacted after the catalog was read - look the record up again
+                    Long offset = mArchiveHelper.scanArchive().get(summary.getFileName());
+                    if (offset != null && offset != summary.getArchiveOffset()) {
+                        mCatalogHelper.putEntry(new TrackSummary(summary, offset));
+                        track = readTrackFromArchive(summary.getFileName(), offset);
+                    }
+                }
+                return track;
+            }
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
             LogHelper.v(LOG_TAG, "Loading track from external storage: " + file.toString());
+            return readTrackFromStream(in);
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to read file from external storage: " + file.toString());
+            return null;
+        }
+    }
 
-            // read until last line reached
-            String fileContent;
-            String singleLine;
-            StringBuilder sb = new StringBuilder("");
-            while ((singleLine = br.readLine()) != null) {
-                sb.append(singleLine);
-                sb.append("\n");
+
+    /* Loads the temp track from the temp file - waypoints stored in segments are only read when they are accessed */
+    private Track readTempTrack(File tempFile) {
+        if (mSegmentHelper.segmentsExist()) {
+            // segments of an earlier recording must not be combined with the temp file - its size is checked by readTrack
+            try (InputStream in = new BufferedInputStream(new FileInputStream(tempFile))) {
+                mSegmentHelper.discardStaleSegments(BinaryFormatHelper.readRecordingStart(in), Integer.MAX_VALUE);
+            } catch (IOException e) {
+                LogHelper.e(LOG_TAG, "Unable to read temporary track from external storage: " + e.getMessage());
+                return null;
             }
-            fileContent = sb.toString();
+        }
+        if (!mSegmentHelper.segmentsExist()) {
+            return readTrackFromFile(tempFile);
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(tempFile))) {
+            WayPointList wayPoints = new WayPointList();
+            wayPoints.setPager(mWayPointPager);
+            wayPoints.appendPagedOut(mSegmentHelper.getSegmentCount());
+            LogHelper.v(LOG_TAG, "Loading track from external storage: " + tempFile.toString());
+            Track track = BinaryFormatHelper.readTrack(in, wayPoints);
+            // only the waypoints before the live window stay paged out - like in a recording that was never interrupted
+            track.getWayPoints().pageIn(track.getSize() - LIVE_TRACK_WINDOW);
+            return track;
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to read temporary track from external storage: " + e.getMessage());
+            return null;
+        }
+    }
 
-            // prepare custom Gson and return Track object
-            Gson gson = getCustomGson();
-            return gson.fromJson(fileContent, TrackBuilder.class).toTrack();
 
+    /* Loads an archived track from the archive pack */
+    private Track readTrackFromArchive(String fileName, long offset) {
+        InputStream archivedTrack = mArchiveHelper.openTrack(offset, fileName);
+        if (archivedTrack == null) {
+            return null;
+        }
+        try (InputStream in = archivedTrack) {
+            LogHelper.v(LOG_TAG, "Loading track from archive: " + fileName);
+            return readTrackFromStream(in);
         } catch (IOException e) {
-            LogHelper.e(LOG_TAG, "Unable to read file from external storage: " + file.toString());
+            LogHelper.e(LOG_TAG, "Unable to read track from archive: " + fileName);
             return null;
         }
     }
 
 
-    /*  Creates a Gson object */
-    private Gson getCustomGson() {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setDateFormat("M/d/yy hh:mm a");
-        return gsonBuilder.create();
+    /* Parses the content of a track file into a track */
+    private Track readTrackFromStream(InputStream inputStream) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(inputStream);
+
+        // check for the binary format (version 3 and up)
+        byte[] header = new byte[BinaryFormatHelper.getHeaderLength()];
+        in.mark(header.length);
+        int headerLength = in.read(header);
+        in.reset();
+        if (BinaryFormatHelper.isBinaryFormat(header, headerLength)) {
+            return BinaryFormatHelper.readTrack(in);
+        }
+
+        // legacy JSON format (version 1 and 2) - parsed directly from the stream
+        return JsonFormatHelper.readTrack(new InputStreamReader(in));
     }
 
-    /* Gets most current track from directory */
-    private File getMostCurrentTrack() {
 
-        if (mFolder != null && mFolder.isDirectory()) {
-            // get files and sort them
-            File[] files = mFolder.listFiles();
-            files = sortFiles(files);
-            if (files.length > 0 && files[0].getName().endsWith(FILE_TYPE_TRACKBOOK_EXTENSION) && !files[0].equals(mTempFile)){
-                // return latest track
-                return files[0];
-            }
+    /* Gets most current track from catalog */
+    private File getMostCurrentTrack() {
+        List<TrackSummary> catalog = getCatalog();
+        if (catalog.size() > 0) {
+            // return latest track
+            return new File(mFolder, catalog.get(0).getFileName());
         }
-        LogHelper.e(LOG_TAG, "Unable to get files from given folder. Folder is probably empty.");
+        LogHelper.e(LOG_TAG, "Unable to get most current track. Catalog is probably empty.");
         return null;
     }
 
 
-    /* Gets temp file - if it exists */
-    private File getTempFile() {
-        if (mTempFile.exists()) {
-            return mTempFile;
-        } else {
-            return null;
+    /* Gets the catalog entries of all saved tracks - newest track first */
+    private List<TrackSummary> getCatalog() {
+        List<TrackSummary> catalog = mCatalogHelper.readCatalog();
+        if (catalog == null) {
+            catalog = rebuildCatalog();
         }
+        return catalog;
     }
 
 
-    /* Gets the last track from directory */
-    private void deleteOldTracks(boolean includeTempFile) {
+    /* Finds the catalog entry of given track file - returns null if the track is not in the catalog */
+    private TrackSummary findCatalogEntry(String fileName) {
+        for (TrackSummary summary : getCatalog()) {
+            if (summary.getFileName().equals(fileName)) {
+                return summary;
+            }
+        }
+        return null;
+    }
 
-        if (mFolder != null && mFolder.isDirectory()) {
-            LogHelper.v(LOG_TAG, "Deleting older recordings.");
 
-            // get files and sort them
-            File[] files = mFolder.listFiles();
-            files = sortFiles(files);
+    /* Adds or replaces the catalog entry of a saved track */
+    private void updateCatalog(TrackSummary summary) {
+        // make sure a catalog exists - a rebuilt catalog already contains the saved track
+        getCatalog();
+        if (!mCatalogHelper.putEntry(summary)) {
+            LogHelper.e(LOG_TAG, "Unable to add track to catalog: " + summary.getFileName());
+        }
+    }
 
-            // store length of array
-            int numberOfFiles = files.length;
 
-            // keep the latest ten (mMaxTrackFiles) track files
-            int index = MAXIMUM_TRACK_FILES;
-            // iterate through array
-            while (index < numberOfFiles && files[index].getName().endsWith(FILE_TYPE_TRACKBOOK_EXTENSION) && !files[index].equals(mTempFile)) {
-                files[index].delete();
-                index++;
+    /* Creates the catalog from the track files in the tracks folder and the archive pack - used if the catalog is missing or unreadable */
+    private List<TrackSummary> rebuildCatalog() {
+        LogHelper.v(LOG_TAG, "Rebuilding track catalog.");
+        List<TrackSummary> catalog = new ArrayList<>();
+        Set<String> fileNames = new HashSet<>();
+        File[] files = mFolder != null ? mFolder.listFiles() : null;
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(FILE_TYPE_TRACKBOOK_EXTENSION) && !file.equals(mTempFile)) {
+                    Track track = readTrackFromFile(file);
+                    if (track != null) {
+                        catalog.add(new TrackSummary(file.getName(), track));
+                        fileNames.add(file.getName());
+                    }
+                }
             }
         }
+        for (Map.Entry<String, Long> record : mArchiveHelper.scanArchive().entrySet()) {
+            // a single file is newer than its archived copy (archiving was interrupted)
+            if (!fileNames.contains(record.getKey())) {
+                Track track = readTrackFromArchive(record.getKey(), record.getValue());
+                if (track != null) {
+                    catalog.add(new TrackSummary(new TrackSummary(record.getKey(), track), record.getValue()));
+                }
+            }
+        }
+        mCatalogHelper.writeCatalog(catalog);
+        return catalog;
+    }
 
-        // delete temp file if it exists
-        if (includeTempFile && mTempFile.exists()) {
-            mTempFile.delete();
+
+    /* Compacts the archive pack if enough of it is dead - and points the catalog to the moved records */
+    private void compactArchive() {
+        Map<String, Long> offsets = mArchiveHelper.compactArchive();
+        if (offsets == null) {
+            return;
+        }
+        // make sure a catalog exists - the offsets are applied to the current catalog, not to a copy read earlier
+        getCatalog();
+        if (!mCatalogHelper.updateArchiveOffsets(offsets)) {
+            LogHelper.e(LOG_TAG, "Unable to update catalog after compacting the archive.");
         }
+    }
+
 
+    /* Gets temp file - if it exists */
+    private File getTempFile() {
+        if (mTempFile.exists()) {
+            return mTempFile;
+        } else {
+            return null;
+        }
     }
 
 
-    /* Sorts array of files in a way that the newest files are at the top and non-.trackbook files are at the bottom */
-    private File[] sortFiles(File[] files) {
-        // sort array
-        LogHelper.v(LOG_TAG, "Sorting files.");
-        Arrays.sort(files, new Comparator<File>() {
-            @Override
-            public int compare(File file1, File file2) {
-
-                // discard temp file and files not ending with ".trackbook"
-                boolean file1IsTrack = file1.getName().endsWith(FILE_TYPE_TRACKBOOK_EXTENSION) && !file1.equals(mTempFile);
-                boolean file2IsTrack = file2.getName().endsWith(FILE_TYPE_TRACKBOOK_EXTENSION) && !file2.equals(mTempFile);
-
-                // note: "greater" means higher index in array
-                if (!file1IsTrack && file2IsTrack) {
-                    // file1 is not a track, file1 is greater
-                    return 1;
-                } else if (!file2IsTrack && file1IsTrack) {
-                    // file2 is not a track, file2 is greater
-                    return -1;
-                } else {
-                    // "compareTo" compares abstract path names lexicographically | 0 == equal | -1 == file2 less than file1 | 1 == file2 greater than file1
-                    return file2.compareTo(file1);
-                }
+    /* Moves tracks beyond the maximum number of single track files to the archive pack */
+    private void archiveOldTracks(boolean includeTempFile) {
 
+        // keep the latest (MAXIMUM_LOOSE_TRACK_FILES) tracks as single files - catalog is sorted newest first
+        List<TrackSummary> catalog = getCatalog();
+        for (int index = MAXIMUM_LOOSE_TRACK_FILES; index < catalog.size(); index++) {
+            TrackSummary summary = catalog.get(index);
+            if (summary.isArchived()) {
+                continue;
+            }
+            // append to pack, point catalog to the record and only then remove the single file
+            File file = new File(mFolder, summary.getFileName());
+            long offset = mArchiveHelper.appendTrack(file);
+            if (offset >= 0 && mCatalogHelper.putEntry(new TrackSummary(summary, offset))) {
+                file.delete();
             }
-        });
+        }
+
+        // delete temp file, its journal and its segments if they exist
+        if (includeTempFile) {
+            deleteTempFile();
+        }
 
-        // hand back sorted array of files
-        return files;
     }
 
 
@@ -360,70 +525,6 @@ public class StorageHelper implements TrackbookKeys {
     }
 
 
-    /* Calculates positive and negative elevation of track */
-    private Track calculateElevation(@Nullable Track track) {
-        double maxAltitude = 0;
-        double minAltitude = 0;
-        double positiveElevation = 0;
-        double negativeElevation = 0;
-
-        if (track != null && track.getWayPoints().size() > 0) {
-            double previousLocationAltitude;
-            double currentLocationAltitude;
-            long previousTimeStamp;
-            long currentTimeStamp;
-
-            // initial values for max height and min height - first waypoint
-            maxAltitude = track.getWayPointLocation(0).getAltitude();
-            minAltitude = maxAltitude;
-
-            // apply filter & smooth data
-//            track = smoothTrack(track, 15f, 35f);
-
-            // iterate over track
-            for (int i = 1; i < track.getWayPoints().size(); i++ ) {
-
-                // get time difference
-                previousTimeStamp = track.getWayPointLocation(i -1).getTime();
-                currentTimeStamp = track.getWayPointLocation(i).getTime();
-                double timeDiff = (currentTimeStamp - previousTimeStamp);
-
-                // factor is bigger than 1 if the time stamp difference is larger than the movement recording interval (usually 15 seconds)
-                double timeDiffFactor = timeDiff / FIFTEEN_SECONDS_IN_MILLISECONDS;
-
-                // height of previous and current waypoints
-                previousLocationAltitude = track.getWayPointLocation(i -1).getAltitude();
-                currentLocationAltitude = track.getWayPointLocation(i).getAltitude();
-
-                // check for new min and max heights
-                if (currentLocationAltitude > maxAltitude) {
-                    maxAltitude = currentLocationAltitude;
-                }
-                if (minAltitude == 0 || currentLocationAltitude < minAltitude) {
-                    minAltitude = currentLocationAltitude;
-                }
-
-                // get elevation difference and sum it up
-                double altitudeDiff = currentLocationAltitude - previousLocationAltitude;
-                if (altitudeDiff > 0 && altitudeDiff < MEASUREMENT_ERROR_THRESHOLD * timeDiffFactor && currentLocationAltitude != 0) {
-                    positiveElevation = positiveElevation + altitudeDiff;
-                }
-                if (altitudeDiff < 0 && altitudeDiff > -MEASUREMENT_ERROR_THRESHOLD * timeDiffFactor && currentLocationAltitude != 0) {
-                    negativeElevation = negativeElevation + altitudeDiff;
-                }
-
-            }
-
-            // store elevation data in track
-            track.setMaxAltitude(maxAltitude);
-            track.setMinAltitude(minAltitude);
-            track.setPositiveElevation(positiveElevation);
-            track.setNegativeElevation(negativeElevation);
-        }
-        return track;
-    }
-
-
     /* Tries to smooth the elevation data using a low pass filter */
     private Track smoothTrack(Track input, float dt, float rc) {
 
@@ -445,20 +546,19 @@ public class StorageHelper implements TrackbookKeys {
         // calculate alpha
         float alpha = dt / (rc + dt);
 
-        // set initial value for first waypoint
-        double outputInitialAltitudeValue = alpha * input.getWayPoints().get(0).getLocation().getAltitude();
-        output.getWayPoints().get(0).getLocation().setAltitude(outputInitialAltitudeValue);
-
-        double inputCurrentAltitudeValue;
-        double outputPreviousAltitudeValue;
+        // y[0] := α * x[0] is the same as the loop body with y[-1] := 0
+        WayPointList inputWayPoints = input.getWayPoints();
+        WayPointList outputWayPoints = output.getWayPoints();
+        double outputPreviousAltitudeValue = 0;
         double outputCurrentAltitudeValue;
-        for (int i = 1; i < input.getSize(); i++) {
-            inputCurrentAltitudeValue = input.getWayPoints().get(i).getLocation().getAltitude();
-            outputPreviousAltitudeValue = output.getWayPoints().get(i-1).getLocation().getAltitude();
-
-            outputCurrentAltitudeValue = alpha * inputCurrentAltitudeValue + (1 - alpha) * outputPreviousAltitudeValue;
-
-            output.getWayPoints().get(i).getLocation().setAltitude(outputCurrentAltitudeValue);
+        for (int i = 0; i < input.getSize(); i++) {
+            outputCurrentAltitudeValue = alpha * inputWayPoints.getAltitude(i) + (1 - alpha) * outputPreviousAltitudeValue;
+
+            // waypoints are stored as columns - replace the waypoint with a smoothed copy
+            Location location = outputWayPoints.getLocation(i);
+            location.setAltitude(outputCurrentAltitudeValue);
+            outputWayPoints.set(i, new WayPoint(location, outputWayPoints.getIsStopOver(i), outputWayPoints.getDistanceToStartingPoint(i), outputWayPoints.getNumberSatellites(i)));
+            outputPreviousAltitudeValue = outputCurrentAltitudeValue;
         }
 
         return output;
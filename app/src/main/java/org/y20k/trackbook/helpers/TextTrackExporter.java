@@ -0,0 +1,72 @@
+/**
+ * TextTrackExporter.java
+ * Implements the TextTrackExporter class
+ * A TextTrackExporter is the base of exporters for text based formats
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.Track;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * TextTrackExporter class
+ */
+public abstract class TextTrackExporter implements TrackExporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+
+    /* Main class variables */
+    protected Writer mWriter;
+    protected final TimestampFormatter mTimestampFormatter = new TimestampFormatter();
+
+
+    @Override
+    public void beginTrack(Track track, int wayPointCount, OutputStream stream) throws IOException {
+        mWriter = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writeHeader(track);
+    }
+
+
+    @Override
+    public boolean nextPass() throws IOException {
+        // one pass is enough for most formats
+        return false;
+    }
+
+
+    @Override
+    public void endTrack() throws IOException {
+        writeFooter();
+        // flush only - the stream belongs to the caller
+        mWriter.flush();
+        mWriter = null;
+    }
+
+
+    /* Writes everything that comes before the first waypoint */
+    protected abstract void writeHeader(Track track) throws IOException;
+
+
+    /* Writes everything that comes after the last waypoint */
+    protected abstract void writeFooter() throws IOException;
+
+}
@@ -0,0 +1,97 @@
+/**
+ * TimestampFormatter.java
+ * Implements the TimestampFormatter class
+ * A TimestampFormatter writes UTC timestamps in ISO 8601 format without allocating objects
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import java.io.IOException;
+import java.io.Writer;
+
+
+/**
+ * TimestampFormatter class
+ *
+ * Formats into a reusable character buffer - one instance per export, not thread-safe.
+ * The date part is only recalculated when the day changes.
+ */
+public final class TimestampFormatter {
+
+    /* Define log tag */
+    private static final String LOG_TAG = TimestampFormatter.class.getSimpleName();
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+
+    /* Main class variables */
+    private final char[] mBuffer;
+    private long mDay;
+
+
+    /* Constructor */
+    public TimestampFormatter() {
+        mBuffer = "0000-00-00T00:00:00Z".toCharArray();
+        mDay = Long.MIN_VALUE;
+    }
+
+
+    /* Writes given time (milliseconds since epoch) as "yyyy-MM-ddTHH:mm:ssZ" */
+    public void write(Writer writer, long time) throws IOException {
+        long day = time / MILLIS_PER_DAY;
+        long millisOfDay = time % MILLIS_PER_DAY;
+        if (millisOfDay < 0) {
+            // time before 1970 - round towards negative infinity
+            day--;
+            millisOfDay += MILLIS_PER_DAY;
+        }
+        if (day != mDay) {
+            formatDate(day);
+            mDay = day;
+        }
+        int secondOfDay = (int) (millisOfDay / 1000);
+        writeTwoDigits(11, secondOfDay / 3600);
+        writeTwoDigits(14, secondOfDay / 60 % 60);
+        writeTwoDigits(17, secondOfDay % 60);
+        writer.write(mBuffer, 0, mBuffer.length);
+    }
+
+
+    /* Fills the date part of the buffer - converts days since epoch into a proleptic Gregorian date */
+    private void formatDate(long epochDay) {
+        // algorithm "civil_from_days" by Howard Hinnant - eras of 400 years starting in March
+        long shiftedDay = epochDay + 719468;
+        long era = (shiftedDay >= 0 ? shiftedDay : shiftedDay - 146096) / 146097;
+        long dayOfEra = shiftedDay - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        year = Math.max(0, Math.min(9999, year));
+        writeTwoDigits(0, year / 100);
+        writeTwoDigits(2, year % 100);
+        writeTwoDigits(5, month);
+        writeTwoDigits(8, day);
+    }
+
+
+    /* Writes a number between 0 and 99 at given position */
+    private void writeTwoDigits(int position, int value) {
+        mBuffer[position] = (char) ('0' + value / 10);
+        mBuffer[position + 1] = (char) ('0' + value % 10);
+    }
+
+}
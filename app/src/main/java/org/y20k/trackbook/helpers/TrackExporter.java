@@ -0,0 +1,58 @@
+/**
+ * TrackExporter.java
+ * Implements the TrackExporter interface
+ * A TrackExporter encodes a track into an export file format waypoint by waypoint
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.WayPointList;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * TrackExporter interface
+ *
+ * ExportHelper.writeTrack calls beginTrack once, writeWayPoint for every exported waypoint in order
+ * and endTrack once - a simplified export writes fewer waypoints than the track has. Formats that
+ * list an attribute of all waypoints apart from the positions ask for another pass with nextPass.
+ * An exporter must not hold on to the waypoints - memory use has to stay the same no matter how
+ * long the track is. Instances keep state while encoding, use one per export.
+ */
+public interface TrackExporter {
+
+    /* Returns a short name of the format - shown to the user */
+    String getFormatName();
+
+    /* Returns the file extension of the format, including the dot */
+    String getFileExtension();
+
+    /* Returns the MIME type of the format */
+    String getMimeType();
+
+    /* Writes everything that comes before the first waypoint - wayPointCount is the number of waypoints that will follow */
+    void beginTrack(Track track, int wayPointCount, OutputStream stream) throws IOException;
+
+    /* Writes the waypoint at given index - read it with the column getters of the list */
+    void writeWayPoint(WayPointList wayPoints, int index) throws IOException;
+
+    /* Called after the last waypoint of a pass - returns true if writeWayPoint should be called for all exported waypoints once more */
+    boolean nextPass() throws IOException;
+
+    /* Writes everything that comes after the last waypoint and flushes - must not close the stream */
+    void endTrack() throws IOException;
+
+}
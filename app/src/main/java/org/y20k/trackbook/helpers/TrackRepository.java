@@ -0,0 +1,291 @@
+/**
+ * TrackRepository.java
+ * Implements the TrackRepository class
+ * A TrackRepository is the single point of access to stored tracks - all disk work runs on one background thread
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.y20k.trackbook.core.Track;
+import org.y20k.trackbook.core.TrackBundle;
+import org.y20k.trackbook.core.TrackOverview;
+import org.y20k.trackbook.core.WayPointList;
+import org.y20k.trackbook.core.WayPointPager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import androidx.annotation.Nullable;
+
+
+/**
+ * TrackRepository class
+ *
+ * Tasks are executed one after another in the order they were submitted - a load that is
+ * submitted after a save always sees the saved track. Exports of tracks that are already loaded
+ * run on a separate thread, so a long export never delays the recorder. Callbacks are delivered on
+ * the main thread. Paged out waypoints of the temp track are read on the I/O thread as well - a read
+ * can not interleave with writing or deleting the segments, and it is refused on the main thread.
+ */
+public final class TrackRepository implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = TrackRepository.class.getSimpleName();
+
+    /* Singleton instance */
+    private static TrackRepository sInstance;
+
+
+    /* Main class variables */
+    private final Context mContext;
+    private final ExecutorService mExecutor;
+    private final ExecutorService mExportExecutor;
+    private final Handler mMainHandler;
+    private final WayPointPager mWayPointPager;
+    private volatile Thread mThread; // the I/O thread
+    private StorageHelper mStorageHelper; // only accessed on the I/O thread
+
+
+    /* Interface for results of repository tasks - called on the main thread */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+
+    /* Getter for the process-wide repository */
+    public static synchronized TrackRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TrackRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+
+    /* Constructor */
+    private TrackRepository(Context context) {
+        mContext = context;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, LOG_TAG);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                mThread = thread;
+                return thread;
+            }
+        });
+        mExportExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, LOG_TAG + "-export");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mWayPointPager = createWayPointPager();
+    }
+
+
+    /* Loads the temp track or the most current track */
+    public void loadTrack(final int fileType, final Callback<Track> callback) {
+        submit(new Callable<Track>() {
+            @Override
+            public Track call() {
+                return getStorageHelper().loadTrack(fileType);
+            }
+        }, callback);
+    }
+
+
+    /* Loads given track file */
+    public void loadTrack(final File file, final Callback<Track> callback) {
+        submit(new Callable<Track>() {
+            @Override
+            public Track call() {
+                return getStorageHelper().loadTrack(file);
+            }
+        }, callback);
+    }
+
+
+    /* Saves given track */
+    public void saveTrack(final Track track, final int fileType, @Nullable final Callback<Boolean> callback) {
+        submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return getStorageHelper().saveTrack(track, fileType);
+            }
+        }, callback);
+    }
+
+
+    /* Deletes given track file */
+    public void deleteTrack(final File file, @Nullable final Callback<Boolean> callback) {
+        submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return getStorageHelper().deleteTrack(file);
+            }
+        }, callback);
+    }
+
+
+    /* Deletes the temp file and its journal */
+    public void deleteTempFile() {
+        submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return getStorageHelper().deleteTempFile();
+            }
+        }, null);
+    }
+
+
+    /* Appends journal records to the temp journal - or compacts the journal into a snapshot of given track - the callback receives the number of waypoints stored in segments */
+    public void updateTempTrack(final JournalHelper journalHelper, @Nullable final byte[] journalRecords, @Nullable final Track snapshot, @Nullable final Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                if (snapshot != null) {
+                    // rewrite the whole track object - the snapshot supersedes all pending journal records
+                    journalHelper.compactJournal(snapshot, getStorageHelper());
+                } else {
+                    // append changes to journal
+                    journalHelper.appendToJournal(journalRecords);
+                }
+                return getStorageHelper().getStoredWayPointCount();
+            }
+        }, callback);
+    }
+
+
+    /* Extends the overview of the paged out waypoints of given track up to its first waypoint held in memory - the callback receives the new overview */
+    public void extendTrackOverview(@Nullable final TrackOverview overview, final Track track, final Callback<TrackOverview> callback) {
+        final int end = track.getWayPoints().getFirstResidentIndex();
+        submit(new Callable<TrackOverview>() {
+            @Override
+            public TrackOverview call() {
+                // paged out waypoints are read right here on the I/O thread
+                return TrackOverview.extend(overview, track.getWayPoints(), end);
+            }
+        }, callback);
+    }
+
+
+    /* Gets the list of saved tracks - newest track first */
+    public void getListOfTrackBundles(final Callback<List<TrackBundle>> callback) {
+        submit(new Callable<List<TrackBundle>>() {
+            @Override
+            public List<TrackBundle> call() {
+                return getStorageHelper().getListOfTrackBundles();
+            }
+        }, callback);
+    }
+
+
+    /* Getter for the pager of the temp track - the live track and loaded temp tracks page through it */
+    public WayPointPager getWayPointPager() {
+        return mWayPointPager;
+    }
+
+
+    /* Runs given task on the I/O thread - result is handed to the callback on the main thread */
+    public <T> void submit(final Callable<T> task, @Nullable final Callback<T> callback) {
+        execute(mExecutor, task, callback);
+    }
+
+
+    /* Runs given export task on the export thread - the task must not use the storage helper - result is handed to the callback on the main thread */
+    public <T> void submitExport(final Callable<T> task, @Nullable final Callback<T> callback) {
+        execute(mExportExecutor, task, callback);
+    }
+
+
+    /* Runs given task on given executor - result is handed to the callback on the main thread */
+    private <T> void execute(ExecutorService executor, final Callable<T> task, @Nullable final Callback<T> callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result = null;
+                try {
+                    result = task.call();
+                } catch (Exception e) {
+                    LogHelper.e(LOG_TAG, "Storage task failed: " + e);
+                }
+                if (callback != null) {
+                    final T finalResult = result;
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onResult(finalResult);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+
+    /* Creates the pager of the temp track - reads the segments of the storage helper on the I/O thread and waits for them */
+    private WayPointPager createWayPointPager() {
+        return new WayPointPager() {
+            @Override
+            public WayPointList readPage(final int page) throws IOException {
+                if (Thread.currentThread() == mThread) {
+                    // a task of the I/O thread - waiting for the I/O thread would never end
+                    return getStorageHelper().readSegment(page);
+                }
+                if (Looper.myLooper() == Looper.getMainLooper()) {
+                    // the UI only draws waypoints that are held in memory
+                    throw new IOException("Paged out waypoints are not read on the main thread: page " + page);
+                }
+                Future<WayPointList> result = mExecutor.submit(new Callable<WayPointList>() {
+                    @Override
+                    public WayPointList call() throws IOException {
+                        return getStorageHelper().readSegment(page);
+                    }
+                });
+                try {
+                    return result.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Unable to read page " + page, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading page " + page, e);
+                }
+            }
+        };
+    }
+
+
+    /* Getter for the storage helper - creates it on first use on the I/O thread */
+    private StorageHelper getStorageHelper() {
+        if (mStorageHelper == null) {
+            mStorageHelper = new StorageHelper(mContext);
+            mStorageHelper.setWayPointPager(mWayPointPager);
+        }
+        return mStorageHelper;
+    }
+
+}
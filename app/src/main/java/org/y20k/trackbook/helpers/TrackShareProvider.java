@@ -0,0 +1,262 @@
+/**
+ * TrackShareProvider.java
+ * Implements the TrackShareProvider class
+ * A TrackShareProvider hands export files of saved tracks to other apps - the export is generated on demand
+ *
+ * This file is part of
+ * TRACKBOOK - Movement Recorder for Android
+ *
+ * Copyright (c) 2016-19 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ *
+ * Trackbook uses osmdroid - OpenStreetMap-Tools for Android
+ * https://github.com/osmdroid/osmdroid
+ */
+
+package org.y20k.trackbook.helpers;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+
+import org.y20k.trackbook.core.Track;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+
+/**
+ * TrackShareProvider class
+ *
+ * Content URIs look like content://AUTHORITY/[track file name]/[export file name] - the extension
+ * of the export file name selects the export format. The optional query parameter maxBytes asks for
+ * a simplified export that fits the given size. Opening a URI returns the read end of a pipe,
+ * the track is loaded and encoded into the write end while the receiving app reads. Nothing is
+ * written to disk but the export cache, and the receiver gets the first bytes before the whole track
+ * is encoded.
+ */
+public final class TrackShareProvider extends ContentProvider implements TrackbookKeys {
+
+    /* Define log tag */
+    private static final String LOG_TAG = TrackShareProvider.class.getSimpleName();
+
+    private static final String AUTHORITY = "org.y20k.trackbook.trackshare.provider";
+    private static final String QUERY_MAX_BYTES = "maxBytes";
+    private static final String[] DEFAULT_PROJECTION = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+
+
+    /* Main class variables */
+    private ExecutorService mWriters;
+
+
+    /* Returns the content URI for given track file and export file name - maxBytes limits the size of the export (0 = no limit) */
+    static Uri getUri(File trackFile, String exportFileName, long maxBytes) {
+        Uri.Builder builder = new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(AUTHORITY)
+                .appendPath(trackFile.getName())
+                .appendPath(exportFileName);
+        if (maxBytes > 0) {
+            builder.appendQueryParameter(QUERY_MAX_BYTES, String.valueOf(maxBytes));
+        }
+        return builder.build();
+    }
+
+
+    @Override
+    public boolean onCreate() {
+        // one thread per open pipe - threads are only created when a URI is opened
+        mWriters = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, LOG_TAG);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        return true;
+    }
+
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        int exportFormat = getExportFormat(uri);
+        if (exportFormat < 0) {
+            return null;
+        }
+        return ExportHelper.createExporter(exportFormat).getMimeType();
+    }
+
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        if (getExportFormat(uri) < 0) {
+            return null;
+        }
+        if (projection == null) {
+            projection = DEFAULT_PROJECTION;
+        }
+
+        // the size of a generated export is unknown until it has been written
+        String[] columns = new String[projection.length];
+        Object[] values = new Object[projection.length];
+        int count = 0;
+        for (String column : projection) {
+            if (OpenableColumns.DISPLAY_NAME.equals(column)) {
+                columns[count] = OpenableColumns.DISPLAY_NAME;
+                values[count] = uri.getLastPathSegment();
+                count++;
+            } else if (OpenableColumns.SIZE.equals(column)) {
+                columns[count] = OpenableColumns.SIZE;
+                values[count] = null;
+                count++;
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(Arrays.copyOf(columns, count), 1);
+        cursor.addRow(Arrays.copyOf(values, count));
+        return cursor;
+    }
+
+
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Exports can only be opened for reading: " + uri);
+        }
+        final int exportFormat = getExportFormat(uri);
+        final File trackFile = getTrackFile(uri);
+        final long maxBytes = getMaxBytes(uri);
+        if (exportFormat < 0 || trackFile == null || maxBytes < 0) {
+            throw new FileNotFoundException("Unknown export: " + uri);
+        }
+
+        // create pipe - the receiving app reads from one end, the export is written into the other
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createReliablePipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Unable to create pipe: " + e);
+        }
+
+        mWriters.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeExport(trackFile, exportFormat, maxBytes, pipe[1]);
+            }
+        });
+        return pipe[0];
+    }
+
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("Exports are read-only.");
+    }
+
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("Exports are read-only.");
+    }
+
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("Exports are read-only.");
+    }
+
+
+    /* Loads given track and streams its export into the write end of a pipe - simplified if maxBytes is set - runs on a writer thread */
+    private void writeExport(File trackFile, int exportFormat, long maxBytes, ParcelFileDescriptor writeEnd) {
+        try {
+            // saved tracks are only read - loading on the writer thread keeps the I/O thread of TrackRepository free
+            Track track = new StorageHelper(getContext()).loadTrack(trackFile);
+            if (track == null) {
+                LogHelper.e(LOG_TAG, "Unable to load track for sharing: " + trackFile.getName());
+                writeEnd.closeWithError("Unable to load track.");
+                return;
+            }
+            OutputStream stream = new FileOutputStream(writeEnd.getFileDescriptor());
+            if (maxBytes > 0) {
+                // compact exports are not cached - they are small and fast to encode
+                SimplificationHelper.Result result = ExportHelper.writeSimplifiedTrack(track, exportFormat, stream, 0, maxBytes, SHARE_COMPACT_ERROR_BUDGET);
+                LogHelper.v(LOG_TAG, "Shared compact export with " + result.getSize() + " of " + result.getOriginalSize() + " waypoints - " + Math.round(result.getErrorBudgetUsed() * 100) + " percent of the error budget used.");
+            } else {
+                ExportCacheHelper.writeTrack(getContext(), track, exportFormat, stream);
+            }
+            writeEnd.close();
+        } catch (Exception e) {
+            // also happens if the receiving app stops reading early
+            LogHelper.e(LOG_TAG, "Unable to share track: " + trackFile.getName() + " (" + e + ")");
+            try {
+                writeEnd.closeWithError(e.toString());
+            } catch (IOException ignored) {
+                // pipe is already closed
+            }
+        }
+    }
+
+
+    /* Returns the export format for the export file name of given URI - or -1 */
+    private static int getExportFormat(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2) {
+            return -1;
+        }
+        return ExportHelper.getExportFormat(segments.get(1));
+    }
+
+
+    /* Returns the size limit for the export of given URI - 0 if there is none, -1 if it is invalid */
+    private static long getMaxBytes(Uri uri) {
+        String maxBytes = uri.getQueryParameter(QUERY_MAX_BYTES);
+        if (maxBytes == null) {
+            return 0;
+        }
+        try {
+            return Math.max(-1, Long.parseLong(maxBytes));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+
+    /* Returns the track file for given URI - or null if the URI does not name a track file */
+    private File getTrackFile(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2) {
+            return null;
+        }
+        String trackFileName = segments.get(0);
+        if (trackFileName.contains(File.separator) || !trackFileName.endsWith(FILE_TYPE_TRACKBOOK_EXTENSION)) {
+            return null;
+        }
+        File folder = getContext().getExternalFilesDir(TRACKS_DIRECTORY_NAME);
+        if (folder == null) {
+            return null;
+        }
+        return new File(folder, trackFileName);
+    }
+
+}
@@ -31,14 +31,10 @@ public interface TrackbookKeys {
     String ACTION_SAVE = "org.y20k.transistor.action.SAVE";
     String ACTION_DEFAULT = "DEFAULT";
     String ACTION_SHOW_MAP = "SHOW_MAP";
-    String ACTION_TRACK_UPDATED = "TRACK_UPDATED";
-    String ACTION_TRACK_REQUEST = "TRACK_REQUEST";
     String ACTION_TRACKING_STATE_CHANGED = "TRACKING_STATE_CHANGED";
     String ACTION_TRACK_SAVE = "TRACK_SAVE";
 
     /* EXTRAS */
-    String EXTRA_TRACK = "TRACK";
-    String EXTRA_LAST_LOCATION = "LAST_LOCATION";
     String EXTRA_TRACKING_STATE = "TRACKING_STATE";
     String EXTRA_INFOSHEET_TITLE = "EXTRA_INFOSHEET_TITLE";
     String EXTRA_INFOSHEET_CONTENT = "INFOSHEET_CONTENT";
@@ -70,6 +66,7 @@ public interface TrackbookKeys {
     String INSTANCE_ZOOM_LEVEL_TRACK_MAP = "zoomLevelTrackMap";
     String INSTANCE_CURRENT_LOCATION = "currentLocation";
     String INSTANCE_CURRENT_TRACK = "currentTrack";
+    String INSTANCE_EXPORT_FORMAT = "exportFormat";
 
     /* FRAGMENT IDS */
     int FRAGMENT_ID_MAP = 0;
@@ -84,21 +81,53 @@ public interface TrackbookKeys {
 
     /* CONSTANTS */
     long ONE_SECOND_IN_NANOSECOND = 1000000000L;
-    long EIGHT_HOURS_IN_MILLISECONDS = 43200000; // maximum tracking duration
     long FIFTEEN_SECONDS_IN_MILLISECONDS = 15000; // timer interval for tracking
+    int LOCATION_BUFFER_CAPACITY = 128; // fixes waiting for the sampling tick - about a minute, as gps fixes also arrive through the passive provider
     long FIVE_MINUTES_IN_NANOSECONDS = 5L * 60000000000L; // determines a stop over
     long ONE_MINUTE_IN_NANOSECONDS = 1L * 60000000000L; // defines an old location
-    int MAXIMUM_TRACK_FILES = 25;
+    int MAXIMUM_LOOSE_TRACK_FILES = 25; // newest tracks kept as single files - older tracks are moved to the archive pack
+    int JOURNAL_COMPACTION_THRESHOLD = 240; // number of journal records after which the journal is compacted into the temp file
+    int SEGMENT_SIZE = 256; // waypoints per stored segment of the temp track ~ 13 minutes (3 second interval) to 2 hours (30 second interval) of recording - also the page size of the live track - must be a power of two
+    int LIVE_TRACK_WINDOW = 512; // latest waypoints of the live track that are always kept in memory - older waypoints are paged out once they are stored in segments
     int FIFTY_METER_RADIUS = 50;
+    long TRACK_SEQUENCE_UNKNOWN = -1; // track observer has no track state that track deltas can be applied to
+    int MAXIMUM_TRACK_OVERLAY_SIZE = 1024; // markers of a track overlay - longer tracks are thinned out, except for stop overs and the last waypoint
+    int MAXIMUM_TRACK_OVERVIEW_SIZE = 512; // markers for the paged out part of the live track - it is thinned out further as it grows, except for stop overs
 
     /* FILE */
     String FILE_TYPE_GPX_EXTENSION = ".gpx";
+    String FILE_TYPE_GEOJSON_EXTENSION = ".geojson";
+    String FILE_TYPE_KML_EXTENSION = ".kml";
+    String FILE_TYPE_FIT_EXTENSION = ".fit";
+    String FILE_TYPE_ZIP_EXTENSION = ".zip";
     String FILE_TYPE_TRACKBOOK_EXTENSION = ".trackbook";
+    String FILE_TYPE_JOURNAL_EXTENSION = ".journal";
+    String FILE_TYPE_SEGMENT_EXTENSION = ".segment";
+    String FILE_TYPE_TEMP_EXTENSION = ".tmp";
     String FILE_NAME_TEMP = "temp";
+    String FILE_NAME_CATALOG = "catalog.index";
+    String FILE_NAME_ARCHIVE = "archive.pack";
     String TRACKS_DIRECTORY_NAME = "tracks";
+    String TEMP_SEGMENTS_DIRECTORY_NAME = "temp-segments";
     int FILE_TEMP_TRACK = 0;
     int FILE_MOST_CURRENT_TRACK = 1;
 
+    /* EXPORT FORMATS */
+    int EXPORT_FORMAT_GPX = 0;
+    int EXPORT_FORMAT_GEOJSON = 1;
+    int EXPORT_FORMAT_KML = 2;
+    int EXPORT_FORMAT_FIT = 3;
+
+    /* EXPORT CACHE */
+    String EXPORT_CACHE_DIRECTORY_NAME = "exports";
+    int EXPORT_CACHE_VERSION = 2; // incremental version number - increase whenever the output of an exporter changes
+    long EXPORT_CACHE_MAX_AGE = 604800000L; // cached exports that have not been used for a week are deleted
+    long EXPORT_CACHE_SIZE_BUDGET = 33554432L; // 32 MiB - least recently used exports are deleted first
+
+    /* COMPACT SHARING */
+    long SHARE_COMPACT_SIZE_BUDGET = 1048576L; // 1 MiB - small enough for messengers and email
+    double SHARE_COMPACT_ERROR_BUDGET = 10.0; // meters - deviation that is hardly visible on a map
+
     /* UNITS */
     int METRIC = 1;
     int IMPERIAL = -1;
@@ -113,7 +142,7 @@ public interface TrackbookKeys {
     String NOTIFICATION_CHANEL_ID_RECORDING_CHANNEL ="notificationChannelIdRecordingChannel";
 
     /* MISC */
-    int CURRENT_TRACK_FORMAT_VERSION = 2; // incremental version number to prevent issues in case the Track format evolves
+    int CURRENT_TRACK_FORMAT_VERSION = 3; // incremental version number to prevent issues in case the Track format evolves
     double DEFAULT_LATITUDE = 71.172500; // latitude Nordkapp, Norway
     double DEFAULT_LONGITUDE = 25.784444; // longitude Nordkapp, Norway
     int MEASUREMENT_ERROR_THRESHOLD = 10; // altitude changes of 10 meter or more (per 15 seconds) are being discarded